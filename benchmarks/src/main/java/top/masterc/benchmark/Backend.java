@@ -0,0 +1,118 @@
+package top.masterc.benchmark;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import top.masterc.benchmark.fake.FakeRedisCluster;
+import top.masterc.benchmark.fake.FakeRedisServer;
+import top.masterc.executor.JedisClusterCommandExecutor;
+import top.masterc.executor.JedisPoolCommandExecutor;
+import top.masterc.executor.LettuceCommandExecutor;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.fake.FakeRedis;
+import top.masterc.fake.FakeRedisExecutor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基准测试的后端
+ * <p>
+ * FAKE 为进程内的 {@link FakeRedis}，不需要 redis-server，测量锁和限流本身的开销；
+ * SERVER 为本机回环上的 {@link FakeRedisServer}，通过 JedisPool 连接，包含网络和协议开销；
+ * LETTUCE 为同样的 {@link FakeRedisServer}，所有线程共用一个 Lettuce 连接；
+ * CLUSTER 为 3 个节点的 {@link FakeRedisCluster}，通过 JedisCluster 连接；
+ * REDIS 连接 {@link BenchmarkRedis} 配置的 redis-server。通过 -p backend=SERVER 选择
+ *
+ * @author Master.C
+ */
+public final class Backend implements AutoCloseable {
+
+    public static final String FAKE = "FAKE";
+
+    public static final String SERVER = "SERVER";
+
+    public static final String LETTUCE = "LETTUCE";
+
+    public static final String CLUSTER = "CLUSTER";
+
+    public static final String REDIS = "REDIS";
+
+    private static final int CLUSTER_NODES = 3;
+
+    private static final int TIMEOUT = 2000;
+
+    private final RedisCommandExecutor executor;
+
+    private final List<Closeable> resources;
+
+    private Backend(RedisCommandExecutor executor, Closeable... resources) {
+        this.executor = executor;
+        this.resources = new ArrayList<>();
+        Collections.addAll(this.resources, resources);
+    }
+
+    public static Backend create(String name, int maxTotal) {
+        try {
+            return doCreate(name, maxTotal);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Backend doCreate(String name, int maxTotal) throws IOException {
+        if (FAKE.equals(name)) {
+            return new Backend(new FakeRedisExecutor(new FakeRedis()));
+        }
+        if (SERVER.equals(name)) {
+            FakeRedisServer server = new FakeRedisServer(new FakeRedis()).start();
+            JedisPool jedisPool = new JedisPool(poolConfig(maxTotal), server.getHost(), server.getPort(), TIMEOUT);
+            return new Backend(new JedisPoolCommandExecutor(jedisPool), jedisPool, server);
+        }
+        if (LETTUCE.equals(name)) {
+            FakeRedisServer server = new FakeRedisServer(new FakeRedis()).start();
+            RedisClient client = RedisClient.create(RedisURI.create(server.getHost(), server.getPort()));
+            StatefulRedisConnection<String, String> connection = client.connect();
+            return new Backend(new LettuceCommandExecutor(connection), connection::close, client::shutdown, server);
+        }
+        if (CLUSTER.equals(name)) {
+            FakeRedisCluster cluster = new FakeRedisCluster(CLUSTER_NODES);
+            JedisCluster jedisCluster = new JedisCluster(cluster.getHostAndPorts(), TIMEOUT, poolConfig(maxTotal));
+            return new Backend(new JedisClusterCommandExecutor(jedisCluster), jedisCluster, cluster);
+        }
+        if (REDIS.equals(name)) {
+            JedisPool jedisPool = BenchmarkRedis.newPool(maxTotal);
+            return new Backend(new JedisPoolCommandExecutor(jedisPool), jedisPool);
+        }
+        throw new IllegalArgumentException("unknown backend " + name);
+    }
+
+    private static JedisPoolConfig poolConfig(int maxTotal) {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(maxTotal);
+        config.setMaxIdle(maxTotal);
+        return config;
+    }
+
+    public RedisCommandExecutor executor() {
+        return executor;
+    }
+
+    @Override
+    public void close() {
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
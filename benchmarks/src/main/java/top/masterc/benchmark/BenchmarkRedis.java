@@ -0,0 +1,62 @@
+package top.masterc.benchmark;
+
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基准测试使用的 Redis 连接，默认连接本机 redis-server
+ * <p>
+ * -Dredis.host=127.0.0.1 -Dredis.port=6379
+ *
+ * @author Master.C
+ */
+public final class BenchmarkRedis {
+
+    public static final String HOST = System.getProperty("redis.host", "127.0.0.1");
+
+    public static final int PORT = Integer.getInteger("redis.port", 6379);
+
+    private BenchmarkRedis() {
+    }
+
+    public static JedisPool newPool(int maxTotal) {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(maxTotal);
+        config.setMaxIdle(maxTotal);
+        return new JedisPool(config, HOST, PORT, 2000);
+    }
+
+    public static JedisConnectionFactory newConnectionFactory(int maxTotal) {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(maxTotal);
+        config.setMaxIdle(maxTotal);
+        JedisConnectionFactory jedisConnectionFactory = new JedisConnectionFactory(config);
+        jedisConnectionFactory.setHostName(HOST);
+        jedisConnectionFactory.setPort(PORT);
+        jedisConnectionFactory.setTimeout(2000);
+        jedisConnectionFactory.afterPropertiesSet();
+        return jedisConnectionFactory;
+    }
+
+    /**
+     * 命令按 RESP 协议编码后的请求字节数
+     *
+     * @param args 命令及参数
+     * @return
+     */
+    public static int respSize(String... args) {
+        int size = header(args.length);
+        for (String arg : args) {
+            int length = arg.getBytes(StandardCharsets.UTF_8).length;
+            size += header(length) + length + 2;
+        }
+        return size;
+    }
+
+    private static int header(int length) {
+        return 1 + String.valueOf(length).length() + 2;
+    }
+}
@@ -0,0 +1,144 @@
+package top.masterc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPoolConfig;
+import top.masterc.benchmark.fake.FakeRedisCluster;
+import top.masterc.executor.JedisClusterCommandExecutor;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.limit.RedisRateLimiter;
+import top.masterc.lock.RedisLocker;
+import top.masterc.util.KeyRouter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 6 个节点的 {@link FakeRedisCluster} 上批量操作的吞吐，分数为每毫秒处理的 key 数
+ * <p>
+ * limitEach 逐个 acquire(key)；limitBatch 用 acquireBatch 按节点分组流水线；
+ * lockAllScattered 的 key 分散在各个 slot，每个 slot 一次脚本调用；lockAllTagged 用同一个 hash tag，一次脚本调用：
+ * <pre>
+ * java -jar target/benchmarks.jar ClusterBatchBenchmark
+ * java -jar target/benchmarks.jar ClusterBatchBenchmark -p nodes=3,6
+ * </pre>
+ *
+ * @author Master.C
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ClusterBatchBenchmark {
+
+    private static final int BATCH = 64;
+
+    private static final int TIMEOUT = 2000;
+
+    @Param({"6"})
+    private int nodes;
+
+    private FakeRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private RedisRateLimiter limiter;
+
+    private RedisLocker scatteredLocker;
+
+    private RedisLocker taggedLocker;
+
+    @State(Scope.Thread)
+    public static class Keys {
+
+        private List<String> keys;
+
+        private String request;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            String thread = UUID.randomUUID().toString();
+            keys = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                keys.add(thread + "_" + i);
+            }
+            request = thread;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cluster = new FakeRedisCluster(nodes);
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(16);
+        config.setMaxIdle(16);
+        jedisCluster = new JedisCluster(cluster.getHostAndPorts(), TIMEOUT, config);
+        RedisCommandExecutor executor = new JedisClusterCommandExecutor(jedisCluster);
+        limiter = new RedisRateLimiter.Builder(executor)
+                .limit(100000000)
+                .build();
+        scatteredLocker = new RedisLocker.Builder(executor).build();
+        taggedLocker = new RedisLocker.Builder(executor)
+                .keyRouter(KeyRouter.fixed("batch"))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int limitEach(Keys keys) {
+        int permitted = 0;
+        for (String key : keys.keys) {
+            if (limiter.acquire(key)) {
+                permitted++;
+            }
+        }
+        return permitted;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Map<String, Boolean> limitBatch(Keys keys) {
+        return limiter.acquireBatch(keys.keys);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean lockAllScattered(Keys keys) {
+        return scatteredLocker.tryLockAll(keys.keys, keys.request, 10000)
+                && scatteredLocker.unlockAll(keys.keys, keys.request);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean lockAllTagged(Keys keys) {
+        return taggedLocker.tryLockAll(keys.keys, keys.request, 10000)
+                && taggedLocker.unlockAll(keys.keys, keys.request);
+    }
+}
@@ -0,0 +1,187 @@
+package top.masterc.benchmark;
+
+import org.HdrHistogram.Histogram;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import top.masterc.benchmark.fake.FakeRedisCluster;
+import top.masterc.benchmark.fake.FakeRedisServer;
+import top.masterc.executor.JedisClusterCommandExecutor;
+import top.masterc.executor.JedisPoolCommandExecutor;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.fake.FakeRedis;
+import top.masterc.limit.RedisRateLimiter;
+import top.masterc.lock.RedisLocker;
+import top.masterc.metrics.InMemoryMetricsRecorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 慢节点、故障节点和网络分区下锁和限流的表现
+ * <p>
+ * 每个场景启动新的 {@link FakeRedisServer}（或 3 节点的 {@link FakeRedisCluster}），多线程循环执行
+ * tryLock/unlock 和 acquire(key)，运行到三分之一时注入故障，三分之二时恢复，输出吞吐、延迟分位数和异常分布：
+ * <pre>
+ * java -cp target/benchmarks.jar top.masterc.benchmark.DegradedRedisLoad [threads] [seconds]
+ * </pre>
+ *
+ * @author Master.C
+ */
+public final class DegradedRedisLoad {
+
+    /**
+     * 客户端读超时，分区场景下每次请求最多阻塞这么久
+     */
+    private static final int TIMEOUT = 200;
+
+    private static final int KEYS = 1000;
+
+    private DegradedRedisLoad() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+
+        //预热 JIT 和 LuaJ，不输出
+        run(null, false, threads, seconds, server -> {
+        });
+        System.out.printf("%-18s %10s %10s %10s %10s %10s %8s %s%n",
+                "scenario", "ops/s", "lock p50", "lock p99", "lock max", "limit p99", "faults", "errors");
+        run("healthy", false, threads, seconds, server -> {
+        });
+        run("slow 5ms", false, threads, seconds, server -> server.setLatency(5, TimeUnit.MILLISECONDS));
+        run("error 1%", false, threads, seconds, server -> server.inject(FakeRedisServer.Fault.ERROR, 0.01));
+        run("reset 1%", false, threads, seconds, server -> server.inject(FakeRedisServer.Fault.CLOSE, 0.01));
+        run("partition", false, threads, seconds, FakeRedisServer::partition);
+        run("cluster healthy", true, threads, seconds, server -> {
+        });
+        run("cluster slow node", true, threads, seconds, server -> server.setLatency(5, TimeUnit.MILLISECONDS));
+        run("cluster partition", true, threads, seconds, FakeRedisServer::partition);
+    }
+
+    /**
+     * @param scenario 场景名，null 表示预热不输出
+     * @param fault    作用在单机节点或集群的第一个节点上
+     */
+    private static void run(String scenario, boolean cluster, int threads, int seconds,
+                            Consumer<FakeRedisServer> fault) throws Exception {
+        List<Closeable> resources = new ArrayList<>();
+        try {
+            FakeRedisServer target;
+            RedisCommandExecutor executor;
+            JedisPoolConfig config = new JedisPoolConfig();
+            config.setMaxTotal(threads);
+            config.setMaxIdle(threads);
+            if (cluster) {
+                FakeRedisCluster redisCluster = new FakeRedisCluster(3);
+                resources.add(redisCluster);
+                JedisCluster jedisCluster = new JedisCluster(redisCluster.getHostAndPorts(), TIMEOUT, config);
+                resources.add(0, jedisCluster);
+                target = redisCluster.getNodes().get(0);
+                executor = new JedisClusterCommandExecutor(jedisCluster);
+            } else {
+                target = new FakeRedisServer(new FakeRedis()).start();
+                resources.add(target);
+                JedisPool jedisPool = new JedisPool(config, target.getHost(), target.getPort(), TIMEOUT);
+                resources.add(0, jedisPool);
+                executor = new JedisPoolCommandExecutor(jedisPool);
+            }
+            Result result = load(executor, target, fault, threads, seconds);
+            if (scenario != null) {
+                report(scenario, target, result);
+            }
+        } finally {
+            for (Closeable resource : resources) {
+                resource.close();
+            }
+        }
+    }
+
+    private static Result load(RedisCommandExecutor executor, FakeRedisServer target, Consumer<FakeRedisServer> fault,
+                               int threads, int seconds) throws InterruptedException {
+        Result result = new Result();
+        RedisLocker locker = new RedisLocker.Builder(executor)
+                .metricsRecorder(result.metrics)
+                .build();
+        RedisRateLimiter limiter = new RedisRateLimiter.Builder(executor)
+                .limit(Integer.MAX_VALUE)
+                .metricsRecorder(result.metrics)
+                .build();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                String request = UUID.randomUUID().toString();
+                while (System.nanoTime() < end) {
+                    String key = "load_" + ThreadLocalRandom.current().nextInt(KEYS);
+                    try {
+                        if (locker.tryLock(key, request)) {
+                            locker.unlock(key, request);
+                        }
+                        limiter.acquire(key);
+                        result.ops.increment();
+                    } catch (RuntimeException e) {
+                        result.error(e);
+                    }
+                }
+            }, "load-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        long third = TimeUnit.SECONDS.toMillis(seconds) / 3;
+        TimeUnit.MILLISECONDS.sleep(third);
+        fault.accept(target);
+        TimeUnit.MILLISECONDS.sleep(third);
+        target.heal();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        result.seconds = seconds;
+        return result;
+    }
+
+    private static void report(String scenario, FakeRedisServer target, Result result) {
+        Histogram lock = new Histogram(2);
+        for (InMemoryMetricsRecorder.LockStats stats : result.metrics.getLocks().values()) {
+            lock.add(stats.getAttemptLatency());
+        }
+        Histogram limit = new Histogram(2);
+        for (InMemoryMetricsRecorder.LimiterStats stats : result.metrics.getLimiters().values()) {
+            limit.add(stats.getLatency());
+        }
+        System.out.printf("%-18s %10d %10s %10s %10s %10s %8d %s%n", scenario, result.ops.sum() / result.seconds,
+                micros(lock.getValueAtPercentile(50)), micros(lock.getValueAtPercentile(99)),
+                micros(lock.getMaxValue()), micros(limit.getValueAtPercentile(99)),
+                target.injectedFaults(), result.errors);
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+
+    private static final class Result {
+
+        private final InMemoryMetricsRecorder metrics = new InMemoryMetricsRecorder();
+
+        private final LongAdder ops = new LongAdder();
+
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        private int seconds;
+
+        private void error(RuntimeException e) {
+            errors.computeIfAbsent(e.getClass().getSimpleName(), name -> new LongAdder()).increment();
+        }
+    }
+}
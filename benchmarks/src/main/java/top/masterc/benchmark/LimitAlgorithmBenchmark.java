@@ -0,0 +1,75 @@
+package top.masterc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import top.masterc.constant.RedisToolsConstant;
+import top.masterc.limit.LimitAlgorithm;
+import top.masterc.limit.RedisRateLimiter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各限流算法单次判定的吞吐和延迟
+ * <p>
+ * 内存和每次判定的 Redis 命令数见 {@link LimitAlgorithmFootprint}
+ *
+ * @author Master.C
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class LimitAlgorithmBenchmark {
+
+    @Param({"FIXED_WINDOW", "SLIDING_LOG", "SLIDING_WINDOW", "GCRA"})
+    private LimitAlgorithm algorithm;
+
+    @Param({"1000"})
+    private int keys;
+
+    private JedisConnectionFactory jedisConnectionFactory;
+
+    private RedisRateLimiter redisRateLimiter;
+
+    private String[] keyNames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jedisConnectionFactory = BenchmarkRedis.newConnectionFactory(16);
+        redisRateLimiter = new RedisRateLimiter.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .limit(100)
+                .algorithm(algorithm)
+                .build();
+        keyNames = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyNames[i] = "benchmark_" + algorithm + "_" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jedisConnectionFactory.destroy();
+    }
+
+    @Benchmark
+    public boolean acquire() {
+        return redisRateLimiter.acquire(keyNames[ThreadLocalRandom.current().nextInt(keys)]);
+    }
+}
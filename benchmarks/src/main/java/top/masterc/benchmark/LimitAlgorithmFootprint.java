@@ -0,0 +1,101 @@
+package top.masterc.benchmark;
+
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import top.masterc.constant.RedisToolsConstant;
+import top.masterc.limit.LimitAlgorithm;
+import top.masterc.limit.RedisRateLimiter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * 各限流算法的 Redis 内存占用和每次判定执行的命令数
+ * <p>
+ * 每种算法对 keys 个 key 各发起 decisions 次判定，通过 INFO memory 的 used_memory 差值计算每个 key 的内存，
+ * 通过 INFO commandstats 统计脚本内部执行的命令数（不含 EVAL/EVALSHA 本身）
+ * <p>
+ * java -cp benchmarks.jar top.masterc.benchmark.LimitAlgorithmFootprint [keys] [decisions]
+ *
+ * @author Master.C
+ */
+public class LimitAlgorithmFootprint {
+
+    public static void main(String[] args) throws IOException {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int decisions = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int limit = 100;
+
+        JedisConnectionFactory jedisConnectionFactory = BenchmarkRedis.newConnectionFactory(4);
+        JedisPool jedisPool = BenchmarkRedis.newPool(1);
+
+        System.out.printf("%-16s %16s %16s %16s%n", "algorithm", "bytes/key", "commands/decide", "allowed");
+        for (LimitAlgorithm algorithm : LimitAlgorithm.values()) {
+            RedisRateLimiter redisRateLimiter = new RedisRateLimiter.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                    .limit(limit)
+                    .algorithm(algorithm)
+                    .build();
+
+            long memoryBefore;
+            long commandsBefore;
+            try (Jedis jedis = jedisPool.getResource()) {
+                jedis.flushDB();
+                memoryBefore = infoField(jedis.info("memory"), "used_memory");
+                commandsBefore = scriptCommands(jedis.info("commandstats"));
+            }
+
+            long allowed = 0;
+            for (int i = 0; i < keys; i++) {
+                String key = "footprint_" + i;
+                for (int j = 0; j < decisions; j++) {
+                    if (redisRateLimiter.acquire(key)) {
+                        allowed++;
+                    }
+                }
+            }
+
+            try (Jedis jedis = jedisPool.getResource()) {
+                long memory = infoField(jedis.info("memory"), "used_memory") - memoryBefore;
+                long commands = scriptCommands(jedis.info("commandstats")) - commandsBefore;
+                System.out.printf("%-16s %16d %16.2f %16d%n", algorithm, memory / keys,
+                        (double) commands / ((long) keys * decisions), allowed);
+                jedis.flushDB();
+            }
+        }
+
+        jedisPool.close();
+        jedisConnectionFactory.destroy();
+    }
+
+    private static long infoField(String info, String field) throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(info));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(field + ":")) {
+                return Long.parseLong(line.substring(field.length() + 1).trim());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * commandstats 中除 EVAL/EVALSHA/SCRIPT/INFO/FLUSHDB 外所有命令的调用次数之和
+     */
+    private static long scriptCommands(String info) throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(info));
+        String line;
+        long calls = 0;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("cmdstat_") || line.startsWith("cmdstat_eval") || line.startsWith("cmdstat_script")
+                    || line.startsWith("cmdstat_info") || line.startsWith("cmdstat_flushdb")) {
+                continue;
+            }
+            int start = line.indexOf("calls=") + "calls=".length();
+            int end = line.indexOf(',', start);
+            calls += Long.parseLong(line.substring(start, end));
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,112 @@
+package top.masterc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import top.masterc.executor.BatchingCommandExecutor;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.limit.RedisRateLimiter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisRateLimiter.acquire() / acquire(key) 的吞吐、延迟和分配
+ * <p>
+ * limit 足够大时测放行路径，调小测拒绝路径；leaseSize 只影响 acquire()，keyLeaseCache 大于 0 时 acquire(key) 也按 key 租借，
+ * rejectionCache 在拒绝路径上生效：
+ * <pre>
+ * java -jar target/benchmarks.jar LimiterBenchmark -prof gc
+ * java -jar target/benchmarks.jar LimiterBenchmark -p limit=100 -p leaseSize=0,50
+ * java -jar target/benchmarks.jar LimiterBenchmark.acquireKey -p limit=100 -p rejectionCache=0,10000
+ * java -jar target/benchmarks.jar LimiterBenchmark.acquireKey -p leaseSize=100 -p keyLeaseCache=0,10000 -p keys=100000
+ * java -jar target/benchmarks.jar LimiterBenchmark.acquireKey -p backend=SERVER -p batch=0,64 -t 64
+ * </pre>
+ *
+ * @author Master.C
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class LimiterBenchmark {
+
+    @Param({Backend.FAKE})
+    private String backend;
+
+    @Param({"100000000"})
+    private int limit;
+
+    @Param({"0", "100"})
+    private int leaseSize;
+
+    @Param({"1000"})
+    private int keys;
+
+    @Param({"0"})
+    private int rejectionCache;
+
+    @Param({"0"})
+    private int keyLeaseCache;
+
+    /**
+     * 大于 0 时用 {@link BatchingCommandExecutor} 合并并发调用，每批最多 batch 个
+     */
+    @Param({"0"})
+    private int batch;
+
+    @Param({"0"})
+    private long batchDelayMicros;
+
+    private Backend redis;
+
+    private RedisRateLimiter redisRateLimiter;
+
+    private String[] keyNames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redis = Backend.create(backend, 16);
+        RedisCommandExecutor executor = batch > 0
+                ? new BatchingCommandExecutor(redis.executor(), batch, batchDelayMicros, 4) : redis.executor();
+        redisRateLimiter = new RedisRateLimiter.Builder(executor)
+                .limit(limit)
+                .leaseSize(leaseSize)
+                .keyLeaseCache(leaseSize > 0 ? keyLeaseCache : 0)
+                .rejectionCache(rejectionCache)
+                .build();
+        keyNames = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyNames[i] = "benchmark_" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redis.close();
+    }
+
+    @Benchmark
+    public boolean acquire() {
+        return redisRateLimiter.acquire();
+    }
+
+    @Benchmark
+    public boolean acquireKey() {
+        return redisRateLimiter.acquire(keyNames[ThreadLocalRandom.current().nextInt(keys)]);
+    }
+}
@@ -0,0 +1,90 @@
+package top.masterc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import top.masterc.lock.RedisLocker;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程竞争同一把锁时阻塞 lock 的吞吐和等待时间
+ * <p>
+ * 每次操作为 lock + 持有 holdMicros + unlock。notify=false 时等待者每 sleepTime 轮询一次，
+ * notify=true 时由 unlock 的释放通知唤醒，对比两者的交接延迟：
+ * <pre>
+ * java -jar target/benchmarks.jar LockContentionBenchmark -prof gc
+ * </pre>
+ *
+ * @author Master.C
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class LockContentionBenchmark {
+
+    @Param({Backend.FAKE})
+    private String backend;
+
+    @Param({"false", "true"})
+    private boolean notify;
+
+    @Param({"10"})
+    private int sleepTime;
+
+    @Param({"100"})
+    private int holdMicros;
+
+    private Backend redis;
+
+    private RedisLocker redisLocker;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redis = Backend.create(backend, 16);
+        redisLocker = new RedisLocker.Builder(redis.executor())
+                .sleepTime(sleepTime)
+                .releaseNotification(notify)
+                .notifyPollTime(100)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redis.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Request {
+        private final String value = UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public boolean lockUnlock(Request request) throws InterruptedException {
+        if (!redisLocker.lock("benchmark_contended", request.value, 10 * 1000)) {
+            return false;
+        }
+        try {
+            TimeUnit.MICROSECONDS.sleep(holdMicros);
+        } finally {
+            redisLocker.unlock("benchmark_contended", request.value);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,136 @@
+package top.masterc.benchmark;
+
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import top.masterc.constant.RedisToolsConstant;
+import top.masterc.lock.RedisLocker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 锁竞争下的交接延迟和 Redis 命令速率
+ * <p>
+ * waiters 个线程抢同一把锁，每次持有 holdMillis 毫秒。交接延迟 = 上一个持有者 unlock 完成到下一个持有者加锁成功的时间，
+ * 命令速率通过 INFO commandstats 统计。分别以轮询等待和释放通知等待各跑一次
+ * <p>
+ * java -cp benchmarks.jar top.masterc.benchmark.LockHandoffBenchmark [waiters] [seconds] [holdMillis]
+ *
+ * @author Master.C
+ */
+public class LockHandoffBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int waiters = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int holdMillis = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        JedisConnectionFactory jedisConnectionFactory = BenchmarkRedis.newConnectionFactory(waiters + 4);
+        JedisPool jedisPool = BenchmarkRedis.newPool(1);
+
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %12s%n",
+                "mode", "handoffs", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "commands/s");
+        for (boolean notification : new boolean[]{false, true}) {
+            RedisLocker redisLocker = new RedisLocker.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                    .lockPrefix("handoff_")
+                    .sleepTime(100)
+                    .releaseNotification(notification)
+                    .build();
+            run(redisLocker, notification ? "notify" : "poll", jedisPool, waiters, seconds, holdMillis);
+        }
+
+        jedisPool.close();
+        jedisConnectionFactory.destroy();
+        System.exit(0);
+    }
+
+    private static void run(RedisLocker redisLocker, String mode, JedisPool jedisPool,
+                            int waiters, int seconds, int holdMillis) throws Exception {
+        long[] samples = new long[1 << 20];
+        AtomicInteger handoffs = new AtomicInteger();
+        AtomicLong lastRelease = new AtomicLong();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(waiters);
+
+        long commandsBefore;
+        try (Jedis jedis = jedisPool.getResource()) {
+            commandsBefore = lockCommands(jedis.info("commandstats"));
+        }
+
+        for (int i = 0; i < waiters; i++) {
+            Thread thread = new Thread(() -> {
+                String request = UUID.randomUUID().toString();
+                try {
+                    while (System.nanoTime() < end) {
+                        if (!redisLocker.lock("key", request, 1000)) {
+                            continue;
+                        }
+                        long acquired = System.nanoTime();
+                        long released = lastRelease.get();
+                        if (released > 0) {
+                            int index = handoffs.getAndIncrement();
+                            if (index < samples.length) {
+                                samples[index] = acquired - released;
+                            }
+                        }
+                        TimeUnit.MILLISECONDS.sleep(holdMillis);
+                        redisLocker.unlock("key", request);
+                        lastRelease.set(System.nanoTime());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.start();
+        }
+        done.await();
+
+        long commands;
+        try (Jedis jedis = jedisPool.getResource()) {
+            commands = lockCommands(jedis.info("commandstats")) - commandsBefore;
+        }
+
+        int count = Math.min(handoffs.get(), samples.length);
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        System.out.printf("%-10s %10d %10.2f %10.2f %10.2f %10.2f %12d%n", mode, count,
+                percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                percentile(sorted, 1), commands / seconds);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    /**
+     * SET / EVALSHA / EVAL / PUBLISH / SUBSCRIBE / UNSUBSCRIBE 的调用次数之和
+     */
+    private static long lockCommands(String info) throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(info));
+        String line;
+        long calls = 0;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("cmdstat_set:") || line.startsWith("cmdstat_evalsha:") || line.startsWith("cmdstat_eval:")
+                    || line.startsWith("cmdstat_publish:") || line.startsWith("cmdstat_subscribe:")
+                    || line.startsWith("cmdstat_unsubscribe:")) {
+                int start = line.indexOf("calls=") + "calls=".length();
+                calls += Long.parseLong(line.substring(start, line.indexOf(',', start)));
+            }
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,85 @@
+package top.masterc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import top.masterc.lock.RedisLocker;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 无竞争的 tryLock / unlock
+ * <p>
+ * Throughput 输出 ops/us，SampleTime 输出 p50/p99/p999，加上 -prof gc 输出每次操作的分配字节数：
+ * <pre>
+ * java -jar target/benchmarks.jar LockerBenchmark -prof gc
+ * java -jar target/benchmarks.jar LockerBenchmark -p backend=REDIS -prof gc
+ * </pre>
+ *
+ * @author Master.C
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class LockerBenchmark {
+
+    @Param({Backend.FAKE})
+    private String backend;
+
+    private Backend redis;
+
+    private RedisLocker redisLocker;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redis = Backend.create(backend, 16);
+        redisLocker = new RedisLocker.Builder(redis.executor()).build();
+        //另一个请求占住的锁，用于测量加锁失败
+        redisLocker.tryLock("benchmark_held", "holder");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redisLocker.unlock("benchmark_held", "holder");
+        redis.close();
+    }
+
+    /**
+     * 每个线程一把自己的锁，没有竞争
+     */
+    @State(Scope.Thread)
+    public static class ThreadLock {
+        private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+        private final String key = "benchmark_" + SEQUENCE.incrementAndGet();
+
+        private final String request = UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public boolean tryLockUnlock(ThreadLock lock) {
+        return redisLocker.tryLock(lock.key, lock.request) & redisLocker.unlock(lock.key, lock.request);
+    }
+
+    @Benchmark
+    public boolean tryLockHeld(ThreadLock lock) {
+        return redisLocker.tryLock("benchmark_held", lock.request);
+    }
+}
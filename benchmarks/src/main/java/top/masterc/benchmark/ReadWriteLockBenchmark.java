@@ -0,0 +1,134 @@
+package top.masterc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import top.masterc.lock.RedisLocker;
+import top.masterc.lock.RedisReadWriteLock;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读多写少时读写锁与互斥锁的吞吐
+ * <p>
+ * 每次操作为 加锁 + 持有 holdMicros + 解锁，exclusive 所有读者互斥，read 读者并行，
+ * readWrite 每 writeRatio 次操作中有一次写。用 -t 改变线程数观察吞吐随读者数的变化：
+ * <pre>
+ * java -jar target/benchmarks.jar ReadWriteLockBenchmark -t 1,4,16
+ * </pre>
+ *
+ * @author Master.C
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ReadWriteLockBenchmark {
+
+    private static final String KEY = "benchmark_config";
+
+    @Param({Backend.FAKE})
+    private String backend;
+
+    @Param({"1"})
+    private int sleepTime;
+
+    @Param({"100"})
+    private int holdMicros;
+
+    @Param({"100"})
+    private int writeRatio;
+
+    private Backend redis;
+
+    private RedisLocker redisLocker;
+
+    private RedisReadWriteLock readWriteLock;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redis = Backend.create(backend, 64);
+        redisLocker = new RedisLocker.Builder(redis.executor())
+                .sleepTime(sleepTime)
+                .build();
+        readWriteLock = new RedisReadWriteLock.Builder(redis.executor())
+                .sleepTime(sleepTime)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redis.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Request {
+        private final String value = UUID.randomUUID().toString();
+        private int operations;
+    }
+
+    @Benchmark
+    public boolean exclusive(Request request) throws InterruptedException {
+        if (!redisLocker.lock(KEY, request.value, 10 * 1000)) {
+            return false;
+        }
+        try {
+            hold();
+        } finally {
+            redisLocker.unlock(KEY, request.value);
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean read(Request request) throws InterruptedException {
+        return read(request.value);
+    }
+
+    @Benchmark
+    public boolean readWrite(Request request) throws InterruptedException {
+        if (++request.operations % writeRatio != 0) {
+            return read(request.value);
+        }
+        if (!readWriteLock.writeLock(KEY, request.value, 10 * 1000)) {
+            return false;
+        }
+        try {
+            hold();
+        } finally {
+            readWriteLock.unlockWrite(KEY, request.value);
+        }
+        return true;
+    }
+
+    private boolean read(String request) throws InterruptedException {
+        if (!readWriteLock.readLock(KEY, request, 10 * 1000)) {
+            return false;
+        }
+        try {
+            hold();
+        } finally {
+            readWriteLock.unlockRead(KEY, request);
+        }
+        return true;
+    }
+
+    private void hold() throws InterruptedException {
+        TimeUnit.MICROSECONDS.sleep(holdMicros);
+    }
+}
@@ -0,0 +1,86 @@
+package top.masterc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EVAL 与 EVALSHA 的请求字节数和延迟对比
+ * <p>
+ * SampleTime 模式输出 p50/p99/p999；每次调用的请求字节数在 setup 时打印
+ *
+ * @author Master.C
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ScriptEvalBenchmark {
+
+    @Param({"EVAL", "EVALSHA"})
+    private String command;
+
+    @Param({"lock.lua", "limit.lua"})
+    private String path;
+
+    private JedisPool jedisPool;
+
+    private RedisScript script;
+
+    private List<String> keys;
+
+    private List<String> args;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jedisPool = BenchmarkRedis.newPool(16);
+        script = new ScriptRegistry().register(path);
+        keys = Collections.singletonList("benchmark_" + path);
+        //lock.lua 比较 value 不相等直接返回，limit.lua 的限流值足够大，两者都不会改变执行路径
+        args = Collections.singletonList(String.valueOf(Integer.MAX_VALUE));
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.scriptLoad(script.getScript());
+        }
+
+        String body = "EVAL".equals(command) ? script.getScript() : script.getSha1();
+        System.out.println(command + " " + path + " request bytes per call: "
+                + BenchmarkRedis.respSize(command, body, "1", keys.get(0), args.get(0)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jedisPool.close();
+    }
+
+    @Benchmark
+    public Object call() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            if ("EVAL".equals(command)) {
+                return jedis.eval(script.getScript(), keys, args);
+            }
+            return jedis.evalsha(script.getSha1(), keys, args);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package top.masterc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import top.masterc.executor.JedisPoolCommandExecutor;
+import top.masterc.executor.MessageListener;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.executor.ScriptCall;
+import top.masterc.lock.RedisLocker;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次 tryLock 的内存分配
+ * <p>
+ * SPRING_CONNECTION 每次通过 JedisConnectionFactory.getConnection() 获取并关闭 Spring 连接（原来的实现），
+ * EXECUTOR 直接从 JedisPool 借还 Jedis。用 -prof gc 运行，看 gc.alloc.rate.norm（B/op）：
+ * <pre>
+ * java -jar target/benchmarks.jar TryLockAllocationBenchmark -prof gc
+ * </pre>
+ *
+ * @author Master.C
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TryLockAllocationBenchmark {
+
+    @Param({"SPRING_CONNECTION", "EXECUTOR"})
+    private String mode;
+
+    private JedisConnectionFactory jedisConnectionFactory;
+
+    private JedisPool jedisPool;
+
+    private RedisLocker redisLocker;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RedisCommandExecutor executor;
+        if ("SPRING_CONNECTION".equals(mode)) {
+            jedisConnectionFactory = BenchmarkRedis.newConnectionFactory(16);
+            executor = new SpringConnectionExecutor(jedisConnectionFactory);
+        } else {
+            jedisPool = BenchmarkRedis.newPool(16);
+            executor = new JedisPoolCommandExecutor(jedisPool);
+        }
+        redisLocker = new RedisLocker.Builder(executor).build();
+        //先占住锁，之后每次 tryLock 都是一次失败的 SET NX，两种模式的网络开销相同
+        redisLocker.tryLock("benchmark", "holder");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redisLocker.unlock("benchmark", "holder");
+        if (jedisConnectionFactory != null) {
+            jedisConnectionFactory.destroy();
+        }
+        if (jedisPool != null) {
+            jedisPool.close();
+        }
+    }
+
+    @Benchmark
+    public boolean tryLock() {
+        return redisLocker.tryLock("benchmark", "request");
+    }
+
+    /**
+     * 与原来的 getConnection / close 相同，每次调用都创建 Spring 连接包装对象
+     */
+    private static class SpringConnectionExecutor implements RedisCommandExecutor {
+
+        private final JedisConnectionFactory jedisConnectionFactory;
+
+        private SpringConnectionExecutor(JedisConnectionFactory jedisConnectionFactory) {
+            this.jedisConnectionFactory = jedisConnectionFactory;
+        }
+
+        @Override
+        public boolean setIfAbsent(String key, String value, int expireTime) {
+            Jedis jedis = (Jedis) jedisConnectionFactory.getConnection().getNativeConnection();
+            try {
+                return "OK".equals(jedis.set(key, value, "NX", "PX", expireTime));
+            } finally {
+                jedis.close();
+            }
+        }
+
+        @Override
+        public Object eval(RedisScript script, List<String> keys, List<String> args) {
+            Jedis jedis = (Jedis) jedisConnectionFactory.getConnection().getNativeConnection();
+            try {
+                return ScriptRegistry.evalsha(jedis, script, keys, args);
+            } finally {
+                jedis.close();
+            }
+        }
+
+        @Override
+        public List<Object> evalPipelined(List<ScriptCall> calls) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scriptLoad(RedisScript script) {
+            Jedis jedis = (Jedis) jedisConnectionFactory.getConnection().getNativeConnection();
+            try {
+                ScriptRegistry.load(jedis, script);
+            } finally {
+                jedis.close();
+            }
+        }
+
+        @Override
+        public void subscribe(MessageListener listener, String... channels) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isSubscribable() {
+            return false;
+        }
+
+        @Override
+        public boolean isCluster() {
+            return false;
+        }
+    }
+}
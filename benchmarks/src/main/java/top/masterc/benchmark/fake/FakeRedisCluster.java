@@ -0,0 +1,104 @@
+package top.masterc.benchmark.fake;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.util.JedisClusterCRC16;
+import top.masterc.fake.FakeRedis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 由多个 {@link FakeRedisServer} 组成的集群，16384 个 slot 平均分给各节点，每个节点有自己的 {@link FakeRedis}
+ * <p>
+ * 节点对不属于自己的 key 回复 MOVED，PUBLISH 广播到所有节点的订阅者，可以直接用 JedisCluster 连接
+ *
+ * @author Master.C
+ */
+public class FakeRedisCluster implements Closeable {
+
+    private static final int SLOTS = 16384;
+
+    private final List<FakeRedisServer> nodes = new ArrayList<>();
+
+    private final AtomicReferenceArray<FakeRedisServer> slots = new AtomicReferenceArray<>(SLOTS);
+
+    /**
+     * 启动集群
+     *
+     * @param size 节点数
+     * @throws IOException
+     */
+    public FakeRedisCluster(int size) throws IOException {
+        try {
+            for (int i = 0; i < size; i++) {
+                FakeRedisServer node = new FakeRedisServer(new FakeRedis());
+                node.setSlots(slots);
+                nodes.add(node);
+                for (int slot = i * SLOTS / size; slot < (i + 1) * SLOTS / size; slot++) {
+                    slots.set(slot, node);
+                }
+            }
+            for (FakeRedisServer node : nodes) {
+                for (FakeRedisServer other : nodes) {
+                    if (other != node) {
+                        node.listen(other.getRedis());
+                    }
+                }
+                node.start();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public List<FakeRedisServer> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * @return JedisCluster 的启动节点
+     */
+    public Set<HostAndPort> getHostAndPorts() {
+        Set<HostAndPort> hostAndPorts = new LinkedHashSet<>();
+        for (FakeRedisServer node : nodes) {
+            hostAndPorts.add(new HostAndPort(node.getHost(), node.getPort()));
+        }
+        return hostAndPorts;
+    }
+
+    /**
+     * @param key
+     * @return key 所在的节点
+     */
+    public FakeRedisServer nodeFor(String key) {
+        return slots.get(JedisClusterCRC16.getSlot(key));
+    }
+
+    /**
+     * 把 slot 区间改归 target，之后原节点对这些 key 回复 MOVED，用于测试客户端刷新 slot 表。
+     * 只迁移归属不迁移数据，相当于故障转移后新主节点丢失了未同步的写入
+     *
+     * @param from   起始 slot（包含）
+     * @param to     结束 slot（包含）
+     * @param target
+     */
+    public void moveSlots(int from, int to, FakeRedisServer target) {
+        for (int slot = from; slot <= to; slot++) {
+            slots.set(slot, target);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (FakeRedisServer node : nodes) {
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,710 @@
+package top.masterc.benchmark.fake;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.util.JedisClusterCRC16;
+import top.masterc.fake.FakeRedis;
+import top.masterc.fake.FakeRedisException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * 说 RESP 协议的 {@link FakeRedis}，供 Jedis 等真实客户端做压测
+ * <p>
+ * 和 Redis 一样单线程事件循环：一个 Selector 负责 accept、读、执行命令和写回复。
+ * 除 {@link FakeRedis} 的命令外，在连接层实现 SUBSCRIBE/UNSUBSCRIBE、ECHO、SELECT、CLIENT、INFO、QUIT，
+ * 以及集群模式下的 CLUSTER SLOTS/NODES/KEYSLOT 和 MOVED 重定向（见 {@link FakeRedisCluster}）。
+ * <p>
+ * 故障注入：{@link #setLatency(long, TimeUnit)} 延迟每条回复但不阻塞事件循环，模拟慢网络；
+ * {@link #inject(Fault, double)} 按概率对命令注入错误回复、断开连接或不回复（超时），
+ * {@link #partition()} 让节点对所有命令都不回复，模拟网络分区
+ *
+ * @author Master.C
+ */
+public class FakeRedisServer implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(FakeRedisServer.class);
+
+    private static final Set<String> KEYLESS_COMMANDS = new HashSet<>(Arrays.asList(
+            "PING", "ECHO", "SELECT", "CLIENT", "INFO", "QUIT", "AUTH", "CLUSTER", "SCRIPT",
+            "PUBLISH", "SUBSCRIBE", "UNSUBSCRIBE", "TIME", "DBSIZE", "FLUSHALL"));
+
+    private static final FakeRedis.Status OK = new FakeRedis.Status("OK");
+
+    /**
+     * 连接层命令已经自行回复
+     */
+    private static final Object NO_REPLY = new Object();
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * 注入的故障
+     */
+    public enum Fault {
+        /**
+         * 不注入
+         */
+        NONE,
+        /**
+         * 回复 -ERR，客户端收到 JedisDataException
+         */
+        ERROR,
+        /**
+         * 不回复直接断开连接，模拟节点崩溃或连接被重置
+         */
+        CLOSE,
+        /**
+         * 吞掉命令不回复，客户端读超时，模拟网络分区
+         */
+        TIMEOUT
+    }
+
+    private final FakeRedis redis;
+
+    private final String host;
+
+    private final int requestedPort;
+
+    private final String nodeId;
+
+    private final Queue<String[]> messages = new ConcurrentLinkedQueue<>();
+
+    private final BiConsumer<String, String> publisher = this::published;
+
+    private final Set<Connection> connections = new HashSet<>();
+
+    private final List<FakeRedis> listening = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong injectedFaults = new AtomicLong();
+
+    /**
+     * 集群模式下 slot 到节点的映射，由 {@link FakeRedisCluster} 设置，单机模式为 null
+     */
+    private volatile AtomicReferenceArray<FakeRedisServer> slots;
+
+    private volatile long latencyNanos;
+
+    private volatile Fault fault = Fault.NONE;
+
+    private volatile double faultProbability;
+
+    private Selector selector;
+
+    private ServerSocketChannel serverChannel;
+
+    private Thread thread;
+
+    private volatile boolean running;
+
+    public FakeRedisServer(FakeRedis redis) {
+        this(redis, "127.0.0.1", 0);
+    }
+
+    /**
+     * @param redis 数据和脚本引擎，可以和其他 server 或 {@link FakeRedisExecutor} 共享
+     * @param host  监听地址
+     * @param port  监听端口，0 表示随机
+     */
+    public FakeRedisServer(FakeRedis redis, String host, int port) {
+        this.redis = redis;
+        this.host = host;
+        this.requestedPort = port;
+        this.nodeId = String.format("%040x", System.identityHashCode(this) * 31L + port);
+    }
+
+    /**
+     * 绑定端口并启动事件循环线程
+     *
+     * @return this
+     * @throws IOException
+     */
+    public synchronized FakeRedisServer start() throws IOException {
+        if (running) {
+            return this;
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(host, requestedPort), 1024);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        listen(redis);
+        running = true;
+        thread = new Thread(this::run, "fake-redis-" + getPort());
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public FakeRedis getRedis() {
+        return redis;
+    }
+
+    /**
+     * 设置每条回复的延迟，0 表示不延迟
+     *
+     * @param latency
+     * @param unit
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * 按概率对每条命令注入故障
+     *
+     * @param fault       故障类型
+     * @param probability 0 到 1
+     */
+    public void inject(Fault fault, double probability) {
+        this.faultProbability = probability;
+        this.fault = fault;
+    }
+
+    /**
+     * 网络分区，所有命令都不回复
+     */
+    public void partition() {
+        inject(Fault.TIMEOUT, 1);
+    }
+
+    /**
+     * 清除延迟和注入的故障
+     */
+    public void heal() {
+        inject(Fault.NONE, 0);
+        setLatency(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return 已注入的故障次数
+     */
+    public long injectedFaults() {
+        return injectedFaults.get();
+    }
+
+    @Override
+    public void close() {
+        Thread loop;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            loop = thread;
+            selector.wakeup();
+        }
+        try {
+            loop.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 把另一个实例上的 PUBLISH 也投递给本节点的订阅者，Redis 集群中 PUBLISH 会广播到所有节点
+     *
+     * @param other
+     */
+    void listen(FakeRedis other) {
+        listening.add(other);
+        other.subscribe(publisher);
+    }
+
+    void setSlots(AtomicReferenceArray<FakeRedisServer> slots) {
+        this.slots = slots;
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * PUBLISH 回调，可能在任意线程上，交给事件循环投递
+     */
+    private void published(String channel, String message) {
+        if (!running) {
+            return;
+        }
+        messages.add(new String[]{channel, message});
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                long timeout = nextDue();
+                if (timeout == 0) {
+                    selector.selectNow();
+                } else {
+                    selector.select(timeout < 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeout)));
+                }
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    }
+                }
+                deliverMessages();
+                flushDue();
+            }
+        } catch (IOException e) {
+            logger.error("fake redis event loop failed", e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void shutdown() {
+        for (FakeRedis other : listening) {
+            other.unsubscribe(publisher);
+        }
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.close();
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            logger.warn("close fake redis failed", e);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+        }
+    }
+
+    private void read(Connection connection) {
+        int read;
+        try {
+            if (connection.length == connection.buffer.length) {
+                connection.buffer = Arrays.copyOf(connection.buffer, connection.buffer.length * 2);
+            }
+            read = connection.channel.read(ByteBuffer.wrap(connection.buffer, connection.length,
+                    connection.buffer.length - connection.length));
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            connection.close();
+            return;
+        }
+        connection.length += read;
+        int position = 0;
+        List<String> command = new ArrayList<>();
+        while (!connection.closed) {
+            int next;
+            try {
+                next = Resp.parse(connection.buffer, position, connection.length, command);
+            } catch (FakeRedisException e) {
+                connection.reply(Resp.encode(e));
+                connection.closeAfterWrite = true;
+                break;
+            }
+            if (next < 0) {
+                break;
+            }
+            position = next;
+            if (!command.isEmpty()) {
+                dispatch(connection, command);
+                command = new ArrayList<>();
+            }
+        }
+        if (position > 0) {
+            System.arraycopy(connection.buffer, position, connection.buffer, 0, connection.length - position);
+            connection.length -= position;
+        }
+        flush(connection);
+    }
+
+    private void dispatch(Connection connection, List<String> command) {
+        if (fault != Fault.NONE && ThreadLocalRandom.current().nextDouble() < faultProbability) {
+            Fault injected = fault;
+            injectedFaults.incrementAndGet();
+            switch (injected) {
+                case ERROR:
+                    connection.reply(Resp.encode(new FakeRedisException("ERR injected failure")));
+                    return;
+                case CLOSE:
+                    connection.close();
+                    return;
+                case TIMEOUT:
+                    return;
+                default:
+                    break;
+            }
+        }
+        Object reply;
+        try {
+            reply = execute(connection, command);
+        } catch (FakeRedisException e) {
+            reply = e;
+        } catch (IndexOutOfBoundsException e) {
+            reply = new FakeRedisException("ERR wrong number of arguments for '"
+                    + command.get(0).toLowerCase(Locale.ROOT) + "' command");
+        } catch (RuntimeException e) {
+            reply = new FakeRedisException("ERR " + e);
+        }
+        if (reply != NO_REPLY) {
+            connection.reply(Resp.encode(reply));
+        }
+    }
+
+    private Object execute(Connection connection, List<String> command) {
+        String name = command.get(0).toUpperCase(Locale.ROOT);
+        if (!connection.channels.isEmpty() && !"SUBSCRIBE".equals(name) && !"UNSUBSCRIBE".equals(name)
+                && !"PING".equals(name) && !"QUIT".equals(name)) {
+            throw new FakeRedisException("ERR only (P)SUBSCRIBE / (P)UNSUBSCRIBE / PING / QUIT allowed in this context");
+        }
+        switch (name) {
+            case "PING":
+                if (!connection.channels.isEmpty()) {
+                    return Arrays.<Object>asList("pong", command.size() > 1 ? command.get(1) : "");
+                }
+                return command.size() > 1 ? command.get(1) : new FakeRedis.Status("PONG");
+            case "ECHO":
+                return command.get(1);
+            case "SELECT":
+            case "AUTH":
+            case "CLIENT":
+                return OK;
+            case "QUIT":
+                connection.reply(Resp.encode(OK));
+                connection.closeAfterWrite = true;
+                return NO_REPLY;
+            case "INFO":
+                return info();
+            case "CLUSTER":
+                return cluster(command);
+            case "SUBSCRIBE":
+                for (int i = 1; i < command.size(); i++) {
+                    connection.channels.add(command.get(i));
+                    connection.reply(Resp.encode(Arrays.<Object>asList(
+                            "subscribe", command.get(i), (long) connection.channels.size())));
+                }
+                return NO_REPLY;
+            case "UNSUBSCRIBE":
+                unsubscribe(connection, command.subList(1, command.size()));
+                return NO_REPLY;
+            default:
+                FakeRedisException redirect = redirect(name, command);
+                if (redirect != null) {
+                    throw redirect;
+                }
+                return redis.call(command);
+        }
+    }
+
+    private void unsubscribe(Connection connection, List<String> channels) {
+        List<String> targets = channels.isEmpty() ? new ArrayList<>(connection.channels) : channels;
+        if (targets.isEmpty()) {
+            connection.reply(Resp.encode(Arrays.<Object>asList("unsubscribe", null, 0L)));
+            return;
+        }
+        for (String channel : targets) {
+            connection.channels.remove(channel);
+            connection.reply(Resp.encode(Arrays.<Object>asList(
+                    "unsubscribe", channel, (long) connection.channels.size())));
+        }
+    }
+
+    /**
+     * 集群模式下检查 key 是否属于本节点
+     *
+     * @return 需要回复的 MOVED 或 CROSSSLOT 错误，本节点可以执行时返回 null
+     */
+    private FakeRedisException redirect(String name, List<String> command) {
+        AtomicReferenceArray<FakeRedisServer> clusterSlots = slots;
+        if (clusterSlots == null || KEYLESS_COMMANDS.contains(name)) {
+            return null;
+        }
+        List<String> keys;
+        if ("EVAL".equals(name) || "EVALSHA".equals(name)) {
+            int numKeys = Integer.parseInt(command.get(2));
+            keys = command.subList(3, 3 + numKeys);
+        } else if ("DEL".equals(name) || "EXISTS".equals(name)) {
+            keys = command.subList(1, command.size());
+        } else {
+            keys = command.size() > 1 ? command.subList(1, 2) : Collections.<String>emptyList();
+        }
+        if (keys.isEmpty()) {
+            return null;
+        }
+        int slot = JedisClusterCRC16.getSlot(keys.get(0));
+        for (int i = 1; i < keys.size(); i++) {
+            if (JedisClusterCRC16.getSlot(keys.get(i)) != slot) {
+                return new FakeRedisException("CROSSSLOT Keys in request don't hash to the same slot");
+            }
+        }
+        FakeRedisServer owner = clusterSlots.get(slot);
+        if (owner == this) {
+            return null;
+        }
+        return new FakeRedisException("MOVED " + slot + " " + owner.getHost() + ":" + owner.getPort());
+    }
+
+    private Object cluster(List<String> command) {
+        AtomicReferenceArray<FakeRedisServer> clusterSlots = slots;
+        if (clusterSlots == null) {
+            throw new FakeRedisException("ERR This instance has cluster support disabled");
+        }
+        String subcommand = command.get(1).toUpperCase(Locale.ROOT);
+        switch (subcommand) {
+            case "SLOTS":
+                List<Object> ranges = new ArrayList<>();
+                forEachRange(clusterSlots, (range, owner) -> ranges.add(Arrays.<Object>asList(range[0], range[1],
+                        Arrays.<Object>asList(owner.getHost(), (long) owner.getPort(), owner.getNodeId()))));
+                return ranges;
+            case "NODES":
+                Map<FakeRedisServer, StringBuilder> nodes = new LinkedHashMap<>();
+                forEachRange(clusterSlots, (range, owner) -> nodes.computeIfAbsent(owner, node -> new StringBuilder()
+                        .append(node.getNodeId()).append(' ').append(node.getHost()).append(':').append(node.getPort())
+                        .append('@').append(node.getPort() + 10000).append(node == this ? " myself,master" : " master")
+                        .append(" - 0 0 0 connected")).append(' ').append(range[0]).append('-').append(range[1]));
+                StringBuilder reply = new StringBuilder();
+                for (StringBuilder node : nodes.values()) {
+                    reply.append(node).append('\n');
+                }
+                return reply.toString();
+            case "KEYSLOT":
+                return (long) JedisClusterCRC16.getSlot(command.get(2));
+            default:
+                throw new FakeRedisException("ERR Unknown subcommand '" + command.get(1) + "'");
+        }
+    }
+
+    /**
+     * 按连续区间遍历 slot 映射
+     */
+    private static void forEachRange(AtomicReferenceArray<FakeRedisServer> clusterSlots,
+                                     BiConsumer<long[], FakeRedisServer> consumer) {
+        int start = 0;
+        for (int slot = 1; slot <= clusterSlots.length(); slot++) {
+            if (slot == clusterSlots.length() || clusterSlots.get(slot) != clusterSlots.get(start)) {
+                consumer.accept(new long[]{start, slot - 1}, clusterSlots.get(start));
+                start = slot;
+            }
+        }
+    }
+
+    private String info() {
+        return "# Server\r\nredis_version:5.0.0-fake\r\nredis_mode:" + (slots == null ? "standalone" : "cluster")
+                + "\r\ntcp_port:" + getPort()
+                + "\r\n# Clients\r\nconnected_clients:" + connections.size()
+                + "\r\n# Stats\r\ntotal_commands_processed:" + redis.commandsProcessed()
+                + "\r\ninjected_faults:" + injectedFaults.get()
+                + "\r\n# Keyspace\r\ndb0:keys=" + redis.execute("DBSIZE") + "\r\n";
+    }
+
+    private void deliverMessages() {
+        String[] message;
+        while ((message = messages.poll()) != null) {
+            byte[] encoded = null;
+            for (Connection connection : connections) {
+                if (connection.channels.contains(message[0])) {
+                    if (encoded == null) {
+                        encoded = Resp.encode(Arrays.<Object>asList("message", message[0], message[1]));
+                    }
+                    connection.reply(encoded);
+                    flush(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 距离最早一条延迟回复到期的纳秒数，没有延迟回复时返回 -1
+     */
+    private long nextDue() {
+        if (!messages.isEmpty()) {
+            return 0;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (Connection connection : connections) {
+            Pending head = connection.pending.peek();
+            if (head != null && connection.writing == null) {
+                earliest = Math.min(earliest, head.due);
+            }
+        }
+        if (earliest == Long.MAX_VALUE) {
+            return -1;
+        }
+        return Math.max(0, earliest - System.nanoTime());
+    }
+
+    private void flushDue() {
+        for (Connection connection : new ArrayList<>(connections)) {
+            if (!connection.pending.isEmpty()) {
+                flush(connection);
+            }
+        }
+    }
+
+    /**
+     * 写出到期的回复，socket 写满时注册 OP_WRITE
+     */
+    private void flush(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        long now = System.nanoTime();
+        try {
+            for (; ; ) {
+                if (connection.writing == null) {
+                    Pending head = connection.pending.peek();
+                    if (head == null || head.due > now) {
+                        break;
+                    }
+                    connection.pending.poll();
+                    connection.writing = ByteBuffer.wrap(collect(connection, head, now));
+                }
+                connection.channel.write(connection.writing);
+                if (connection.writing.hasRemaining()) {
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                connection.writing = null;
+            }
+        } catch (IOException e) {
+            connection.close();
+            return;
+        }
+        connection.key.interestOps(SelectionKey.OP_READ);
+        if (connection.closeAfterWrite && connection.pending.isEmpty()) {
+            connection.close();
+        }
+    }
+
+    /**
+     * 把同时到期的回复合并成一次写，pipeline 时减少系统调用
+     */
+    private static byte[] collect(Connection connection, Pending head, long now) {
+        Pending next = connection.pending.peek();
+        if (next == null || next.due > now) {
+            return head.data;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(head.data.length * 2);
+        out.write(head.data, 0, head.data.length);
+        while ((next = connection.pending.peek()) != null && next.due <= now) {
+            connection.pending.poll();
+            out.write(next.data, 0, next.data.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Pending {
+
+        private final long due;
+
+        private final byte[] data;
+
+        private Pending(long due, byte[] data) {
+            this.due = due;
+            this.data = data;
+        }
+    }
+
+    private final class Connection {
+
+        private final SocketChannel channel;
+
+        private final Queue<Pending> pending = new ArrayDeque<>();
+
+        /**
+         * 订阅的频道，非空时连接处于订阅模式
+         */
+        private final Set<String> channels = new LinkedHashSet<>();
+
+        private SelectionKey key;
+
+        private byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+        private int length;
+
+        private ByteBuffer writing;
+
+        private boolean closeAfterWrite;
+
+        private boolean closed;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void reply(byte[] data) {
+            long latency = latencyNanos;
+            pending.add(new Pending(latency == 0 ? 0 : System.nanoTime() + latency, data));
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.remove(this);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("close connection failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package top.masterc.benchmark.fake;
+
+import top.masterc.fake.FakeRedis;
+import top.masterc.fake.FakeRedisException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RESP 协议编解码
+ *
+ * @author Master.C
+ */
+final class Resp {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private Resp() {
+    }
+
+    /**
+     * 从 buffer[start, end) 解析一条命令，支持 multi bulk 和 inline 两种格式
+     *
+     * @param buffer
+     * @param start
+     * @param end
+     * @param command 解析出的命令参数
+     * @return 命令结束的位置，数据不完整时返回 -1
+     */
+    static int parse(byte[] buffer, int start, int end, List<String> command) {
+        if (start >= end) {
+            return -1;
+        }
+        if (buffer[start] != '*') {
+            int lineEnd = lineEnd(buffer, start, end);
+            if (lineEnd < 0) {
+                return -1;
+            }
+            for (String arg : new String(buffer, start, lineEnd - start, StandardCharsets.UTF_8).trim().split("\\s+")) {
+                if (!arg.isEmpty()) {
+                    command.add(arg);
+                }
+            }
+            return lineEnd + 2;
+        }
+        int lineEnd = lineEnd(buffer, start, end);
+        if (lineEnd < 0) {
+            return -1;
+        }
+        int count = parseInt(buffer, start + 1, lineEnd);
+        int position = lineEnd + 2;
+        List<String> args = new ArrayList<>(Math.max(count, 0));
+        for (int i = 0; i < count; i++) {
+            if (position >= end) {
+                return -1;
+            }
+            if (buffer[position] != '$') {
+                throw new FakeRedisException("ERR Protocol error: expected '$', got '" + (char) buffer[position] + "'");
+            }
+            lineEnd = lineEnd(buffer, position, end);
+            if (lineEnd < 0) {
+                return -1;
+            }
+            int length = parseInt(buffer, position + 1, lineEnd);
+            position = lineEnd + 2;
+            if (position + length + 2 > end) {
+                return -1;
+            }
+            args.add(new String(buffer, position, length, StandardCharsets.UTF_8));
+            position += length + 2;
+        }
+        command.addAll(args);
+        return position;
+    }
+
+    /**
+     * 按 {@link FakeRedis} 的回复类型编码
+     *
+     * @param reply
+     * @param out
+     */
+    static void write(Object reply, ByteArrayOutputStream out) {
+        if (reply == null) {
+            writeLine(out, "$-1");
+        } else if (reply instanceof Long) {
+            writeLine(out, ":" + reply);
+        } else if (reply instanceof String) {
+            byte[] bytes = ((String) reply).getBytes(StandardCharsets.UTF_8);
+            writeLine(out, "$" + bytes.length);
+            out.write(bytes, 0, bytes.length);
+            out.write(CRLF, 0, 2);
+        } else if (reply instanceof FakeRedis.Status) {
+            writeLine(out, "+" + reply);
+        } else if (reply instanceof FakeRedisException) {
+            writeLine(out, "-" + ((FakeRedisException) reply).getMessage().replace('\r', ' ').replace('\n', ' '));
+        } else if (reply instanceof List) {
+            List<?> list = (List<?>) reply;
+            writeLine(out, "*" + list.size());
+            for (Object item : list) {
+                write(item, out);
+            }
+        } else {
+            throw new IllegalArgumentException("unknown reply " + reply.getClass());
+        }
+    }
+
+    static byte[] encode(Object reply) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(reply, out);
+        return out.toByteArray();
+    }
+
+    private static void writeLine(ByteArrayOutputStream out, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+        out.write(CRLF, 0, 2);
+    }
+
+    private static int lineEnd(byte[] buffer, int start, int end) {
+        for (int i = start; i + 1 < end; i++) {
+            if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseInt(byte[] buffer, int start, int end) {
+        try {
+            return Integer.parseInt(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw new FakeRedisException("ERR Protocol error: invalid length");
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package top.masterc.executor;
+
+import top.masterc.util.RedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 合并并发脚本调用的执行器，包装另一个执行器，默认不开启
+ * <p>
+ * 调用 {@link #eval(RedisScript, List, List)} 的线程把命令放入队列，抢到发送权的线程最多等待 maxDelay 或凑满 maxBatch 个命令，
+ * 通过 {@link RedisCommandExecutor#evalPipelined(List)} 一次发出（集群模式下每个节点一个流水线），再把结果分发给各个调用线程。
+ * 发送期间到达的命令由下一批发送，负载越高每批越大，所以 maxDelay 默认为 0，低负载时不增加延迟；同时最多 pipelines 批在途。
+ * 脚本的错误回复只交给对应的调用，连接等错误整批调用都会收到；SET NX、订阅等非脚本命令直接交给被包装的执行器
+ *
+ * @author Master.C
+ */
+public class BatchingCommandExecutor implements RedisCommandExecutor {
+
+    private static final int DEFAULT_MAX_BATCH = 64;
+
+    private static final long DEFAULT_MAX_DELAY_MICROS = 0;
+
+    private static final int DEFAULT_PIPELINES = 4;
+
+    /**
+     * 等待者的兜底唤醒间隔
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RedisCommandExecutor delegate;
+
+    private final int maxBatch;
+
+    private final long maxDelayNanos;
+
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Semaphore pipelines;
+
+    public BatchingCommandExecutor(RedisCommandExecutor delegate) {
+        this(delegate, DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY_MICROS, DEFAULT_PIPELINES);
+    }
+
+    /**
+     * @param delegate       executor sending the pipelines
+     * @param maxBatch       max commands per pipeline
+     * @param maxDelayMicros max time to wait for a batch to fill, 0 sends whatever is queued at once
+     * @param pipelines      max pipelines in flight
+     */
+    public BatchingCommandExecutor(RedisCommandExecutor delegate, int maxBatch, long maxDelayMicros, int pipelines) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (maxBatch <= 0 || maxDelayMicros < 0 || pipelines <= 0) {
+            throw new IllegalArgumentException("maxBatch and pipelines must be positive, maxDelayMicros cannot be negative");
+        }
+        this.delegate = delegate;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.pipelines = new Semaphore(pipelines);
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, int expireTime) {
+        return delegate.setIfAbsent(key, value, expireTime);
+    }
+
+    @Override
+    public Object eval(RedisScript script, List<String> keys, List<String> args) {
+        Pending pending = new Pending(new ScriptCall(script, keys, args));
+        queue.add(pending);
+        queued.incrementAndGet();
+        while (!pending.done) {
+            //已经被其他线程取走的命令只需等待结果
+            if (!pending.taken && pipelines.tryAcquire()) {
+                boolean sent;
+                try {
+                    sent = flush();
+                } finally {
+                    pipelines.release();
+                }
+                //发送期间排队的命令交给队首的线程发送
+                Pending next = queue.peek();
+                if (next != null) {
+                    LockSupport.unpark(next.thread);
+                }
+                if (sent) {
+                    continue;
+                }
+            }
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        if (pending.error != null) {
+            throw pending.error;
+        }
+        return pending.result;
+    }
+
+    /**
+     * 发送一批排队的命令
+     *
+     * @return 队列为空时返回 false
+     */
+    private boolean flush() {
+        if (maxDelayNanos > 0 && queued.get() > 0) {
+            long deadline = System.nanoTime() + maxDelayNanos;
+            while (queued.get() < maxBatch && System.nanoTime() - deadline < 0) {
+                Thread.yield();
+            }
+        }
+        List<Pending> batch = new ArrayList<>(Math.min(maxBatch, queued.get()));
+        Pending pending;
+        while (batch.size() < maxBatch && (pending = queue.poll()) != null) {
+            pending.taken = true;
+            batch.add(pending);
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+        queued.addAndGet(-batch.size());
+
+        try {
+            if (batch.size() == 1) {
+                ScriptCall call = batch.get(0).call;
+                batch.get(0).complete(delegate.eval(call.getScript(), call.getKeys(), call.getArgs()), null);
+                return true;
+            }
+            List<ScriptCall> calls = new ArrayList<>(batch.size());
+            for (Pending p : batch) {
+                calls.add(p.call);
+            }
+            List<Object> results = delegate.evalPipelined(calls);
+            for (int i = 0; i < batch.size(); i++) {
+                Object result = results.get(i);
+                if (result instanceof RuntimeException) {
+                    batch.get(i).complete(null, (RuntimeException) result);
+                } else {
+                    batch.get(i).complete(result, null);
+                }
+            }
+        } catch (RuntimeException e) {
+            //流水线中的命令可能已经执行，不能单独重试
+            for (Pending p : batch) {
+                p.complete(null, e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<Object> evalPipelined(List<ScriptCall> calls) {
+        return delegate.evalPipelined(calls);
+    }
+
+    @Override
+    public void scriptLoad(RedisScript script) {
+        delegate.scriptLoad(script);
+    }
+
+    @Override
+    public void subscribe(MessageListener listener, String... channels) {
+        delegate.subscribe(listener, channels);
+    }
+
+    @Override
+    public boolean isSubscribable() {
+        return delegate.isSubscribable();
+    }
+
+    @Override
+    public boolean isCluster() {
+        return delegate.isCluster();
+    }
+
+    /**
+     * 一个等待结果的调用
+     */
+    private static final class Pending {
+        private final ScriptCall call;
+        private final Thread thread = Thread.currentThread();
+        private Object result;
+        private RuntimeException error;
+        private volatile boolean taken;
+        private volatile boolean done;
+
+        private Pending(ScriptCall call) {
+            this.call = call;
+        }
+
+        private void complete(Object result, RuntimeException error) {
+            this.result = result;
+            this.error = error;
+            this.done = true;
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package top.masterc.executor;
+
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import top.masterc.constant.RedisToolsConstant;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.List;
+
+/**
+ * 基于 {@link JedisConnectionFactory} 的执行器
+ * <p>
+ * 只通过连接工厂的公开接口获取连接：单机模式每次调用 {@link JedisConnectionFactory#getConnection()}，用完关闭归还连接池；
+ * 集群模式第一次调用时通过 {@link JedisConnectionFactory#getClusterConnection()} 取出连接工厂共享的 JedisCluster，
+ * 之后直接使用 {@link JedisClusterCommandExecutor}
+ * <p>
+ * 单机模式下每次调用都会创建一个 Spring 的 JedisConnection 对象，连接工厂没有公开内部的 JedisPool，这里无法避免。
+ * 只有 {@link JedisPoolCommandExecutor} 直接从 JedisPool 借出 Jedis，不创建该对象，对延迟敏感时请使用它
+ *
+ * @author Master.C
+ */
+public class ConnectionFactoryCommandExecutor implements RedisCommandExecutor {
+
+    private static final String LOCK_MSG = "OK";
+    private static final String SET_IF_NOT_EXIST = "NX";
+    private static final String SET_WITH_EXPIRE_TIME = "PX";
+
+    private final JedisConnectionFactory jedisConnectionFactory;
+
+    private final int type;
+
+    private volatile RedisCommandExecutor delegate;
+
+    private volatile boolean resolved;
+
+    public ConnectionFactoryCommandExecutor(JedisConnectionFactory jedisConnectionFactory, int type) {
+        this.jedisConnectionFactory = jedisConnectionFactory;
+        this.type = type;
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, int expireTime) {
+        RedisCommandExecutor executor = delegate();
+        if (executor != null) {
+            return executor.setIfAbsent(key, value, expireTime);
+        }
+        RedisConnection redisConnection = jedisConnectionFactory.getConnection();
+        try {
+            Jedis connection = (Jedis) redisConnection.getNativeConnection();
+            return LOCK_MSG.equals(connection.set(key, value, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, expireTime));
+        } finally {
+            redisConnection.close();
+        }
+    }
+
+    @Override
+    public Object eval(RedisScript script, List<String> keys, List<String> args) {
+        RedisCommandExecutor executor = delegate();
+        if (executor != null) {
+            return executor.eval(script, keys, args);
+        }
+        RedisConnection redisConnection = jedisConnectionFactory.getConnection();
+        try {
+            Jedis connection = (Jedis) redisConnection.getNativeConnection();
+            return ScriptRegistry.evalsha(connection, script, keys, args);
+        } finally {
+            redisConnection.close();
+        }
+    }
+
+    @Override
+    public List<Object> evalPipelined(List<ScriptCall> calls) {
+        RedisCommandExecutor executor = delegate();
+        if (executor != null) {
+            return executor.evalPipelined(calls);
+        }
+        RedisConnection redisConnection = jedisConnectionFactory.getConnection();
+        try {
+            Jedis connection = (Jedis) redisConnection.getNativeConnection();
+            return JedisPoolCommandExecutor.evalPipelined(connection, calls);
+        } finally {
+            redisConnection.close();
+        }
+    }
+
+    @Override
+    public void scriptLoad(RedisScript script) {
+        RedisCommandExecutor executor = delegate();
+        if (executor != null) {
+            executor.scriptLoad(script);
+            return;
+        }
+        RedisConnection redisConnection = jedisConnectionFactory.getConnection();
+        try {
+            Jedis connection = (Jedis) redisConnection.getNativeConnection();
+            ScriptRegistry.load(connection, script);
+        } finally {
+            redisConnection.close();
+        }
+    }
+
+    @Override
+    public void subscribe(MessageListener listener, String... channels) {
+        RedisCommandExecutor executor = delegate();
+        if (executor != null) {
+            executor.subscribe(listener, channels);
+            return;
+        }
+        RedisConnection redisConnection = jedisConnectionFactory.getConnection();
+        try {
+            Jedis connection = (Jedis) redisConnection.getNativeConnection();
+            connection.subscribe(new JedisSubscription(listener), channels);
+        } finally {
+            redisConnection.close();
+        }
+    }
+
+    @Override
+    public boolean isCluster() {
+        return type == RedisToolsConstant.CLUSTER;
+    }
+
+    /**
+     * 集群模式下连接工厂在 afterPropertiesSet 后才创建 JedisCluster，所以在第一次调用时才解析
+     *
+     * @return null 表示单机模式，每次通过连接工厂获取连接
+     */
+    private RedisCommandExecutor delegate() {
+        if (resolved) {
+            return delegate;
+        }
+        synchronized (this) {
+            if (!resolved) {
+                if (type == RedisToolsConstant.CLUSTER) {
+                    //JedisClusterConnection 的 close 不会关闭连接工厂共享的 JedisCluster，这里不需要关闭
+                    RedisClusterConnection connection = jedisConnectionFactory.getClusterConnection();
+                    delegate = new JedisClusterCommandExecutor((JedisCluster) connection.getNativeConnection());
+                }
+                resolved = true;
+            }
+            return delegate;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package top.masterc.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+import top.masterc.util.KeyRouter;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 集群模式，JedisCluster 自己管理每个节点的连接池，直接调用，不关闭
+ *
+ * @author Master.C
+ */
+public class JedisClusterCommandExecutor implements RedisCommandExecutor {
+
+    private static Logger logger = LoggerFactory.getLogger(JedisClusterCommandExecutor.class);
+
+    private static final String LOCK_MSG = "OK";
+    private static final String SET_IF_NOT_EXIST = "NX";
+    private static final String SET_WITH_EXPIRE_TIME = "PX";
+
+    private final JedisCluster jedisCluster;
+
+    /**
+     * slot -> 主节点连接池，由 CLUSTER SLOTS 构建，流水线时按节点分组；收到 MOVED / ASK 后重建
+     */
+    private volatile JedisPool[] slots;
+
+    public JedisClusterCommandExecutor(JedisCluster jedisCluster) {
+        if (jedisCluster == null) {
+            throw new IllegalArgumentException("jedisCluster cannot be null");
+        }
+        this.jedisCluster = jedisCluster;
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, int expireTime) {
+        return LOCK_MSG.equals(jedisCluster.set(key, value, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, expireTime));
+    }
+
+    @Override
+    public Object eval(RedisScript script, List<String> keys, List<String> args) {
+        return ScriptRegistry.evalsha(jedisCluster, script, keys, args);
+    }
+
+    /**
+     * 按 slot 所在节点分组，每个节点一个流水线；不知道节点或被重定向的调用通过 JedisCluster 单独执行
+     *
+     * @param calls
+     * @return
+     */
+    @Override
+    public List<Object> evalPipelined(List<ScriptCall> calls) {
+        JedisPool[] table = slots();
+        Map<JedisPool, List<Integer>> nodes = new IdentityHashMap<>();
+        List<Integer> single = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            List<String> keys = calls.get(i).getKeys();
+            JedisPool pool = keys.isEmpty() ? null : table[KeyRouter.slot(keys.get(0))];
+            if (pool == null) {
+                single.add(i);
+            } else {
+                nodes.computeIfAbsent(pool, p -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Object[] results = new Object[calls.size()];
+        boolean redirected = false;
+        for (Map.Entry<JedisPool, List<Integer>> node : nodes.entrySet()) {
+            List<Integer> indexes = node.getValue();
+            List<ScriptCall> nodeCalls = new ArrayList<>(indexes.size());
+            for (int i : indexes) {
+                nodeCalls.add(calls.get(i));
+            }
+            List<Integer> retry = new ArrayList<>();
+            List<Object> nodeResults;
+            try (Jedis jedis = node.getKey().getResource()) {
+                nodeResults = Pipelines.evalsha(jedis, nodeCalls, retry);
+            }
+            for (int j = 0; j < indexes.size(); j++) {
+                results[indexes.get(j)] = nodeResults.get(j);
+            }
+            for (int j : retry) {
+                single.add(indexes.get(j));
+            }
+            redirected |= !retry.isEmpty();
+        }
+        if (redirected) {
+            //NOSCRIPT 也会走到这里，重建一次 slot 表的代价可以接受
+            slots = null;
+        }
+
+        for (int i : single) {
+            ScriptCall call = calls.get(i);
+            try {
+                results[i] = ScriptRegistry.evalsha(jedisCluster, call.getScript(), call.getKeys(), call.getArgs());
+            } catch (JedisDataException e) {
+                results[i] = e;
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private JedisPool[] slots() {
+        JedisPool[] table = slots;
+        if (table == null) {
+            table = loadSlots();
+            slots = table;
+        }
+        return table;
+    }
+
+    /**
+     * 从任意一个可用节点读取 CLUSTER SLOTS，全部失败时返回空表，所有调用退回 JedisCluster 单独执行
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private JedisPool[] loadSlots() {
+        JedisPool[] table = new JedisPool[JedisCluster.HASHSLOTS];
+        Map<String, JedisPool> nodes = jedisCluster.getClusterNodes();
+        for (Map.Entry<String, JedisPool> node : nodes.entrySet()) {
+            try (Jedis jedis = node.getValue().getResource()) {
+                for (Object range : jedis.clusterSlots()) {
+                    List<Object> slotRange = (List<Object>) range;
+                    int start = ((Long) slotRange.get(0)).intValue();
+                    int end = ((Long) slotRange.get(1)).intValue();
+                    List<Object> master = (List<Object>) slotRange.get(2);
+                    JedisPool pool = nodes.get(SafeEncoder.encode((byte[]) master.get(0)) + ":" + master.get(1));
+                    for (int slot = start; slot <= end; slot++) {
+                        table[slot] = pool;
+                    }
+                }
+                return table;
+            } catch (Exception e) {
+                logger.warn("cluster slots failed on node {}", node.getKey(), e);
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public void scriptLoad(RedisScript script) {
+        ScriptRegistry.load(jedisCluster, script);
+    }
+
+    @Override
+    public void subscribe(MessageListener listener, String... channels) {
+        jedisCluster.subscribe(new JedisSubscription(listener), channels);
+    }
+
+    @Override
+    public boolean isCluster() {
+        return true;
+    }
+}
@@ -0,0 +1,92 @@
+package top.masterc.executor;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Pool;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单机模式，每次调用从连接池借一个 Jedis，用完归还
+ *
+ * @author Master.C
+ */
+public class JedisPoolCommandExecutor implements RedisCommandExecutor {
+
+    private static final String LOCK_MSG = "OK";
+    private static final String SET_IF_NOT_EXIST = "NX";
+    private static final String SET_WITH_EXPIRE_TIME = "PX";
+
+    private final Pool<Jedis> pool;
+
+    public JedisPoolCommandExecutor(Pool<Jedis> pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        this.pool = pool;
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, int expireTime) {
+        try (Jedis jedis = pool.getResource()) {
+            return LOCK_MSG.equals(jedis.set(key, value, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, expireTime));
+        }
+    }
+
+    @Override
+    public Object eval(RedisScript script, List<String> keys, List<String> args) {
+        try (Jedis jedis = pool.getResource()) {
+            return ScriptRegistry.evalsha(jedis, script, keys, args);
+        }
+    }
+
+    @Override
+    public List<Object> evalPipelined(List<ScriptCall> calls) {
+        try (Jedis jedis = pool.getResource()) {
+            return evalPipelined(jedis, calls);
+        }
+    }
+
+    /**
+     * NOSCRIPT 的调用单独重试，重试时 EVAL 会把脚本缓存到节点上
+     *
+     * @param jedis
+     * @param calls
+     * @return
+     */
+    static List<Object> evalPipelined(Jedis jedis, List<ScriptCall> calls) {
+        List<Integer> retry = new ArrayList<>();
+        List<Object> results = Pipelines.evalsha(jedis, calls, retry);
+        for (int i : retry) {
+            ScriptCall call = calls.get(i);
+            try {
+                results.set(i, ScriptRegistry.evalsha(jedis, call.getScript(), call.getKeys(), call.getArgs()));
+            } catch (JedisDataException e) {
+                results.set(i, e);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void scriptLoad(RedisScript script) {
+        try (Jedis jedis = pool.getResource()) {
+            ScriptRegistry.load(jedis, script);
+        }
+    }
+
+    @Override
+    public void subscribe(MessageListener listener, String... channels) {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.subscribe(new JedisSubscription(listener), channels);
+        }
+    }
+
+    @Override
+    public boolean isCluster() {
+        return false;
+    }
+}
@@ -0,0 +1,49 @@
+package top.masterc.executor;
+
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * 把 {@link MessageListener} 适配为 Jedis 的订阅，增减频道时加锁，可以在订阅线程之外调用
+ *
+ * @author Master.C
+ */
+final class JedisSubscription extends JedisPubSub implements Subscription {
+
+    private final MessageListener listener;
+
+    /**
+     * 只在订阅线程上访问
+     */
+    private boolean notified;
+
+    JedisSubscription(MessageListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+        listener.onMessage(channel, message);
+    }
+
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+        if (!notified) {
+            notified = true;
+            listener.onSubscribed(this);
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(String... channels) {
+        super.subscribe(channels);
+    }
+
+    @Override
+    public synchronized void unsubscribe(String... channels) {
+        if (channels.length == 0) {
+            super.unsubscribe();
+        } else {
+            super.unsubscribe(channels);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package top.masterc.executor;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.AsyncExecutions;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.masterc.util.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Lettuce 的执行器，所有调用共用一个线程安全的多路复用连接
+ * <p>
+ * 并发调用的命令直接写入同一个 socket，不等待前一个命令的回复，相当于自动流水线；没有连接池，也就没有借还连接的竞争。
+ * 调用线程只等待自己命令的回复，超时为连接的超时时间。集群模式下 Lettuce 按第一个 key 的 slot 路由，并处理 MOVED / ASK。
+ * {@link #subscribe(MessageListener, String...)} 需要在构造时传入订阅连接（RedisClient / RedisClusterClient 的 connectPubSub()），
+ * 断线后 Lettuce 自动重连并恢复订阅；没有订阅连接时不能开启锁的释放通知
+ *
+ * @author Master.C
+ */
+public class LettuceCommandExecutor implements RedisCommandExecutor {
+
+    private static Logger logger = LoggerFactory.getLogger(LettuceCommandExecutor.class);
+
+    private static final String LOCK_MSG = "OK";
+
+    private final StatefulConnection<String, String> connection;
+
+    private final RedisClusterAsyncCommands<String, String> commands;
+
+    private final boolean cluster;
+
+    private final StatefulRedisPubSubConnection<String, String> pubSubConnection;
+
+    /**
+     * @param connection long-lived connection, closed by the caller
+     */
+    public LettuceCommandExecutor(StatefulRedisConnection<String, String> connection) {
+        this(connection, null);
+    }
+
+    /**
+     * @param connection       long-lived connection, closed by the caller
+     * @param pubSubConnection long-lived pub/sub connection for lock release notifications, closed by the caller
+     */
+    public LettuceCommandExecutor(StatefulRedisConnection<String, String> connection,
+                                  StatefulRedisPubSubConnection<String, String> pubSubConnection) {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection cannot be null");
+        }
+        this.connection = connection;
+        this.commands = connection.async();
+        this.cluster = false;
+        this.pubSubConnection = pubSubConnection;
+    }
+
+    /**
+     * @param connection long-lived cluster connection, closed by the caller
+     */
+    public LettuceCommandExecutor(StatefulRedisClusterConnection<String, String> connection) {
+        this(connection, null);
+    }
+
+    /**
+     * PUBLISH 在集群中广播到所有节点，订阅连接连到任一节点即可
+     *
+     * @param connection       long-lived cluster connection, closed by the caller
+     * @param pubSubConnection long-lived pub/sub connection for lock release notifications, closed by the caller
+     */
+    public LettuceCommandExecutor(StatefulRedisClusterConnection<String, String> connection,
+                                  StatefulRedisPubSubConnection<String, String> pubSubConnection) {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection cannot be null");
+        }
+        this.connection = connection;
+        this.commands = connection.async();
+        this.cluster = true;
+        this.pubSubConnection = pubSubConnection;
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, int expireTime) {
+        return LOCK_MSG.equals(await(commands.set(key, value, SetArgs.Builder.nx().px(expireTime))));
+    }
+
+    @Override
+    public Object eval(RedisScript script, List<String> keys, List<String> args) {
+        try {
+            return await(dispatch(CommandType.EVALSHA, script.getSha1(), keys, args));
+        } catch (RedisNoScriptException e) {
+            logger.debug("NOSCRIPT {}, fall back to EVAL", script);
+            return await(dispatch(CommandType.EVAL, script.getScript(), keys, args));
+        }
+    }
+
+    /**
+     * 先发出全部命令再依次等待回复，NOSCRIPT 的调用单独重试，错误回复放在对应位置
+     *
+     * @param calls
+     * @return
+     */
+    @Override
+    public List<Object> evalPipelined(List<ScriptCall> calls) {
+        List<RedisFuture<Object>> futures = new ArrayList<>(calls.size());
+        for (ScriptCall call : calls) {
+            futures.add(dispatch(CommandType.EVALSHA, call.getScript().getSha1(), call.getKeys(), call.getArgs()));
+        }
+        List<Object> results = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            try {
+                results.add(await(futures.get(i)));
+            } catch (RedisNoScriptException e) {
+                ScriptCall call = calls.get(i);
+                try {
+                    results.add(await(dispatch(CommandType.EVAL, call.getScript().getScript(), call.getKeys(),
+                            call.getArgs())));
+                } catch (RedisCommandExecutionException error) {
+                    results.add(error);
+                }
+            } catch (RedisCommandExecutionException e) {
+                results.add(e);
+            }
+        }
+        return results;
+    }
+
+    private RedisFuture<Object> dispatch(CommandType type, String script, List<String> keys, List<String> args) {
+        CommandArgs<String, String> commandArgs = new CommandArgs<>(StringCodec.UTF8)
+                .add(script)
+                .add(keys.size())
+                .addKeys(keys)
+                .addValues(args);
+        return commands.dispatch(type, new ReplyOutput(), commandArgs);
+    }
+
+    /**
+     * 在所有节点上 SCRIPT LOAD，集群模式下单个节点失败不影响其他节点
+     *
+     * @param script
+     */
+    @Override
+    public void scriptLoad(RedisScript script) {
+        if (!cluster) {
+            await(commands.scriptLoad(script.getScript()));
+            return;
+        }
+        AsyncExecutions<String> executions = ((RedisAdvancedClusterAsyncCommands<String, String>) commands).masters()
+                .commands().scriptLoad(script.getScript());
+        for (Map.Entry<RedisClusterNode, CompletableFuture<String>> node : executions.asMap().entrySet()) {
+            try {
+                node.getValue().get(connection.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+            } catch (Exception e) {
+                logger.warn("script load failed on node {}", node.getKey().getUri(), e);
+            }
+        }
+    }
+
+    /**
+     * 在订阅连接上订阅，阻塞直到全部退订、订阅连接被关闭或线程被中断
+     *
+     * @param listener
+     * @param channels
+     */
+    @Override
+    public void subscribe(MessageListener listener, String... channels) {
+        if (pubSubConnection == null) {
+            throw new UnsupportedOperationException("subscribe requires a pub/sub connection");
+        }
+        LettuceSubscription subscription = new LettuceSubscription(listener);
+        pubSubConnection.addListener(subscription);
+        try {
+            subscription.subscribe(channels);
+            listener.onSubscribed(subscription);
+            //重连由 Lettuce 处理，这里只需等待退订
+            while (!subscription.done.await(1, TimeUnit.SECONDS)) {
+                if (!pubSubConnection.isOpen()) {
+                    throw new RedisConnectionException("pub/sub connection closed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pubSubConnection.removeListener(subscription);
+            subscription.release();
+        }
+    }
+
+    @Override
+    public boolean isSubscribable() {
+        return pubSubConnection != null;
+    }
+
+    @Override
+    public boolean isCluster() {
+        return cluster;
+    }
+
+    private <T> T await(RedisFuture<T> future) {
+        return LettuceFutures.awaitOrCancel(future, connection.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 一次订阅只处理和退订自己订阅的频道
+     */
+    private class LettuceSubscription extends RedisPubSubAdapter<String, String> implements Subscription {
+
+        private final MessageListener listener;
+
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private LettuceSubscription(MessageListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void message(String channel, String message) {
+            if (channels.contains(channel)) {
+                listener.onMessage(channel, message);
+            }
+        }
+
+        @Override
+        public void subscribe(String... channels) {
+            this.channels.addAll(Arrays.asList(channels));
+            await(pubSubConnection.async().subscribe(channels));
+        }
+
+        @Override
+        public void unsubscribe(String... channels) {
+            String[] unsubscribed = channels.length == 0 ? this.channels.toArray(new String[0]) : channels;
+            this.channels.removeAll(Arrays.asList(unsubscribed));
+            if (this.channels.isEmpty()) {
+                done.countDown();
+            }
+            if (unsubscribed.length > 0) {
+                await(pubSubConnection.async().unsubscribe(unsubscribed));
+            }
+        }
+
+        /**
+         * subscribe 异常或被中断返回时退订剩余的频道，不等待回复
+         */
+        private void release() {
+            if (!channels.isEmpty() && pubSubConnection.isOpen()) {
+                pubSubConnection.async().unsubscribe(channels.toArray(new String[0]));
+            }
+        }
+    }
+}
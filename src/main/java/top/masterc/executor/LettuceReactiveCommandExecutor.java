@@ -0,0 +1,85 @@
+package top.masterc.executor;
+
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.reactive.RedisClusterReactiveCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import top.masterc.util.RedisScript;
+
+import java.util.List;
+
+/**
+ * 基于 Lettuce reactive API 的执行器，所有调用共用一个多路复用连接，不阻塞调用线程。
+ * 集群模式下 Lettuce 按第一个 key 的 slot 路由，并处理 MOVED / ASK
+ *
+ * @author Master.C
+ */
+public class LettuceReactiveCommandExecutor implements ReactiveRedisCommandExecutor {
+
+    private static Logger logger = LoggerFactory.getLogger(LettuceReactiveCommandExecutor.class);
+
+    private static final String LOCK_MSG = "OK";
+
+    private final RedisClusterReactiveCommands<String, String> commands;
+
+    private final boolean cluster;
+
+    /**
+     * @param connection long-lived connection, closed by the caller
+     */
+    public LettuceReactiveCommandExecutor(StatefulRedisConnection<String, String> connection) {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection cannot be null");
+        }
+        this.commands = connection.reactive();
+        this.cluster = false;
+    }
+
+    /**
+     * @param connection long-lived cluster connection, closed by the caller
+     */
+    public LettuceReactiveCommandExecutor(StatefulRedisClusterConnection<String, String> connection) {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection cannot be null");
+        }
+        this.commands = connection.reactive();
+        this.cluster = true;
+    }
+
+    @Override
+    public Mono<Boolean> setIfAbsent(String key, String value, int expireTime) {
+        return commands.set(key, value, SetArgs.Builder.nx().px(expireTime))
+                .map(LOCK_MSG::equals)
+                .defaultIfEmpty(false);
+    }
+
+    @Override
+    public Mono<Object> eval(RedisScript script, List<String> keys, List<String> args) {
+        return dispatch(CommandType.EVALSHA, script.getSha1(), keys, args)
+                .onErrorResume(RedisNoScriptException.class, e -> {
+                    logger.debug("NOSCRIPT {}, fall back to EVAL", script);
+                    return dispatch(CommandType.EVAL, script.getScript(), keys, args);
+                });
+    }
+
+    private Mono<Object> dispatch(CommandType type, String script, List<String> keys, List<String> args) {
+        CommandArgs<String, String> commandArgs = new CommandArgs<>(StringCodec.UTF8)
+                .add(script)
+                .add(keys.size())
+                .addKeys(keys)
+                .addValues(args);
+        return commands.<Object>dispatch(type, new ReplyOutput(), commandArgs).next();
+    }
+
+    @Override
+    public boolean isCluster() {
+        return cluster;
+    }
+}
@@ -0,0 +1,24 @@
+package top.masterc.executor;
+
+/**
+ * 与客户端无关的订阅回调，用于 {@link RedisCommandExecutor#subscribe(MessageListener, String...)}
+ *
+ * @author Master.C
+ */
+public interface MessageListener {
+
+    /**
+     * 订阅连接建立后调用一次，之后到 subscribe 返回前都可以通过 subscription 增减频道
+     *
+     * @param subscription
+     */
+    void onSubscribed(Subscription subscription);
+
+    /**
+     * 在订阅线程或客户端的 IO 线程上调用，不能阻塞
+     *
+     * @param channel
+     * @param message
+     */
+    void onMessage(String channel, String message);
+}
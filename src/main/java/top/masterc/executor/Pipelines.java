@@ -0,0 +1,80 @@
+package top.masterc.executor;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在一个 Jedis 连接上流水线执行多个脚本
+ *
+ * @author Master.C
+ */
+final class Pipelines {
+
+    private Pipelines() {
+    }
+
+    /**
+     * 一次往返发送所有 EVALSHA，结果按调用顺序返回。
+     * 返回 NOSCRIPT / MOVED / ASK 的调用脚本并没有执行，对应位置为 null，由调用方单独重试；
+     * 其他错误回复放在对应位置，不影响其他调用
+     *
+     * @param jedis
+     * @param calls
+     * @param retry 需要重试的下标
+     * @return
+     */
+    static List<Object> evalsha(Jedis jedis, List<ScriptCall> calls, List<Integer> retry) {
+        Pipeline pipeline = jedis.pipelined();
+        for (ScriptCall call : calls) {
+            //String 版本的 evalsha 按字符串解析返回值，整数返回值需要用二进制版本
+            pipeline.evalsha(SafeEncoder.encode(call.getScript().getSha1()), encode(call.getKeys()), encode(call.getArgs()));
+        }
+        List<Object> replies = pipeline.syncAndReturnAll();
+        List<Object> results = new ArrayList<>(replies.size());
+        for (int i = 0; i < replies.size(); i++) {
+            Object reply = replies.get(i);
+            if (reply instanceof JedisNoScriptException || reply instanceof JedisRedirectionException) {
+                retry.add(i);
+                results.add(null);
+            } else {
+                results.add(decode(reply));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 与 {@link Jedis#evalsha(String, List, List)} 一致，二进制回复转为 String，多层的表逐层转换
+     *
+     * @param reply
+     * @return
+     */
+    private static Object decode(Object reply) {
+        if (reply instanceof byte[]) {
+            return SafeEncoder.encode((byte[]) reply);
+        }
+        if (reply instanceof List) {
+            List<?> replies = (List<?>) reply;
+            List<Object> decoded = new ArrayList<>(replies.size());
+            for (Object item : replies) {
+                decoded.add(decode(item));
+            }
+            return decoded;
+        }
+        return reply;
+    }
+
+    private static List<byte[]> encode(List<String> values) {
+        List<byte[]> encoded = new ArrayList<>(values.size());
+        for (String value : values) {
+            encoded.add(SafeEncoder.encode(value));
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,41 @@
+package top.masterc.executor;
+
+import reactor.core.publisher.Mono;
+import top.masterc.util.RedisScript;
+
+import java.util.List;
+
+/**
+ * 非阻塞的 Redis 命令执行器，供 WebFlux 等事件循环线程调用
+ * <p>
+ * 与 {@link RedisCommandExecutor} 使用相同的 lua 脚本，结果同样为 Long / String / List，返回 nil 时 Mono 为空
+ *
+ * @author Master.C
+ */
+public interface ReactiveRedisCommandExecutor {
+
+    /**
+     * SET key value NX PX expireTime
+     *
+     * @param key
+     * @param value
+     * @param expireTime 毫秒
+     * @return true 设置成功
+     */
+    Mono<Boolean> setIfAbsent(String key, String value, int expireTime);
+
+    /**
+     * 通过 EVALSHA 执行脚本，NOSCRIPT 时退回 EVAL
+     *
+     * @param script
+     * @param keys
+     * @param args
+     * @return 脚本返回值
+     */
+    Mono<Object> eval(RedisScript script, List<String> keys, List<String> args);
+
+    /**
+     * @return true 集群模式，脚本的所有 key 必须在同一个 slot
+     */
+    boolean isCluster();
+}
@@ -0,0 +1,73 @@
+package top.masterc.executor;
+
+import top.masterc.util.RedisScript;
+
+import java.util.List;
+
+/**
+ * Redis 命令执行器
+ * <p>
+ * 持有长期存活的 JedisPool 或 JedisCluster，每次调用直接借还原生连接，热路径上不创建 Spring 连接包装对象，
+ * 集群模式下也不会因为 close 关闭整个 JedisCluster
+ *
+ * @author Master.C
+ */
+public interface RedisCommandExecutor {
+
+    /**
+     * SET key value NX PX expireTime
+     *
+     * @param key
+     * @param value
+     * @param expireTime 毫秒
+     * @return true 设置成功
+     */
+    boolean setIfAbsent(String key, String value, int expireTime);
+
+    /**
+     * 通过 EVALSHA 执行脚本，NOSCRIPT 时退回 EVAL
+     *
+     * @param script
+     * @param keys
+     * @param args
+     * @return 脚本返回值
+     */
+    Object eval(RedisScript script, List<String> keys, List<String> args);
+
+    /**
+     * 流水线执行多个脚本，每个节点一次往返，结果按调用顺序返回。
+     * 每个调用的 key 必须在同一个 slot，不同调用之间不保证原子性。
+     * 单个脚本的错误回复（如 WRONGTYPE）不影响其他调用，以 RuntimeException 放在该调用的位置；连接等错误直接抛出
+     *
+     * @param calls
+     * @return
+     */
+    List<Object> evalPipelined(List<ScriptCall> calls);
+
+    /**
+     * 在所有节点上 SCRIPT LOAD
+     *
+     * @param script
+     */
+    void scriptLoad(RedisScript script);
+
+    /**
+     * 订阅频道，阻塞直到全部退订或连接断开，订阅成功后通过 {@link MessageListener#onSubscribed(Subscription)} 增减频道
+     *
+     * @param listener
+     * @param channels
+     */
+    void subscribe(MessageListener listener, String... channels);
+
+    /**
+     * @return false 时 {@link #subscribe(MessageListener, String...)} 抛出 UnsupportedOperationException，不能开启锁的释放通知
+     */
+    default boolean isSubscribable() {
+        return true;
+    }
+
+    /**
+     * @return true 集群模式，脚本的所有 key 必须在同一个 slot
+     */
+    boolean isCluster();
+}
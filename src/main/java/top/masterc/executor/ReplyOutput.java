@@ -0,0 +1,81 @@
+package top.masterc.executor;
+
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.CommandOutput;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 把任意脚本返回值解码为和 Jedis 一致的类型：整数为 Long，字符串为 String，数组为 List（可嵌套），nil 为 null
+ * <p>
+ * Lettuce 的 ScriptOutputType 需要调用方事先知道返回类型，这里按实际收到的回复构造结果，同一个脚本可以在两种客户端上共用
+ *
+ * @author Master.C
+ */
+class ReplyOutput extends CommandOutput<String, String, Object> {
+
+    /**
+     * 尚未收满元素的数组，栈顶为最内层
+     */
+    private final Deque<Multi> multis = new ArrayDeque<>();
+
+    ReplyOutput() {
+        super(StringCodec.UTF8, null);
+    }
+
+    @Override
+    public void set(long integer) {
+        add(integer);
+    }
+
+    @Override
+    public void set(ByteBuffer bytes) {
+        add(bytes == null ? null : codec.decodeValue(bytes));
+    }
+
+    @Override
+    public void setSingle(ByteBuffer bytes) {
+        add(bytes == null ? null : decodeAscii(bytes));
+    }
+
+    @Override
+    public void multi(int count) {
+        if (count <= 0) {
+            //空数组或 nil 数组没有后续元素
+            add(count == 0 ? new ArrayList<>(0) : null);
+            return;
+        }
+        multis.push(new Multi(count));
+    }
+
+    private void add(Object value) {
+        for (; ; ) {
+            Multi multi = multis.peek();
+            if (multi == null) {
+                output = value;
+                return;
+            }
+            multi.values.add(value);
+            if (multi.values.size() < multi.count) {
+                return;
+            }
+            //数组收满，作为一个元素加入外层
+            multis.pop();
+            value = multi.values;
+        }
+    }
+
+    private static final class Multi {
+        private final int count;
+        private final List<Object> values;
+
+        private Multi(int count) {
+            this.count = count;
+            this.values = new ArrayList<>(count);
+        }
+    }
+}
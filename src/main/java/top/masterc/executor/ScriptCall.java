@@ -0,0 +1,37 @@
+package top.masterc.executor;
+
+import top.masterc.util.RedisScript;
+
+import java.util.List;
+
+/**
+ * 一次脚本调用，用于 {@link RedisCommandExecutor#evalPipelined(List)}
+ *
+ * @author Master.C
+ */
+public final class ScriptCall {
+
+    private final RedisScript script;
+
+    private final List<String> keys;
+
+    private final List<String> args;
+
+    public ScriptCall(RedisScript script, List<String> keys, List<String> args) {
+        this.script = script;
+        this.keys = keys;
+        this.args = args;
+    }
+
+    public RedisScript getScript() {
+        return script;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public List<String> getArgs() {
+        return args;
+    }
+}
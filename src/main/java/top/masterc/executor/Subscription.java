@@ -0,0 +1,23 @@
+package top.masterc.executor;
+
+/**
+ * 一次 {@link RedisCommandExecutor#subscribe(MessageListener, String...)} 的订阅，可以在其他线程上增减频道
+ *
+ * @author Master.C
+ */
+public interface Subscription {
+
+    /**
+     * 增加订阅的频道
+     *
+     * @param channels
+     */
+    void subscribe(String... channels);
+
+    /**
+     * 退订频道，不传频道时退订全部，subscribe 随之返回
+     *
+     * @param channels
+     */
+    void unsubscribe(String... channels);
+}
@@ -0,0 +1,96 @@
+package top.masterc.intercept;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import top.masterc.annotation.SpringControllerLimiter;
+import top.masterc.limit.ReactiveRateLimiter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * WebFlux 下的 {@link RateLimiterInterceptor}，controller方法需使用SpringControllerLimiter注解
+ * <p>
+ * 通过 handlerMapping（一般为 requestMappingHandlerMapping）找到处理请求的方法，限流判断不阻塞事件循环线程。
+ * 配置 keyResolver 时按请求解析出的 key 限流，解析结果为 null 的请求不限流。
+ * 被限流的请求返回 429 和 Retry-After（秒），响应体为注解的 errorMsg
+ */
+public class RateLimiterWebFilter implements WebFilter {
+
+    private static Logger logger = LoggerFactory.getLogger(RateLimiterWebFilter.class);
+
+    private final ReactiveRateLimiter rateLimiter;
+
+    private final HandlerMapping handlerMapping;
+
+    private final Function<ServerWebExchange, String> keyResolver;
+
+    public RateLimiterWebFilter(ReactiveRateLimiter rateLimiter, HandlerMapping handlerMapping) {
+        this(rateLimiter, handlerMapping, null);
+    }
+
+    /**
+     * @param rateLimiter
+     * @param handlerMapping
+     * @param keyResolver    限流 key，例如用户 id 或客户端 ip，返回 null 的请求不限流；为 null 时所有请求共享全局限流
+     */
+    public RateLimiterWebFilter(ReactiveRateLimiter rateLimiter, HandlerMapping handlerMapping,
+                                Function<ServerWebExchange, String> keyResolver) {
+        if (rateLimiter == null || handlerMapping == null) {
+            throw new IllegalArgumentException("rateLimiter and handlerMapping cannot be null");
+        }
+        this.rateLimiter = rateLimiter;
+        this.handlerMapping = handlerMapping;
+        this.keyResolver = keyResolver;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return handlerMapping.getHandler(exchange)
+                .filter(HandlerMethod.class::isInstance)
+                .map(handler -> Optional.ofNullable(
+                        ((HandlerMethod) handler).getMethodAnnotation(SpringControllerLimiter.class)))
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(annotation -> {
+                    if (!annotation.isPresent()) {
+                        //skip
+                        return chain.filter(exchange);
+                    }
+                    Mono<Long> delay;
+                    if (keyResolver == null) {
+                        delay = rateLimiter.acquireOrDelay();
+                    } else {
+                        String key = keyResolver.apply(exchange);
+                        if (key == null) {
+                            //no key to limit on
+                            return chain.filter(exchange);
+                        }
+                        delay = rateLimiter.acquireOrDelay(key, 1);
+                    }
+                    return delay.flatMap(millis -> millis == 0
+                            ? chain.filter(exchange) : reject(exchange, annotation.get(), millis));
+                });
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, SpringControllerLimiter annotation, long delayMillis) {
+        logger.warn(annotation.errorMsg());
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        //秒，向上取整
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(TimeUnit.MILLISECONDS.toSeconds(delayMillis + 999)));
+        DataBuffer body = response.bufferFactory().wrap(annotation.errorMsg().getBytes(StandardCharsets.UTF_8));
+        return response.writeWith(Mono.just(body));
+    }
+}
@@ -0,0 +1,54 @@
+package top.masterc.limit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 每个限流 key 在本地的租借状态，用于 key 数量很多（每个用户一个 key）的场景
+ * <p>
+ * 基于 Caffeine 的 W-TinyLFU：大量只出现一两次的冷 key 不会把热 key 挤出去，条目数不超过 maxKeys，
+ * 内存与 key 的总数无关。被淘汰的 key 下次访问时重新建立状态，未用完的许可不归还，只会让该窗口的流量偏少
+ *
+ * @author Master.C
+ */
+class KeyLeases {
+
+    private final Cache<String, KeyLease> cache;
+
+    private final Function<String, KeyLease> factory;
+
+    /**
+     * @param maxKeys 最多保存的 key 数
+     * @param keys    限流 key -> 脚本 KEYS，每个 key 只在建立状态时计算一次
+     */
+    KeyLeases(int maxKeys, Function<String, List<String>> keys) {
+        this.cache = Caffeine.newBuilder().maximumSize(maxKeys).build();
+        this.factory = key -> new KeyLease(keys.apply(key));
+    }
+
+    KeyLease get(String key) {
+        return cache.get(key, factory);
+    }
+
+    long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 一个 key 当前窗口的租借，以及访问 Redis 时用的 KEYS
+     */
+    static final class KeyLease extends AtomicReference<PermitLease> {
+
+        final List<String> keys;
+
+        private KeyLease(List<String> keys) {
+            super(new PermitLease());
+            this.keys = keys;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package top.masterc.limit;
+
+import top.masterc.util.KeyRouter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 限流算法，每种算法对应一个 lua 脚本。
+ * 当前时间和窗口编号都在脚本里用 Redis TIME 计算，各实例的时钟偏差不影响窗口划分。
+ * 除固定窗口外每种算法在限流 key 后加上自己的后缀，同一个 key 用不同算法限流时数据结构不会冲突（WRONGTYPE）
+ *
+ * @author Master.C
+ */
+public enum LimitAlgorithm {
+
+    /**
+     * 固定窗口，key 为 限流key:窗口编号，窗口交界处可能出现 2 倍突发
+     */
+    FIXED_WINDOW("limit.lua", "") {
+        @Override
+        List<String> keys(String key, boolean cluster) {
+            return Collections.singletonList(windowKey(key, cluster));
+        }
+
+        @Override
+        List<String> args(int limit, int permits) {
+            return Arrays.asList(String.valueOf(limit), String.valueOf(permits), String.valueOf(WINDOW_MILLIS));
+        }
+    },
+
+    /**
+     * 滑动日志，sorted set 记录窗口内每一个请求，最精确，内存随 limit 线性增长，key 为 限流key:log
+     */
+    SLIDING_LOG("limit_sliding_log.lua", ":log") {
+        @Override
+        List<String> keys(String key, boolean cluster) {
+            return Collections.singletonList(key + suffix);
+        }
+
+        @Override
+        List<String> args(int limit, int permits) {
+            String member = INSTANCE + "-" + SEQUENCE.incrementAndGet();
+            return Arrays.asList(String.valueOf(limit), String.valueOf(WINDOW_MILLIS), member, String.valueOf(permits));
+        }
+
+        @Override
+        boolean constantArgs() {
+            return false;
+        }
+    },
+
+    /**
+     * 滑动窗口计数，当前和上一个窗口两个计数器加权估算，key 为 限流key:sw:窗口编号
+     */
+    SLIDING_WINDOW("limit_sliding_window.lua", ":sw") {
+        @Override
+        List<String> keys(String key, boolean cluster) {
+            return Collections.singletonList(windowKey(key, cluster) + suffix);
+        }
+
+        @Override
+        List<String> args(int limit, int permits) {
+            return Arrays.asList(String.valueOf(limit), String.valueOf(WINDOW_MILLIS), String.valueOf(permits));
+        }
+    },
+
+    /**
+     * GCRA，每个 key 只保存理论到达时间，请求被均匀摊开，允许一个窗口内突发 limit 个，key 为 限流key:gcra
+     */
+    GCRA("limit_gcra.lua", ":gcra") {
+        @Override
+        List<String> keys(String key, boolean cluster) {
+            return Collections.singletonList(key + suffix);
+        }
+
+        @Override
+        List<String> args(int limit, int permits) {
+            return Arrays.asList(String.valueOf(limit), String.valueOf(WINDOW_MILLIS), String.valueOf(permits));
+        }
+    };
+
+    /**
+     * 窗口大小，limit 为每秒请求数
+     */
+    static final long WINDOW_MILLIS = 1000;
+
+    /**
+     * {@link RedisRateLimiter#acquire()} 使用的 key
+     */
+    static final String DEFAULT_KEY = "rate_limiter";
+
+    private static final String INSTANCE = UUID.randomUUID().toString();
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final String script;
+
+    /**
+     * 加在限流 key 后面的后缀，固定窗口为空，保持原有的 key
+     */
+    final String suffix;
+
+    LimitAlgorithm(String script, String suffix) {
+        this.script = script;
+        this.suffix = suffix;
+    }
+
+    String getScript() {
+        return script;
+    }
+
+    /**
+     * 脚本在这个 key 后面拼上窗口编号。集群模式下没有 hash tag 的 key 整体作为 tag，拼出来的 key 和它在同一个 slot；
+     * 非集群模式下按配置的路由不改写
+     */
+    static String windowKey(String key, boolean cluster) {
+        return cluster ? KeyRouter.perKey().route(key) : key;
+    }
+
+    /**
+     * @param key     已经路由的限流 key
+     * @param cluster 集群模式
+     * @return 脚本 KEYS
+     */
+    abstract List<String> keys(String key, boolean cluster);
+
+    /**
+     * 脚本放行时返回正数，拒绝时返回 -等待时间(毫秒)，等待后才可能有足够的许可
+     *
+     * @param limit   限流大小
+     * @param permits 本次请求占用的许可数
+     * @return 脚本 ARGV
+     */
+    abstract List<String> args(int limit, int permits);
+
+    /**
+     * @return true 相同的 limit 和 permits 得到相同的 ARGV，可以缓存
+     */
+    boolean constantArgs() {
+        return true;
+    }
+}
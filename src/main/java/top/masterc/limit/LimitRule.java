@@ -0,0 +1,64 @@
+package top.masterc.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一条限流规则，用于 {@link RedisRateLimiter#acquire(java.util.List)}
+ *
+ * @author Master.C
+ */
+public final class LimitRule {
+
+    private final String key;
+
+    private final int limit;
+
+    private final long window;
+
+    /**
+     * @param key    限流 key
+     * @param limit  每个窗口内允许的请求数
+     * @param window 窗口大小
+     * @param unit   窗口大小的单位
+     */
+    public LimitRule(String key, int limit, long window, TimeUnit unit) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        this.key = key;
+        this.limit = limit;
+        this.window = unit.toMillis(window);
+        if (this.window <= 0) {
+            throw new IllegalArgumentException("window must be at least 1ms");
+        }
+    }
+
+    /**
+     * 每秒 limit 个请求
+     *
+     * @param key
+     * @param limit
+     * @return
+     */
+    public static LimitRule perSecond(String key, int limit) {
+        return new LimitRule(key, limit, 1, TimeUnit.SECONDS);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return 窗口大小 毫秒
+     */
+    public long getWindow() {
+        return window;
+    }
+}
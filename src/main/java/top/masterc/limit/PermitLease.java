@@ -0,0 +1,123 @@
+package top.masterc.limit;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 某个限流窗口内从 Redis 租借到本地的许可
+ * <p>
+ * 窗口的划分只由 Redis 的 TIME 决定：租借或被拒绝时 Redis 返回窗口剩余的毫秒数，本地按单调时钟在这之后让租借失效，
+ * 本机时钟与 Redis 不一致时不会把上一个窗口的许可用到下一个窗口
+ *
+ * @author Master.C
+ */
+class PermitLease {
+
+    /**
+     * 还没有从 Redis 得知窗口结束时间
+     */
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    /**
+     * 窗口结束的 System.nanoTime()
+     */
+    private volatile long deadline = UNKNOWN;
+
+    /**
+     * 租借时 Redis 返回的窗口编号，归还到这个窗口的计数，还没租借过时为 -1
+     */
+    volatile long redisWindow = -1;
+
+    private final AtomicLong permits = new AtomicLong();
+
+    /**
+     * Redis 中该窗口已经没有剩余许可，窗口内后续请求直接本地拒绝
+     */
+    private volatile boolean exhausted;
+
+    /**
+     * 窗口内是否已经有请求访问过 Redis
+     */
+    private final AtomicBoolean touched = new AtomicBoolean();
+
+    /**
+     * 记录 Redis 返回的窗口剩余时间，同一窗口内只记录第一次
+     *
+     * @param remainingMillis 窗口剩余毫秒数
+     * @param nowNanos        收到回复时的 System.nanoTime()
+     */
+    void windowEndsIn(long remainingMillis, long nowNanos) {
+        if (deadline == UNKNOWN) {
+            deadline = nowNanos + TimeUnit.MILLISECONDS.toNanos(remainingMillis);
+        }
+    }
+
+    /**
+     * 还没有访问过 Redis 的租借不会过期，它没有许可也没有被拒绝
+     *
+     * @param nowNanos
+     * @return true 窗口已经结束
+     */
+    boolean expired(long nowNanos) {
+        long end = deadline;
+        return end != UNKNOWN && nowNanos - end >= 0;
+    }
+
+    /**
+     * @param nowNanos
+     * @return 窗口剩余毫秒数，至少为 1
+     */
+    long remainingMillis(long nowNanos) {
+        long end = deadline;
+        if (end == UNKNOWN) {
+            return 1;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - nowNanos));
+    }
+
+    /**
+     * 无锁地从本地取一个许可
+     *
+     * @return true 取到
+     */
+    boolean tryTake() {
+        for (; ; ) {
+            long current = permits.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (permits.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    void add(long granted) {
+        permits.addAndGet(granted);
+    }
+
+    /**
+     * 取走所有剩余许可，用于窗口结束时归还
+     *
+     * @return 剩余许可数
+     */
+    long drain() {
+        return permits.getAndSet(0);
+    }
+
+    /**
+     * @return true 窗口内第一次访问 Redis
+     */
+    boolean firstMiss() {
+        return !touched.get() && touched.compareAndSet(false, true);
+    }
+
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    void exhausted() {
+        this.exhausted = true;
+    }
+}
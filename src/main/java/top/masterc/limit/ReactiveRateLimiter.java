@@ -0,0 +1,199 @@
+package top.masterc.limit;
+
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import top.masterc.executor.ReactiveRedisCommandExecutor;
+import top.masterc.metrics.MetricsRecorder;
+import top.masterc.metrics.NoopMetricsRecorder;
+import top.masterc.util.KeyRouter;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.List;
+
+/**
+ * 非阻塞的分布式限流，与 {@link RedisRateLimiter} 使用相同的脚本和 key，两者可以共享同一个限流计数
+ * <p>
+ * 返回的 Mono 在订阅时才访问 Redis，不阻塞事件循环线程。不支持批量租借和本地缓存，每次判断都访问一次 Redis
+ *
+ * @author Master.C
+ */
+public class ReactiveRateLimiter {
+
+    private static final long FAIL_CODE = 0;
+
+    private final ReactiveRedisCommandExecutor executor;
+
+    private final int limit;
+
+    private final LimitAlgorithm algorithm;
+
+    private final KeyRouter keyRouter;
+
+    private final MetricsRecorder metrics;
+
+    private final RedisScript script;
+
+    /**
+     * {@link #acquire()} 的 KEYS 和 permits = 1 时的 ARGV，ARGV 每次不同的算法为 null
+     */
+    private final List<String> defaultKeys;
+
+    private final List<String> singleArgs;
+
+    private ReactiveRateLimiter(Builder builder) {
+        this.executor = builder.executor;
+        this.limit = builder.limit;
+        this.algorithm = builder.algorithm;
+        this.keyRouter = builder.keyRouter;
+        this.metrics = builder.metrics;
+        this.script = new ScriptRegistry().register(algorithm.getScript());
+        this.defaultKeys = algorithm.keys(keyRouter.route(LimitAlgorithm.DEFAULT_KEY), executor.isCluster());
+        this.singleArgs = algorithm.constantArgs() ? algorithm.args(limit, 1) : null;
+    }
+
+    /**
+     * limit traffic
+     *
+     * @return emits true no limit, false limit
+     */
+    public Mono<Boolean> acquire() {
+        return limitRequest(null, LimitAlgorithm.DEFAULT_KEY, 1).map(delay -> delay == 0);
+    }
+
+    /**
+     * wait mode of {@link #acquire()}
+     *
+     * @return emits 0 acquired, otherwise milliseconds to wait before a permit may be available
+     */
+    public Mono<Long> acquireOrDelay() {
+        return limitRequest(null, LimitAlgorithm.DEFAULT_KEY, 1);
+    }
+
+    public Mono<Boolean> acquire(String key) {
+        return acquire(key, 1);
+    }
+
+    /**
+     * limit traffic by cost
+     *
+     * @param key     limit key
+     * @param permits permits taken by this request, at most limit
+     * @return emits true no limit, false limit
+     */
+    public Mono<Boolean> acquire(String key, int permits) {
+        return acquireOrDelay(key, permits).map(delay -> delay == 0);
+    }
+
+    /**
+     * wait mode, nothing is taken when rejected
+     *
+     * @param key     limit key
+     * @param permits permits taken by this request, at most limit
+     * @return emits 0 acquired, otherwise milliseconds to wait before enough permits may be available
+     */
+    public Mono<Long> acquireOrDelay(String key, int permits) {
+        if (StringUtils.isEmpty(key)) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+        if (permits <= 0 || permits > limit) {
+            throw new IllegalArgumentException("permits must be in [1, " + limit + "]");
+        }
+        return limitRequest(key, key, permits);
+    }
+
+    /**
+     * @param key     限流 key，null 表示全局限流
+     * @param name    metrics name
+     * @param permits 本次请求占用的许可数
+     * @return 0 放行，否则为等待时间
+     */
+    private Mono<Long> limitRequest(String key, String name, int permits) {
+        List<String> keys = key == null ? defaultKeys : algorithm.keys(keyRouter.route(key), executor.isCluster());
+        List<String> args = permits == 1 && singleArgs != null ? singleArgs : algorithm.args(limit, permits);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return executor.eval(script, keys, args)
+                    .map(result -> {
+                        long code = (Long) result;
+                        boolean permitted = code > FAIL_CODE;
+                        metrics.limiterDecision(name, System.nanoTime() - start, permitted);
+                        return permitted ? 0 : Math.max(1, -code);
+                    })
+                    .doOnError(Exception.class, e -> metrics.limiterError(name, e));
+        });
+    }
+
+    public static class Builder {
+        private ReactiveRedisCommandExecutor executor;
+
+        private int limit = 200;
+
+        private LimitAlgorithm algorithm = LimitAlgorithm.FIXED_WINDOW;
+
+        private KeyRouter keyRouter = KeyRouter.NONE;
+
+        private MetricsRecorder metrics = NoopMetricsRecorder.INSTANCE;
+
+        /**
+         * @param executor long-lived executor, can be shared by lockers and limiters
+         */
+        public Builder(ReactiveRedisCommandExecutor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor cannot be null");
+            }
+            this.executor = executor;
+        }
+
+        public Builder limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * 限流算法，默认固定窗口
+         *
+         * @param algorithm
+         * @return
+         */
+        public Builder algorithm(LimitAlgorithm algorithm) {
+            if (algorithm == null) {
+                throw new IllegalArgumentException("algorithm cannot be null");
+            }
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * 集群模式下限流 key 的 hash tag，默认 {@link KeyRouter#NONE}
+         *
+         * @param keyRouter
+         * @return
+         */
+        public Builder keyRouter(KeyRouter keyRouter) {
+            if (keyRouter == null) {
+                throw new IllegalArgumentException("keyRouter cannot be null");
+            }
+            this.keyRouter = keyRouter;
+            return this;
+        }
+
+        /**
+         * 记录每个限流 key 的判断耗时、放行和拒绝次数、Redis 错误
+         *
+         * @param metricsRecorder
+         * @return
+         */
+        public Builder metricsRecorder(MetricsRecorder metricsRecorder) {
+            if (metricsRecorder == null) {
+                throw new IllegalArgumentException("metricsRecorder cannot be null");
+            }
+            this.metrics = metricsRecorder;
+            return this;
+        }
+
+        public ReactiveRateLimiter build() {
+            return new ReactiveRateLimiter(this);
+        }
+    }
+}
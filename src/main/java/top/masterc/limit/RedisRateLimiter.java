@@ -2,17 +2,27 @@ package top.masterc.limit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.connection.RedisClusterConnection;
-import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.util.StringUtils;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisCluster;
-import top.masterc.constant.RedisToolsConstant;
-import top.masterc.util.ScriptUtil;
+import top.masterc.executor.ConnectionFactoryCommandExecutor;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.executor.ScriptCall;
+import top.masterc.metrics.MetricsRecorder;
+import top.masterc.metrics.NoopMetricsRecorder;
+import top.masterc.util.KeyRouter;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 基于Redis的分布式限流
@@ -24,8 +34,7 @@ public class RedisRateLimiter {
     private static Logger logger = LoggerFactory.getLogger(RedisRateLimiter.class);
 
 
-    private JedisConnectionFactory jedisConnectionFactory;
-    private int type;
+    private RedisCommandExecutor executor;
     private int limit = 200;
 
     private static final int FAIL_CODE = 0;
@@ -33,12 +42,73 @@ public class RedisRateLimiter {
     /**
      * lua script
      */
-    private String script;
+    private RedisScript script;
+
+    private RedisScript leaseScript;
+
+    private RedisScript leaseReturnScript;
+
+    private RedisScript multiScript;
+
+    private final ScriptRegistry scriptRegistry = new ScriptRegistry();
+
+    /**
+     * 每次从 Redis 租借的许可数，0 表示不租借，每个请求都访问 Redis
+     */
+    private int leaseSize;
+
+    private double leaseTolerance;
+
+    private LimitAlgorithm algorithm;
+
+    /**
+     * {@link #acquire()} 的 KEYS 和 permits = 1 时的 ARGV，不随时间变化，热路径上不再拼接字符串。
+     * ARGV 每次不同的算法为 null
+     */
+    private List<String> defaultKeys;
+
+    private List<String> singleArgs;
+
+    private List<String> leaseArgs;
+
+    /**
+     * 本地拒绝缓存，未开启时为 null
+     */
+    private RejectionCache rejections;
+
+    /**
+     * hash tag of limit keys, the global limit key of {@link #acquire()} is not routed
+     */
+    private KeyRouter keyRouter;
+
+    private final AtomicReference<PermitLease> lease = new AtomicReference<>(new PermitLease());
+
+    /**
+     * 每个 key 的本地租借，未开启时为 null
+     */
+    private KeyLeases keyLeases;
+
+    private MetricsRecorder metrics;
 
     private RedisRateLimiter(Builder builder) {
         this.limit = builder.limit;
-        this.jedisConnectionFactory = builder.jedisConnectionFactory;
-        this.type = builder.type;
+        this.executor = builder.executor;
+        this.leaseSize = builder.leaseSize;
+        this.leaseTolerance = builder.leaseTolerance;
+        this.algorithm = builder.algorithm;
+        this.keyRouter = builder.keyRouter;
+        this.metrics = builder.metrics;
+        if (builder.keyLeaseCacheSize > 0) {
+            this.keyLeases = new KeyLeases(builder.keyLeaseCacheSize,
+                    key -> algorithm.keys(keyRouter.route(key), executor.isCluster()));
+        }
+        if (builder.rejectionCacheSize > 0) {
+            this.rejections = new RejectionCache(builder.rejectionCacheSize);
+        }
+        this.defaultKeys = algorithm.keys(keyRouter.route(LimitAlgorithm.DEFAULT_KEY), executor.isCluster());
+        this.singleArgs = algorithm.constantArgs() ? algorithm.args(limit, 1) : null;
+        this.leaseArgs = Arrays.asList(String.valueOf(limit), String.valueOf(leaseSize), String.valueOf(leaseTolerance),
+                String.valueOf(LimitAlgorithm.WINDOW_MILLIS));
         buildScript();
     }
 
@@ -49,58 +119,313 @@ public class RedisRateLimiter {
      * @return if true no limit, false limit
      */
     public boolean acquire() {
+        long start = System.nanoTime();
+        boolean permitted;
+        try {
+            if (leaseSize > 0) {
+                permitted = acquireLeased(lease, defaultKeys, false) == 0;
+            } else {
+                permitted = limitRequest(null, 1) > FAIL_CODE;
+            }
+        } catch (RuntimeException e) {
+            metrics.limiterError(LimitAlgorithm.DEFAULT_KEY, e);
+            throw e;
+        }
+        metrics.limiterDecision(LimitAlgorithm.DEFAULT_KEY, System.nanoTime() - start, permitted);
+        return permitted;
+    }
 
-        //get connection
-        Object connection = getConnection();
-
-        String key = String.valueOf(System.currentTimeMillis() / 1000);
+    public boolean acquire(String key) {
+        return acquire(key, 1);
+    }
 
-        Object result = limitRequest(connection, key);
+    /**
+     * limit traffic by cost, e.g. a bulk export takes 100 permits and a point lookup 1
+     *
+     * @param key     limit key
+     * @param permits permits taken by this request, at most limit
+     * @return if true no limit, false limit
+     */
+    public boolean acquire(String key, int permits) {
+        return acquireOrDelay(key, permits) == 0;
+    }
 
-        return FAIL_CODE != (Long) result;
+    /**
+     * blocking acquire, sleeps for the delay computed by redis instead of retrying at a fixed interval
+     *
+     * @param key     limit key
+     * @param permits permits taken by this request, at most limit
+     * @param timeout max wait time in milliseconds
+     * @return true acquired, false when the permits cannot be available within timeout
+     * @throws InterruptedException
+     */
+    public boolean tryAcquire(String key, int permits, int timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (; ; ) {
+            long delay = acquireOrDelay(key, permits);
+            if (delay == 0) {
+                return true;
+            }
+            //等不到就直接返回，不空等
+            if (delay > TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(delay);
+        }
     }
 
-    public boolean acquire(String key) {
+    /**
+     * wait mode, nothing is taken when rejected. callers can schedule the request after the delay instead of
+     * retrying at random
+     *
+     * @param key     limit key
+     * @param permits permits taken by this request, at most limit
+     * @return 0 acquired, otherwise milliseconds to wait before enough permits may be available
+     */
+    public long acquireOrDelay(String key, int permits) {
         if (StringUtils.isEmpty(key)) {
             throw new IllegalArgumentException("key cannot be null");
         }
-        Object connection = getConnection();
-        key = key + System.currentTimeMillis() / 1000;
-        Object result = limitRequest(connection, key);
-        return FAIL_CODE != (Long) result;
+        if (permits <= 0 || permits > limit) {
+            throw new IllegalArgumentException("permits must be in [1, " + limit + "]");
+        }
+        long start = System.nanoTime();
+        if (keyLeases != null && permits == 1) {
+            return acquireKeyLeased(key, start);
+        }
+        long result;
+        try {
+            result = limitRequest(key, permits);
+        } catch (RuntimeException e) {
+            metrics.limiterError(key, e);
+            throw e;
+        }
+        boolean permitted = result > FAIL_CODE;
+        metrics.limiterDecision(key, System.nanoTime() - start, permitted);
+        return permitted ? 0 : Math.max(1, -result);
     }
 
-    private Object limitRequest(Object connection, String key) {
-        Object result = null;
-        if (connection instanceof Jedis) {
-            result = ((Jedis) connection).eval(script, Collections.singletonList(key), Collections.singletonList(String.valueOf(limit)));
-            ((Jedis) connection).close();
-        } else {
-            result = ((JedisCluster) connection).eval(script, Collections.singletonList(key), Collections.singletonList(String.valueOf(limit)));
-            try {
-                ((JedisCluster) connection).close();
-            } catch (IOException e) {
-                logger.error("IOException", e);
+    /**
+     * limit by several rules at once, e.g. per user, per tenant and global.
+     * all rules are checked in one atomic script call, the counters are only incremented when every rule passes.
+     * in cluster mode the keys must be in the same slot, use {@link KeyRouter#fixed(String)} or hash tags in the keys
+     *
+     * @param rules fixed window rules
+     * @return if true no limit, false limit
+     */
+    public boolean acquire(List<LimitRule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            throw new IllegalArgumentException("rules cannot be empty");
+        }
+        List<String> keys = new ArrayList<>(rules.size());
+        List<String> args = new ArrayList<>(rules.size() * 2);
+        for (LimitRule rule : rules) {
+            //窗口大小也放进 key，同一个 key 的不同窗口互不影响；脚本再拼上窗口编号
+            keys.add(LimitAlgorithm.windowKey(keyRouter.route(rule.getKey()) + ":" + rule.getWindow(),
+                    executor.isCluster()));
+            args.add(String.valueOf(rule.getLimit()));
+            args.add(String.valueOf(rule.getWindow()));
+        }
+        if (executor.isCluster() && KeyRouter.groupBySlot(keys, true).size() > 1) {
+            throw new IllegalArgumentException("rules must share a hash tag in cluster mode: " + keys);
+        }
+
+        long start = System.nanoTime();
+        long result;
+        try {
+            result = (Long) eval(multiScript, keys, args);
+        } catch (RuntimeException e) {
+            metrics.limiterError(rules.get(0).getKey(), e);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (result > FAIL_CODE) {
+            for (LimitRule rule : rules) {
+                metrics.limiterDecision(rule.getKey(), elapsed, true);
             }
+            return true;
         }
-        return result;
+        //只记录拒绝的规则
+        metrics.limiterDecision(rules.get((int) -result - 1).getKey(), elapsed, false);
+        return false;
     }
 
     /**
-     * get Redis connection
+     * limit many keys in one round trip per redis node, each key is decided independently
      *
-     * @return
+     * @param keys limit keys
+     * @return key -> true no limit, false limit, in iteration order of keys
      */
-    private Object getConnection() {
-        Object connection;
-        if (type == RedisToolsConstant.SINGLE) {
-            RedisConnection redisConnection = jedisConnectionFactory.getConnection();
-            connection = redisConnection.getNativeConnection();
-        } else {
-            RedisClusterConnection clusterConnection = jedisConnectionFactory.getClusterConnection();
-            connection = clusterConnection.getNativeConnection();
+    public Map<String, Boolean> acquireBatch(Collection<String> keys) {
+        Map<String, Boolean> permitted = new LinkedHashMap<>();
+        List<String> distinct = new ArrayList<>();
+        List<ScriptCall> calls = new ArrayList<>();
+        long start = System.nanoTime();
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (StringUtils.isEmpty(key)) {
+                throw new IllegalArgumentException("key cannot be null");
+            }
+            if (rejections != null && rejections.rejected(key, 1, start) > 0) {
+                metrics.limiterDecision(key, 0, false);
+                permitted.put(key, false);
+                continue;
+            }
+            //先占位，保持返回顺序
+            permitted.put(key, null);
+            distinct.add(key);
+            calls.add(new ScriptCall(script, algorithm.keys(keyRouter.route(key), executor.isCluster()), args(1)));
+        }
+        if (calls.isEmpty()) {
+            return permitted;
+        }
+        List<Object> results;
+        try {
+            results = scriptRegistry.evalPipelined(executor, calls);
+        } catch (RuntimeException e) {
+            for (String key : distinct) {
+                metrics.limiterError(key, e);
+            }
+            throw e;
+        }
+        //分摊到每个 key
+        long elapsed = (System.nanoTime() - start) / calls.size();
+        for (int i = 0; i < distinct.size(); i++) {
+            long result = (Long) results.get(i);
+            rejected(distinct.get(i), 1, result);
+            boolean allowed = result > FAIL_CODE;
+            metrics.limiterDecision(distinct.get(i), elapsed, allowed);
+            permitted.put(distinct.get(i), allowed);
         }
-        return connection;
+        return permitted;
+    }
+
+    /**
+     * @return 0 acquired, otherwise milliseconds until the window ends
+     */
+    private long acquireKeyLeased(String key, long start) {
+        long delay;
+        try {
+            KeyLeases.KeyLease keyLease = keyLeases.get(key);
+            delay = acquireLeased(keyLease, keyLease.keys, true);
+        } catch (RuntimeException e) {
+            metrics.limiterError(key, e);
+            throw e;
+        }
+        metrics.limiterDecision(key, System.nanoTime() - start, delay == 0);
+        return delay;
+    }
+
+    /**
+     * 先从本地租借的许可中取，取不到再从 Redis 批量租借，Redis 返回 0 后该窗口内直接本地拒绝
+     *
+     * @param ref       租借状态
+     * @param keys      脚本 KEYS
+     * @param coldFirst 窗口内第一次请求只取一个许可，同一窗口再次请求才批量租借，冷 key 不会白白租走许可
+     * @return 0 no limit, otherwise milliseconds until the window ends
+     */
+    private long acquireLeased(AtomicReference<PermitLease> ref, List<String> keys, boolean coldFirst) {
+        long now = System.nanoTime();
+        PermitLease current = ref.get();
+        if (current.expired(now)) {
+            PermitLease next = new PermitLease();
+            if (ref.compareAndSet(current, next)) {
+                returnPermits(current, keys);
+                current = next;
+            } else {
+                current = ref.get();
+            }
+        }
+
+        if (current.tryTake()) {
+            return 0;
+        }
+        if (current.isExhausted()) {
+            return current.remainingMillis(now);
+        }
+        if (coldFirst && current.firstMiss()) {
+            long result = (Long) eval(script, keys, singleArgs);
+            if (result > FAIL_CODE) {
+                return 0;
+            }
+            //拒绝时脚本返回 -窗口剩余毫秒数
+            current.windowEndsIn(-result, System.nanoTime());
+            current.exhausted();
+            return Math.max(1, -result);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Long> result = (List<Long>) eval(leaseScript, keys, leaseArgs);
+        long granted = result.get(0);
+        current.redisWindow = result.get(1);
+        current.windowEndsIn(result.get(2), System.nanoTime());
+        if (granted <= FAIL_CODE) {
+            current.exhausted();
+            return Math.max(1, result.get(2));
+        }
+        //自己用掉一个，其余放入本地
+        if (granted > 1) {
+            current.add(granted - 1);
+        }
+        return 0;
+    }
+
+    /**
+     * 窗口结束时把未用完的许可还给 Redis 中的计数
+     *
+     * @param expired
+     */
+    private void returnPermits(PermitLease expired, List<String> keys) {
+        long unused = expired.drain();
+        if (unused <= 0 || expired.redisWindow < 0) {
+            return;
+        }
+        try {
+            eval(leaseReturnScript, keys,
+                    Arrays.asList(String.valueOf(unused), String.valueOf(expired.redisWindow)));
+        } catch (Exception e) {
+            //key 会在 2 秒后过期，归还失败不影响限流
+            logger.warn("return permits failed", e);
+        }
+    }
+
+    /**
+     * @param key     限流 key，null 表示全局限流
+     * @param permits 本次请求占用的许可数
+     * @return 放行时为正数，拒绝时为 -等待时间；本地缓存了拒绝时不访问 Redis
+     */
+    private long limitRequest(String key, int permits) {
+        String cacheKey = key == null ? LimitAlgorithm.DEFAULT_KEY : key;
+        if (rejections != null) {
+            long remaining = rejections.rejected(cacheKey, permits, System.nanoTime());
+            if (remaining > 0) {
+                return -Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+            }
+        }
+        List<String> keys = key == null ? defaultKeys : algorithm.keys(keyRouter.route(key), executor.isCluster());
+        long result = (Long) eval(script, keys, args(permits));
+        rejected(cacheKey, permits, result);
+        return result;
+    }
+
+    /**
+     * 记住 Redis 的拒绝，等待时间内同一个 key 的请求本地拒绝
+     */
+    private void rejected(String key, int permits, long result) {
+        if (rejections != null && result < FAIL_CODE) {
+            rejections.reject(key, permits, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(-result));
+        }
+    }
+
+    private List<String> args(int permits) {
+        return permits == 1 && singleArgs != null ? singleArgs : algorithm.args(limit, permits);
+    }
+
+    private Object eval(RedisScript script, String key, List<String> args) {
+        return eval(script, Collections.singletonList(key), args);
+    }
+
+    private Object eval(RedisScript script, List<String> keys, List<String> args) {
+        return scriptRegistry.eval(executor, script, keys, args);
     }
 
 
@@ -108,7 +433,10 @@ public class RedisRateLimiter {
      * read lua script
      */
     private void buildScript() {
-        script = ScriptUtil.getScript("limit.lua");
+        script = scriptRegistry.register(algorithm.getScript());
+        leaseScript = scriptRegistry.register("lease.lua");
+        leaseReturnScript = scriptRegistry.register("lease_return.lua");
+        multiScript = scriptRegistry.register("limit_multi.lua");
     }
 
 
@@ -116,15 +444,39 @@ public class RedisRateLimiter {
      * the builder
      */
     public static class Builder {
-        private JedisConnectionFactory jedisConnectionFactory = null;
+        private RedisCommandExecutor executor;
 
         private int limit = 200;
-        private int type;
+
+        private int leaseSize = 0;
+        /**
+         * default lease tolerance
+         */
+        private double leaseTolerance = 0.1;
+
+        private LimitAlgorithm algorithm = LimitAlgorithm.FIXED_WINDOW;
+
+        private KeyRouter keyRouter = KeyRouter.NONE;
+
+        private int rejectionCacheSize = 0;
+
+        private int keyLeaseCacheSize = 0;
+
+        private MetricsRecorder metrics = NoopMetricsRecorder.INSTANCE;
 
 
         public Builder(JedisConnectionFactory jedisConnectionFactory, int type) {
-            this.jedisConnectionFactory = jedisConnectionFactory;
-            this.type = type;
+            this(new ConnectionFactoryCommandExecutor(jedisConnectionFactory, type));
+        }
+
+        /**
+         * @param executor long-lived executor, can be shared by lockers and limiters
+         */
+        public Builder(RedisCommandExecutor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor cannot be null");
+            }
+            this.executor = executor;
         }
 
         public Builder limit(int limit) {
@@ -132,7 +484,117 @@ public class RedisRateLimiter {
             return this;
         }
 
+        /**
+         * 开启批量租借，每个实例一次从 Redis 租借 leaseSize 个许可在本地发放，
+         * 只对 {@link RedisRateLimiter#acquire()} 生效
+         *
+         * @param leaseSize
+         * @return
+         */
+        public Builder leaseSize(int leaseSize) {
+            if (leaseSize < 0) {
+                throw new IllegalArgumentException("leaseSize cannot be negative");
+            }
+            this.leaseSize = leaseSize;
+            return this;
+        }
+
+        /**
+         * 单次租借最多占窗口剩余许可的比例，(0, 1]。
+         * 租借的许可只会让总流量偏少不会超限，比例越小窗口结束时各实例手里没用完的许可越少，全局限流越准确
+         *
+         * @param leaseTolerance
+         * @return
+         */
+        public Builder leaseTolerance(double leaseTolerance) {
+            if (leaseTolerance <= 0 || leaseTolerance > 1) {
+                throw new IllegalArgumentException("leaseTolerance must be in (0, 1]");
+            }
+            this.leaseTolerance = leaseTolerance;
+            return this;
+        }
+
+        /**
+         * 限流算法，默认固定窗口
+         *
+         * @param algorithm
+         * @return
+         */
+        public Builder algorithm(LimitAlgorithm algorithm) {
+            if (algorithm == null) {
+                throw new IllegalArgumentException("algorithm cannot be null");
+            }
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * 集群模式下限流 key 的 hash tag，默认 {@link KeyRouter#NONE}。
+         * 集群模式下没有 hash tag 的 key 整体作为 tag，同一个 key 的所有窗口总是落在同一个 slot；非集群模式下 key 不改写
+         *
+         * @param keyRouter
+         * @return
+         */
+        public Builder keyRouter(KeyRouter keyRouter) {
+            if (keyRouter == null) {
+                throw new IllegalArgumentException("keyRouter cannot be null");
+            }
+            this.keyRouter = keyRouter;
+            return this;
+        }
+
+        /**
+         * 高基数模式，{@link RedisRateLimiter#acquire(String)} 也按 key 批量租借，需要同时配置 leaseSize。
+         * 每个 key 窗口内第一次请求只访问一次 Redis，再次请求才租借一批在本地发放，热 key 基本不访问 Redis。
+         * 本地最多保存 maxKeys 个 key 的状态（Caffeine W-TinyLFU 淘汰），需要引入 caffeine 依赖
+         *
+         * @param maxKeys
+         * @return
+         */
+        public Builder keyLeaseCache(int maxKeys) {
+            if (maxKeys < 0) {
+                throw new IllegalArgumentException("keyLeaseCache cannot be negative");
+            }
+            this.keyLeaseCacheSize = maxKeys;
+            return this;
+        }
+
+        /**
+         * 开启本地拒绝缓存，最多记住 maxKeys 个 key。Redis 拒绝后到脚本返回的等待时间结束前，
+         * 同一个 key 的请求直接本地拒绝，不访问 Redis。默认 0 不开启
+         *
+         * @param maxKeys
+         * @return
+         */
+        public Builder rejectionCache(int maxKeys) {
+            if (maxKeys != 0 && maxKeys < 16) {
+                throw new IllegalArgumentException("rejectionCache must be 0 or at least 16");
+            }
+            this.rejectionCacheSize = maxKeys;
+            return this;
+        }
+
+        /**
+         * 记录每个限流 key 的判断耗时、放行和拒绝次数、Redis 错误
+         *
+         * @param metricsRecorder
+         * @return
+         */
+        public Builder metricsRecorder(MetricsRecorder metricsRecorder) {
+            if (metricsRecorder == null) {
+                throw new IllegalArgumentException("metricsRecorder cannot be null");
+            }
+            this.metrics = metricsRecorder;
+            return this;
+        }
+
         public RedisRateLimiter build() {
+            if (leaseSize > 0 && algorithm != LimitAlgorithm.FIXED_WINDOW) {
+                throw new IllegalArgumentException("leaseSize only supports " + LimitAlgorithm.FIXED_WINDOW);
+            }
+            if (keyLeaseCacheSize > 0 && leaseSize == 0) {
+                throw new IllegalArgumentException("keyLeaseCache requires leaseSize");
+            }
             return new RedisRateLimiter(this);
         }
 
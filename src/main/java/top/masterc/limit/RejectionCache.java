@@ -0,0 +1,109 @@
+package top.masterc.limit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 本地拒绝缓存，记住 Redis 返回的 "到 T 之前许可不够"，T 之前同一个 key 的请求直接本地拒绝，不访问 Redis
+ * <p>
+ * 脚本返回的等待时间是最早可能有许可的时间，提前本地拒绝不会拒掉 Redis 会放行的请求。
+ * 按 key 分段加锁，每段是按插入顺序淘汰的 LinkedHashMap，总条目数不超过 maxSize，高基数 key 不会撑爆内存
+ *
+ * @author Master.C
+ */
+class RejectionCache {
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    RejectionCache(int maxSize) {
+        if (maxSize < STRIPES) {
+            throw new IllegalArgumentException("maxSize must be at least " + STRIPES);
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(maxSize / STRIPES);
+        }
+    }
+
+    /**
+     * @param key
+     * @param permits 本次请求的许可数，比被拒绝的请求少时仍然访问 Redis
+     * @param now     System.nanoTime()
+     * @return 还需等待的纳秒数，0 表示没有缓存的拒绝
+     */
+    long rejected(String key, int permits, long now) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Rejection rejection = stripe.get(key);
+            if (rejection == null) {
+                return 0;
+            }
+            long remaining = rejection.until - now;
+            if (remaining <= 0) {
+                //窗口已经滚动
+                stripe.remove(key);
+                return 0;
+            }
+            return permits >= rejection.permits ? remaining : 0;
+        }
+    }
+
+    /**
+     * 记录 Redis 的拒绝
+     *
+     * @param key
+     * @param permits 被拒绝的许可数
+     * @param until   System.nanoTime() 时间，之前许可不够
+     */
+    void reject(String key, int permits, long until) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Rejection old = stripe.get(key);
+            if (old != null && old.until - until >= 0 && old.permits <= permits) {
+                //已有的拒绝范围更大
+                return;
+            }
+            stripe.put(key, new Rejection(permits, until));
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripe(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static final class Rejection {
+        private final int permits;
+        private final long until;
+
+        private Rejection(int permits, long until) {
+            this.permits = permits;
+            this.until = until;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, Rejection> {
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(16, 0.75f, false);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Rejection> eldest) {
+            return size() > capacity;
+        }
+    }
+}
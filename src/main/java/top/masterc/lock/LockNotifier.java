@@ -0,0 +1,207 @@
+package top.masterc.lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.masterc.executor.MessageListener;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.executor.Subscription;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁释放通知
+ * <p>
+ * 每个 {@link RedisLocker} 只持有一个订阅连接，有线程等待某个锁时才订阅该锁的频道，最后一个等待者离开时退订。
+ * unlock 时 lock.lua 向频道 PUBLISH，收到消息后只唤醒本实例的一个等待者去抢锁，抢不到的继续等待下一次释放。
+ * {@link #close()} 退订并结束订阅线程，之后的等待者按兜底间隔轮询
+ *
+ * @author Master.C
+ */
+class LockNotifier {
+
+    private static Logger logger = LoggerFactory.getLogger(LockNotifier.class);
+
+    /**
+     * 订阅线程启动时订阅的频道，保证订阅连接在没有等待者时也保持订阅状态
+     */
+    private static final String IDLE_CHANNEL = "redis_tool_lock_notifier";
+
+    private static final int RECONNECT_INTERVAL = 1000;
+
+    private final RedisCommandExecutor executor;
+
+    private final Map<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    private final Subscriber subscriber = new Subscriber();
+
+    /**
+     * 订阅连接建立后才有值，subscribe 返回后清空，guarded by this
+     */
+    private Subscription subscription;
+
+    private Thread thread;
+
+    private volatile boolean closed;
+
+    LockNotifier(RedisCommandExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 注册等待者，必须在尝试加锁前注册，避免错过加锁失败和订阅之间的释放通知
+     *
+     * @param channel
+     * @return
+     */
+    synchronized Waiters register(String channel) {
+        start();
+        Waiters channelWaiters = waiters.get(channel);
+        if (channelWaiters == null) {
+            channelWaiters = new Waiters();
+            waiters.put(channel, channelWaiters);
+            if (subscription != null) {
+                try {
+                    subscription.subscribe(channel);
+                } catch (Exception e) {
+                    //重连后会重新订阅
+                    logger.warn("subscribe {} failed", channel, e);
+                }
+            }
+        }
+        channelWaiters.count++;
+        return channelWaiters;
+    }
+
+    synchronized void unregister(String channel, Waiters channelWaiters) {
+        if (--channelWaiters.count > 0) {
+            return;
+        }
+        waiters.remove(channel);
+        if (subscription != null) {
+            try {
+                subscription.unsubscribe(channel);
+            } catch (Exception e) {
+                logger.warn("unsubscribe {} failed", channel, e);
+            }
+        }
+    }
+
+    /**
+     * 退订所有频道并结束订阅线程，不可重新开启
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (subscription != null) {
+            try {
+                //退订全部频道后 subscribe 返回，订阅线程随之退出
+                subscription.unsubscribe();
+            } catch (Exception e) {
+                logger.warn("unsubscribe lock notifier failed", e);
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void start() {
+        if (thread != null || closed) {
+            return;
+        }
+        thread = new Thread(this::run, "redis-locker-notifier");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 订阅线程，连接断开后重连，断开期间等待者按兜底间隔轮询
+     */
+    private void run() {
+        while (!closed) {
+            try {
+                executor.subscribe(subscriber, IDLE_CHANNEL);
+            } catch (Exception e) {
+                logger.warn("lock notifier subscription lost, waiters fall back to polling", e);
+            } finally {
+                subscriptionEnded();
+            }
+            if (closed) {
+                return;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(RECONNECT_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 订阅连接建立（包括重连）后订阅当前所有有等待者的频道，连接建立前已经关闭时退订
+     */
+    private synchronized void subscribed(Subscription subscription) {
+        if (closed) {
+            subscription.unsubscribe();
+            return;
+        }
+        this.subscription = subscription;
+        if (!waiters.isEmpty()) {
+            subscription.subscribe(waiters.keySet().toArray(new String[0]));
+        }
+    }
+
+    private synchronized void subscriptionEnded() {
+        subscription = null;
+    }
+
+    /**
+     * 某个锁在本实例上的等待者
+     */
+    static class Waiters {
+
+        private final Semaphore signal = new Semaphore(0);
+
+        /**
+         * guarded by LockNotifier
+         */
+        private int count;
+
+        /**
+         * 等待释放通知
+         *
+         * @param timeout 毫秒，兜底轮询间隔
+         * @throws InterruptedException
+         */
+        void await(long timeout) throws InterruptedException {
+            signal.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        private void wakeOne() {
+            //最多积攒一个信号，没有人在等时下一个等待者会立即重试一次
+            if (signal.availablePermits() == 0) {
+                signal.release();
+            }
+        }
+    }
+
+    private class Subscriber implements MessageListener {
+        @Override
+        public void onSubscribed(Subscription subscription) {
+            subscribed(subscription);
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            Waiters channelWaiters = waiters.get(channel);
+            if (channelWaiters != null) {
+                channelWaiters.wakeOne();
+            }
+        }
+    }
+}
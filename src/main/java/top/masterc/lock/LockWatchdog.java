@@ -0,0 +1,162 @@
+package top.masterc.lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.masterc.util.KeyRouter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁续期看门狗
+ * <p>
+ * 记录本实例通过看门狗持有的所有锁，每 leaseTime / 3 用一次批量脚本把它们的过期时间重置为 leaseTime，
+ * unlock 后不再续期。整个实例只有一个续期任务，不为每把锁单独起定时器。
+ * 集群模式下一个脚本只能访问同一个 slot 的 key，按 slot 分组，每组一次脚本调用，所有分组在一次流水线中发出
+ *
+ * @author Master.C
+ */
+class LockWatchdog {
+
+    private static Logger logger = LoggerFactory.getLogger(LockWatchdog.class);
+
+    /**
+     * 单次脚本最多续期的锁数量
+     */
+    private static final int MAX_BATCH = 1000;
+
+    /**
+     * 执行续期脚本，每组一次脚本调用，一次流水线发出所有分组
+     */
+    interface Renewer {
+        /**
+         * @param keys 每组的锁 key
+         * @param args 每组的参数，ARGV[1] 续期时间，ARGV[i + 1] 为 KEYS[i] 的 value
+         * @return 按分组顺序，每个 key 是否续期成功，1 成功 0 失败
+         */
+        List<List<Long>> renew(List<List<String>> keys, List<List<String>> args);
+    }
+
+    private final Map<String, String> locks = new ConcurrentHashMap<>();
+
+    private final Renewer renewer;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int leaseTime;
+
+    private final boolean cluster;
+
+    private volatile boolean started;
+
+    /**
+     * 定时续期任务，{@link #close()} 时取消
+     */
+    private ScheduledFuture<?> task;
+
+    private boolean closed;
+
+    LockWatchdog(Renewer renewer, ScheduledExecutorService scheduler, int leaseTime, boolean cluster) {
+        this.renewer = renewer;
+        this.scheduler = scheduler;
+        this.leaseTime = leaseTime;
+        this.cluster = cluster;
+    }
+
+    void watch(String key, String request) {
+        locks.put(key, request);
+        start();
+    }
+
+    void unwatch(String key, String request) {
+        locks.remove(key, request);
+    }
+
+    int size() {
+        return locks.size();
+    }
+
+    private void start() {
+        if (started) {
+            return;
+        }
+        synchronized (this) {
+            if (started || closed) {
+                return;
+            }
+            long period = Math.max(1, leaseTime / 3);
+            task = scheduler.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+            started = true;
+        }
+    }
+
+    /**
+     * 取消续期任务，仍持有的锁不再续期，到期后自动释放
+     */
+    synchronized void close() {
+        closed = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+        locks.clear();
+    }
+
+    /**
+     * 续期所有持有的锁，续期失败的锁不再续期
+     */
+    void renew() {
+        if (locks.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, String> snapshot = new HashMap<>(locks);
+            List<List<String>> batches = batches(snapshot);
+            List<List<String>> batchArgs = new ArrayList<>(batches.size());
+            for (List<String> keys : batches) {
+                List<String> args = new ArrayList<>(keys.size() + 1);
+                args.add(String.valueOf(leaseTime));
+                for (String key : keys) {
+                    args.add(snapshot.get(key));
+                }
+                batchArgs.add(args);
+            }
+            List<List<Long>> results = renewer.renew(batches, batchArgs);
+            for (int b = 0; b < batches.size(); b++) {
+                List<String> keys = batches.get(b);
+                List<Long> result = results.get(b);
+                for (int i = 0; i < keys.size(); i++) {
+                    if (result.get(i) == 0L) {
+                        logger.warn("lock {} lost before unlock, stop renewing", keys.get(i));
+                        locks.remove(keys.get(i), batchArgs.get(b).get(i + 1));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            //下一次续期会重试，leaseTime 内恢复即可
+            logger.error("renew locks failed", e);
+        }
+    }
+
+    /**
+     * 按 slot 分组并限制每组大小
+     *
+     * @param snapshot
+     * @return
+     */
+    private List<List<String>> batches(Map<String, String> snapshot) {
+        Map<Integer, List<String>> slots = KeyRouter.groupBySlot(snapshot.keySet(), cluster);
+        List<List<String>> batches = new ArrayList<>();
+        for (List<String> keys : slots.values()) {
+            for (int i = 0; i < keys.size(); i += MAX_BATCH) {
+                batches.add(keys.subList(i, Math.min(keys.size(), i + MAX_BATCH)));
+            }
+        }
+        return batches;
+    }
+}
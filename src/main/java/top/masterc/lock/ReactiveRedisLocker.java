@@ -0,0 +1,256 @@
+package top.masterc.lock;
+
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import top.masterc.executor.ReactiveRedisCommandExecutor;
+import top.masterc.metrics.MetricsRecorder;
+import top.masterc.metrics.NoopMetricsRecorder;
+import top.masterc.util.KeyRouter;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 非阻塞的分布式锁，与 {@link RedisLocker} 使用相同的 key 和解锁脚本，两者可以互斥同一个 key
+ * <p>
+ * 返回的 Mono 在订阅时才访问 Redis，等锁时用 Mono.delay 重试，不占用调用线程。
+ * 不支持可重入、看门狗续期和释放通知，持有时间不能超过 leaseTime
+ *
+ * @author Master.C
+ */
+public class ReactiveRedisLocker {
+
+    private static final Long UNLOCK_MSG = 1L;
+
+    private static final int TIME = 1000;
+
+    private final ReactiveRedisCommandExecutor executor;
+
+    private final String lockPrefix;
+
+    private final KeyRouter keyRouter;
+
+    private final int sleepTime;
+
+    private final int leaseTime;
+
+    private final MetricsRecorder metrics;
+
+    private final RedisScript script;
+
+    private ReactiveRedisLocker(Builder builder) {
+        this.executor = builder.executor;
+        this.lockPrefix = builder.lockPrefix;
+        this.keyRouter = builder.keyRouter;
+        this.sleepTime = builder.sleepTime;
+        this.leaseTime = builder.leaseTime;
+        this.metrics = builder.metrics;
+        this.script = new ScriptRegistry().register("lock.lua");
+    }
+
+    /**
+     * Non-blocking lock, expires after leaseTime
+     *
+     * @param key     lock business type
+     * @param request value
+     * @return emits true lock success, false lock fail
+     */
+    public Mono<Boolean> tryLock(String key, String request) {
+        return tryLock(key, request, leaseTime);
+    }
+
+    /**
+     * Non-blocking lock
+     *
+     * @param key        lock business type
+     * @param request    value
+     * @param expireTime custom expireTime
+     * @return emits true lock success, false lock fail
+     */
+    public Mono<Boolean> tryLock(String key, String request, int expireTime) {
+        String fullKey = fullKey(key);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return executor.setIfAbsent(fullKey, request, expireTime)
+                    .doOnNext(locked -> metrics.lockAttempt(lockPrefix, System.nanoTime() - start, locked))
+                    .doOnError(Exception.class, e -> metrics.lockError(lockPrefix, e));
+        });
+    }
+
+    /**
+     * lock with timeout, retries every sleepTime without blocking
+     *
+     * @param key       lock business type
+     * @param request   value
+     * @param blockTime max wait time in milliseconds
+     * @return emits true lock success, false timeout
+     */
+    public Mono<Boolean> lock(String key, String request, int blockTime) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return lock(key, request, start, start + TimeUnit.MILLISECONDS.toNanos(blockTime), 0);
+        });
+    }
+
+    private Mono<Boolean> lock(String key, String request, long start, long deadline, int retries) {
+        return tryLock(key, request).flatMap(locked -> {
+            long remaining = deadline - System.nanoTime();
+            if (locked || remaining <= 0) {
+                metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, locked);
+                return Mono.just(locked);
+            }
+            return Mono.delay(Duration.ofNanos(Math.min(TimeUnit.MILLISECONDS.toNanos(sleepTime), remaining)))
+                    .then(lock(key, request, start, deadline, retries + 1));
+        });
+    }
+
+    /**
+     * unlock
+     *
+     * @param key
+     * @param request request must be the same as lock request
+     * @return emits true when the lock was still held by request
+     */
+    public Mono<Boolean> unlock(String key, String request) {
+        String fullKey = fullKey(key);
+        return executor.eval(script, Collections.singletonList(fullKey), Collections.singletonList(request))
+                .map(UNLOCK_MSG::equals)
+                .defaultIfEmpty(false)
+                .doOnError(Exception.class, e -> metrics.lockError(lockPrefix, e));
+    }
+
+    /**
+     * run work while holding the lock, the lock is released when work completes, fails or is cancelled
+     *
+     * @param key       lock business type
+     * @param blockTime max wait time in milliseconds
+     * @param work      subscribed after the lock is acquired
+     * @return result of work, {@link TimeoutException} when the lock is not acquired within blockTime
+     */
+    public <T> Mono<T> withLock(String key, int blockTime, Mono<T> work) {
+        return Mono.usingWhen(acquire(key, blockTime), request -> work, request -> unlock(key, request));
+    }
+
+    /**
+     * run work while holding the lock, the lock is released when work completes, fails or is cancelled
+     *
+     * @param key       lock business type
+     * @param blockTime max wait time in milliseconds
+     * @param work      subscribed after the lock is acquired
+     * @return elements of work, {@link TimeoutException} when the lock is not acquired within blockTime
+     */
+    public <T> Flux<T> withLock(String key, int blockTime, Publisher<T> work) {
+        return Flux.usingWhen(acquire(key, blockTime), request -> work, request -> unlock(key, request));
+    }
+
+    /**
+     * @return request of the acquired lock
+     */
+    private Mono<String> acquire(String key, int blockTime) {
+        return Mono.defer(() -> {
+            String request = UUID.randomUUID().toString();
+            return lock(key, request, blockTime).flatMap(locked -> locked ? Mono.just(request)
+                    : Mono.error(new TimeoutException("lock " + key + " not acquired within " + blockTime + "ms")));
+        });
+    }
+
+    private String fullKey(String key) {
+        return keyRouter.route(lockPrefix + key);
+    }
+
+    public static class Builder {
+        private static final String DEFAULT_LOCK_PREFIX = "lock_";
+        /**
+         * default sleep time
+         */
+        private static final int DEFAULT_SLEEP_TIME = 100;
+        /**
+         * default lease time
+         */
+        private static final int DEFAULT_LEASE_TIME = 10 * TIME;
+
+        private ReactiveRedisCommandExecutor executor;
+
+        private String lockPrefix = DEFAULT_LOCK_PREFIX;
+        private KeyRouter keyRouter = KeyRouter.NONE;
+        private int sleepTime = DEFAULT_SLEEP_TIME;
+        private int leaseTime = DEFAULT_LEASE_TIME;
+
+        private MetricsRecorder metrics = NoopMetricsRecorder.INSTANCE;
+
+        /**
+         * @param executor long-lived executor, can be shared by lockers and limiters
+         */
+        public Builder(ReactiveRedisCommandExecutor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor cannot be null");
+            }
+            this.executor = executor;
+        }
+
+        public Builder lockPrefix(String lockPrefix) {
+            this.lockPrefix = lockPrefix;
+            return this;
+        }
+
+        /**
+         * hash tag of lock keys in cluster mode, default {@link KeyRouter#NONE}
+         *
+         * @param keyRouter
+         * @return
+         */
+        public Builder keyRouter(KeyRouter keyRouter) {
+            if (keyRouter == null) {
+                throw new IllegalArgumentException("keyRouter cannot be null");
+            }
+            this.keyRouter = keyRouter;
+            return this;
+        }
+
+        public Builder sleepTime(int sleepTime) {
+            if (sleepTime <= 0) {
+                throw new IllegalArgumentException("sleepTime must be positive");
+            }
+            this.sleepTime = sleepTime;
+            return this;
+        }
+
+        /**
+         * expire time of locks taken without a custom expireTime, default 10s
+         *
+         * @param leaseTime milliseconds
+         * @return
+         */
+        public Builder leaseTime(int leaseTime) {
+            if (leaseTime <= 0) {
+                throw new IllegalArgumentException("leaseTime must be positive");
+            }
+            this.leaseTime = leaseTime;
+            return this;
+        }
+
+        /**
+         * record attempt latency, wait time, retries and redis errors per lockPrefix
+         *
+         * @param metricsRecorder
+         * @return
+         */
+        public Builder metricsRecorder(MetricsRecorder metricsRecorder) {
+            if (metricsRecorder == null) {
+                throw new IllegalArgumentException("metricsRecorder cannot be null");
+            }
+            this.metrics = metricsRecorder;
+            return this;
+        }
+
+        public ReactiveRedisLocker build() {
+            return new ReactiveRedisLocker(this);
+        }
+    }
+}
@@ -1,17 +1,30 @@
 package top.masterc.lock;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.connection.RedisClusterConnection;
-import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisCluster;
-import top.masterc.constant.RedisToolsConstant;
-import top.masterc.util.ScriptUtil;
-
-import java.io.IOException;
+import top.masterc.executor.ConnectionFactoryCommandExecutor;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.executor.ScriptCall;
+import top.masterc.metrics.MetricsRecorder;
+import top.masterc.metrics.NoopMetricsRecorder;
+import top.masterc.util.KeyRouter;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -22,52 +35,123 @@ import java.util.concurrent.TimeUnit;
 public class RedisLocker {
     private static Logger logger = LoggerFactory.getLogger(RedisLocker.class);
 
-    private static final String LOCK_MSG = "OK";
-
     private static final Long UNLOCK_MSG = 1L;
 
-    private static final String SET_IF_NOT_EXIST = "NX";
-    private static final String SET_WITH_EXPIRE_TIME = "PX";
+    private static final Long SCRIPT_LOCK_MSG = 1L;
+
+    /**
+     * 释放通知频道前缀，频道为 前缀 + 锁的完整 key
+     */
+    private static final String RELEASE_CHANNEL_PREFIX = "redis_tool_released:";
 
 
     private String lockPrefix;
 
+    /**
+     * 锁的完整 key 为 keyRouter.route(lockPrefix + key)
+     */
+    private KeyRouter keyRouter;
+
     private int sleepTime;
 
-    private JedisConnectionFactory jedisConnectionFactory;
-    private int type;
+    private RedisCommandExecutor executor;
 
     private static final int TIME = 1000;
 
-    private String script;
+    private final ScriptRegistry scriptRegistry = new ScriptRegistry();
 
-    private RedisLocker(Builder builder) {
-        this.jedisConnectionFactory = builder.jedisConnectionFactory;
-        this.type = builder.type;
-        this.lockPrefix = builder.lockPrefix;
-        this.sleepTime = builder.sleepTime;
+    private RedisScript script;
 
-        buildScript();
-    }
+    /**
+     * 异步加锁的重试调度线程
+     */
+    private ScheduledExecutorService scheduler;
 
+    /**
+     * 释放通知，未开启时为 null
+     */
+    private LockNotifier notifier;
 
     /**
-     * 获取redis链接
-     *
-     * @return
+     * 开启释放通知后的兜底轮询间隔，锁过期释放时不会有通知
+     */
+    private int notifyPollTime;
+
+    private int leaseTime;
+
+    /**
+     * 续期看门狗，未开启时为 null
+     */
+    private LockWatchdog watchdog;
+
+    private RedisScript renewScript;
+
+    /**
+     * 可重入模式，锁为 hash，field 为持有者 value，值为重入次数
+     */
+    private boolean reentrant;
+
+    private RedisScript reentrantLockScript;
+
+    private RedisScript reentrantUnlockScript;
+
+    private RedisScript lockAllScript;
+
+    private RedisScript unlockAllScript;
+
+    private RedisScript fencedLockScript;
+
+    /**
+     * 当前线程持有的可重入锁，同一线程用同一个 value 重入时只在本地计数，不访问 Redis
+     */
+    private final ThreadLocal<Map<String, Hold>> holds = ThreadLocal.withInitial(HashMap::new);
+
+    private MetricsRecorder metrics;
+
+    /**
+     * 最多记录持有时间的锁数量，必须是 2 的幂
+     */
+    private static final int MAX_TRACKED_HOLDS = 4096;
+
+    /**
+     * 记录加锁时间时从 key 的 hash 位置开始最多查找的槽数，都被占用时不记录这次加锁
+     */
+    private static final int HOLD_PROBES = 8;
+
+    /**
+     * 加锁成功的时间，用于记录持有时间，只在配置了 metricsRecorder 时记录。
+     * 创建时分配所有槽，之后加锁解锁都复用槽，不分配对象。
+     * 解锁时无论成功与否都会清空，从未解锁的锁超过加锁时的过期时间后槽可以被复用
      */
-    private Object getConnection() {
-        Object connection;
-        if (type == RedisToolsConstant.SINGLE) {
-            RedisConnection redisConnection = jedisConnectionFactory.getConnection();
-            connection = redisConnection.getNativeConnection();
-        } else {
-            RedisClusterConnection clusterConnection = jedisConnectionFactory.getClusterConnection();
-            connection = clusterConnection.getNativeConnection();
+    private Acquired[] acquired;
+
+    private RedisLocker(Builder builder) {
+        this.executor = builder.executor;
+        this.lockPrefix = builder.lockPrefix;
+        this.keyRouter = builder.keyRouter;
+        this.sleepTime = builder.sleepTime;
+        this.scheduler = builder.scheduler != null ? builder.scheduler : DefaultScheduler.INSTANCE;
+        this.notifyPollTime = builder.notifyPollTime;
+        if (builder.releaseNotification) {
+            this.notifier = new LockNotifier(executor);
+        }
+        this.leaseTime = builder.leaseTime;
+        if (builder.watchdog) {
+            this.watchdog = new LockWatchdog(this::renew, scheduler, leaseTime, executor.isCluster());
         }
-        return connection;
+        this.reentrant = builder.reentrant;
+        this.metrics = builder.metrics;
+        if (!(metrics instanceof NoopMetricsRecorder)) {
+            this.acquired = new Acquired[MAX_TRACKED_HOLDS];
+            for (int i = 0; i < acquired.length; i++) {
+                acquired[i] = new Acquired();
+            }
+        }
+
+        buildScript();
     }
 
+
     /**
      * Non-blocking lock
      *
@@ -76,22 +160,16 @@ public class RedisLocker {
      * @return true lock success,false lock fail
      */
     public boolean tryLock(String key, String request) {
-        //get connection
-        Object connection = getConnection();
-        String result;
-        if (connection instanceof Jedis) {
-            result = ((Jedis) connection).set(lockPrefix + key, request, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, 10 * TIME);
-            ((Jedis) connection).close();
-        } else {
-            result = ((JedisCluster) connection).set(lockPrefix + key, request, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, 10 * TIME);
-            try {
-                ((JedisCluster) connection).close();
-            } catch (IOException e) {
-                logger.error("IOException", e);
-            }
+        if (reentrant) {
+            return tryLockReentrant(key, request, leaseTime, true, true);
         }
 
-        return LOCK_MSG.equals(result);
+        String fullKey = fullKey(key);
+        boolean locked = setIfAbsent(fullKey, request, leaseTime);
+        if (locked && watchdog != null) {
+            watchdog.watch(fullKey, request);
+        }
+        return locked;
     }
 
     /**
@@ -101,23 +179,16 @@ public class RedisLocker {
      * @param request
      */
     public void lock(String key, String request) throws InterruptedException {
-        //get connection
-        Object connection = getConnection();
-        String result;
-        for (; ; ) {
-            if (connection instanceof Jedis) {
-                result = ((Jedis) connection).set(lockPrefix + key, request, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, 10 * TIME);
-                ((Jedis) connection).close();
-            } else {
-                result = ((JedisCluster) connection).set(lockPrefix + key, request, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, 10 * TIME);
-                try {
-                    ((JedisCluster) connection).close();
-                } catch (IOException e) {
-                    logger.error("IOException", e);
-                }
-            }
+        if (notifier != null) {
+            lockNotified(key, request, -1);
+            return;
+        }
 
-            if (LOCK_MSG.equals(result)) {
+        long start = System.nanoTime();
+        for (int retries = 0; ; retries++) {
+            //each attempt borrows its own connection, the previous one has been returned to the pool
+            if (tryLock(key, request)) {
+                metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, true);
                 break;
             }
 
@@ -136,32 +207,110 @@ public class RedisLocker {
      * @throws InterruptedException
      */
     public boolean lock(String key, String request, int blockTime) throws InterruptedException {
+        if (notifier != null) {
+            return lockNotified(key, request, blockTime);
+        }
 
-        //get connection
-        Object connection = getConnection();
-        String result;
+        long start = System.nanoTime();
+        int retries = 0;
         while (blockTime >= 0) {
-            if (connection instanceof Jedis) {
-                result = ((Jedis) connection).set(lockPrefix + key, request, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, 10 * TIME);
-                ((Jedis) connection).close();
-            } else {
-                result = ((JedisCluster) connection).set(lockPrefix + key, request, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, 10 * TIME);
-                try {
-                    ((JedisCluster) connection).close();
-                } catch (IOException e) {
-                    logger.error("IOException", e);
-                }
-            }
-            if (LOCK_MSG.equals(result)) {
+            if (tryLock(key, request)) {
+                metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, true);
                 return true;
             }
             blockTime -= sleepTime;
+            retries++;
 
             Thread.sleep(sleepTime);
         }
+        metrics.lockWait(lockPrefix, System.nanoTime() - start, Math.max(0, retries - 1), false);
         return false;
     }
 
+    /**
+     * blocking lock woken up by the release notification of unlock,
+     * polls every notifyPollTime as a safety net for expired locks and lost notifications
+     *
+     * @param key
+     * @param request
+     * @param blockTime max wait time, negative means forever
+     * @return
+     * @throws InterruptedException
+     */
+    private boolean lockNotified(String key, String request, long blockTime) throws InterruptedException {
+        String channel = RELEASE_CHANNEL_PREFIX + fullKey(key);
+        LockNotifier.Waiters waiters = notifier.register(channel);
+        try {
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(blockTime);
+            for (int retries = 0; ; retries++) {
+                if (tryLock(key, request)) {
+                    metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, true);
+                    return true;
+                }
+                long wait = notifyPollTime;
+                if (blockTime >= 0) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, false);
+                        return false;
+                    }
+                    wait = Math.min(wait, remaining);
+                }
+                waiters.await(wait);
+            }
+        } finally {
+            notifier.unregister(channel, waiters);
+        }
+    }
+
+    /**
+     * asynchronous lock, retries are scheduled on the shared scheduler instead of blocking the caller
+     *
+     * @param key
+     * @param request
+     * @param timeout max wait time in milliseconds
+     * @return completes with true when locked, false when timeout
+     */
+    public CompletableFuture<Boolean> lockAsync(String key, String request, int timeout) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        scheduler.execute(() -> tryLockAsync(future, key, request, start, deadline, 0));
+        return future;
+    }
+
+    private void tryLockAsync(CompletableFuture<Boolean> future, String key, String request, long start, long deadline,
+                              int retries) {
+        //cancelled by caller
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            //the scheduler thread is not the owner, never count the hold on it
+            boolean locked = reentrant ? tryLockReentrant(key, request, leaseTime, true, false) : tryLock(key, request);
+            if (locked) {
+                if (future.complete(true)) {
+                    metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, true);
+                } else {
+                    //the caller gave up while we were locking
+                    unlock(key, request);
+                }
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, false);
+                future.complete(false);
+                return;
+            }
+            scheduler.schedule(() -> tryLockAsync(future, key, request, start, deadline, retries + 1),
+                    Math.min(TimeUnit.MILLISECONDS.toNanos(sleepTime), remaining), TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
 
     /**
      * Non-blocking lock
@@ -173,25 +322,146 @@ public class RedisLocker {
      * false lock fail
      */
     public boolean tryLock(String key, String request, int expireTime) {
-        //get connection
-        Object connection = getConnection();
-        String result;
-
-        if (connection instanceof Jedis) {
-            result = ((Jedis) connection).set(lockPrefix + key, request, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, expireTime);
-            ((Jedis) connection).close();
-        } else {
-            result = ((JedisCluster) connection).set(lockPrefix + key, request, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, expireTime);
-            try {
-                ((JedisCluster) connection).close();
-            } catch (IOException e) {
-                logger.error("IOException", e);
+        if (reentrant) {
+            return tryLockReentrant(key, request, expireTime, false, true);
+        }
+
+        return setIfAbsent(fullKey(key), request, expireTime);
+    }
+
+    /**
+     * Non-blocking lock returning a fencing token, expires after leaseTime and is renewed by the watchdog if enabled
+     *
+     * @param key     lock business type
+     * @param request value
+     * @return fencing token, 0 when lock fail
+     * @see #tryLockFenced(String, String, int)
+     */
+    public long tryLockFenced(String key, String request) {
+        long token = fencedLock(key, request, leaseTime);
+        if (token > 0 && watchdog != null) {
+            watchdog.watch(fullKey(key), request);
+        }
+        return token;
+    }
+
+    /**
+     * Non-blocking lock returning a fencing token.
+     * the token is incremented in the same script as the SET NX, so every successful lock of a key gets a larger token
+     * than all previous ones. pass it with each write to the protected storage and reject writes carrying a smaller
+     * token than the last one seen, a holder paused past its expireTime can then no longer overwrite the next holder.
+     * unlock with {@link #unlock(String, String)}
+     *
+     * @param key        lock business type
+     * @param request    value
+     * @param expireTime custom expireTime
+     * @return fencing token, 0 when lock fail
+     */
+    public long tryLockFenced(String key, String request, int expireTime) {
+        return fencedLock(key, request, expireTime);
+    }
+
+    private long fencedLock(String key, String request, int expireTime) {
+        if (reentrant) {
+            throw new UnsupportedOperationException("tryLockFenced does not support reentrant locks");
+        }
+        String fullKey = fullKey(key);
+        long start = System.nanoTime();
+        Object result = lockEval(fencedLockScript, Arrays.asList(fullKey, fenceKey(fullKey, executor.isCluster())),
+                Arrays.asList(request, String.valueOf(expireTime)));
+        long token = (Long) result;
+        attempted(fullKey, request, start, token > 0, expireTime);
+        return token;
+    }
+
+    /**
+     * fencing counter of a lock, never expires
+     */
+    static String fenceKey(String fullKey, boolean cluster) {
+        return KeyRouter.derive(fullKey, "fence", cluster);
+    }
+
+    private boolean setIfAbsent(String fullKey, String request, int expireTime) {
+        long start = System.nanoTime();
+        boolean locked;
+        try {
+            locked = executor.setIfAbsent(fullKey, request, expireTime);
+        } catch (RuntimeException e) {
+            metrics.lockError(lockPrefix, e);
+            throw e;
+        }
+        attempted(fullKey, request, start, locked, expireTime);
+        return locked;
+    }
+
+
+    /**
+     * reentrant lock, re-entry by the owning thread with the same request only counts locally
+     *
+     * @param key
+     * @param request
+     * @param expireTime
+     * @param watch     renewed by the watchdog
+     * @param local     count the hold on the current thread
+     * @return
+     */
+    private boolean tryLockReentrant(String key, String request, int expireTime, boolean watch, boolean local) {
+        String fullKey = fullKey(key);
+        if (local) {
+            Hold hold = holds.get().get(fullKey);
+            if (hold != null && hold.request.equals(request)) {
+                hold.count++;
+                return true;
             }
         }
 
-        return LOCK_MSG.equals(result);
+        long start = System.nanoTime();
+        Object result = lockEval(reentrantLockScript, fullKey, Arrays.asList(request, String.valueOf(expireTime)));
+        boolean locked = SCRIPT_LOCK_MSG.equals(result);
+        attempted(fullKey, request, start, locked, expireTime);
+        if (!locked) {
+            return false;
+        }
+        if (local) {
+            holds.get().putIfAbsent(fullKey, new Hold(request));
+        }
+        if (watch && watchdog != null) {
+            watchdog.watch(fullKey, request);
+        }
+        return true;
     }
 
+    /**
+     * @return true when the hold count of request decreased
+     */
+    private boolean unlockReentrant(String key, String request) {
+        String fullKey = fullKey(key);
+        Map<String, Hold> threadHolds = holds.get();
+        Hold hold = threadHolds.get(fullKey);
+        if (hold != null && hold.request.equals(request)) {
+            if (--hold.count > 0) {
+                return true;
+            }
+            threadHolds.remove(fullKey);
+        }
+
+        Object result = null;
+        try {
+            result = lockEval(reentrantUnlockScript, fullKey, unlockArgs(request));
+        } finally {
+            //仍被其他重入持有时保留加锁时间
+            if (!(result instanceof Long) || (Long) result <= 0) {
+                released(fullKey, request, result instanceof Long && (Long) result == 0);
+            }
+        }
+        if (!(result instanceof Long) || (Long) result < 0) {
+            return false;
+        }
+        if ((Long) result == 0 && watchdog != null) {
+            watchdog.unwatch(fullKey, request);
+        }
+        return true;
+    }
 
     /**
      * unlock
@@ -201,28 +471,232 @@ public class RedisLocker {
      * @return
      */
     public boolean unlock(String key, String request) {
+        if (reentrant) {
+            return unlockReentrant(key, request);
+        }
+        String fullKey = fullKey(key);
+        if (watchdog != null) {
+            watchdog.unwatch(fullKey, request);
+        }
 
-        //get connection
-        Object connection = getConnection();
-        //lua script
+        boolean unlocked = false;
+        try {
+            unlocked = UNLOCK_MSG.equals(lockEval(script, fullKey, unlockArgs(request)));
+        } finally {
+            released(fullKey, request, unlocked);
+        }
+        return unlocked;
+    }
 
-        Object result = null;
-        if (connection instanceof Jedis) {
-            result = ((Jedis) connection).eval(script, Collections.singletonList(lockPrefix + key), Collections.singletonList(request));
-            ((Jedis) connection).close();
-        } else if (connection instanceof JedisCluster) {
-            result = ((JedisCluster) connection).eval(script, Collections.singletonList(lockPrefix + key), Collections.singletonList(request));
-            try {
-                ((JedisCluster) connection).close();
-            } catch (IOException e) {
-                logger.error("IOException", e);
+
+    /**
+     * lock all keys or none of them.
+     * single redis: one atomic script call;
+     * cluster: one atomic script call per hash slot, pipelined per node, the acquired slots are released if any slot fails
+     *
+     * @param keys       lock business types
+     * @param request    value
+     * @param expireTime custom expireTime
+     * @return true all locked, false none locked
+     */
+    public boolean tryLockAll(Collection<String> keys, String request, int expireTime) {
+        if (reentrant) {
+            throw new UnsupportedOperationException("tryLockAll does not support reentrant locks");
+        }
+        List<ScriptCall> calls = scriptCalls(keys, lockAllScript, Arrays.asList(request, String.valueOf(expireTime)));
+        long start = System.nanoTime();
+        List<Object> results;
+        try {
+            results = scriptRegistry.evalPipelined(executor, calls);
+        } catch (RuntimeException e) {
+            metrics.lockError(lockPrefix, e);
+            //slots on other nodes may have been locked before the failure
+            releaseAll(calls, request);
+            throw e;
+        }
+
+        List<ScriptCall> locked = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            if (SCRIPT_LOCK_MSG.equals(results.get(i))) {
+                locked.add(calls.get(i));
             }
-        } else {
-            //throw new RuntimeException("instance is error") ;
-            return false;
         }
+        boolean allLocked = locked.size() == calls.size();
+        metrics.lockAttempt(lockPrefix, System.nanoTime() - start, allLocked);
+        if (allLocked) {
+            return true;
+        }
+        releaseAll(locked, request);
+        return false;
+    }
+
+    /**
+     * unlock keys locked by {@link #tryLockAll(Collection, String, int)}
+     *
+     * @param keys
+     * @param request request must be the same as lock request
+     * @return true all keys were held by request and released
+     */
+    public boolean unlockAll(Collection<String> keys, String request) {
+        List<ScriptCall> calls = scriptCalls(keys, unlockAllScript, unlockArgs(request));
+        long released = 0;
+        int total = 0;
+        for (Object result : scriptRegistry.evalPipelined(executor, calls)) {
+            released += (Long) result;
+        }
+        for (ScriptCall call : calls) {
+            total += call.getKeys().size();
+        }
+        return released == total;
+    }
 
-        return UNLOCK_MSG.equals(result);
+    /**
+     * best effort rollback, a key is only deleted when it still holds request
+     */
+    private void releaseAll(List<ScriptCall> lockCalls, String request) {
+        if (lockCalls.isEmpty()) {
+            return;
+        }
+        List<ScriptCall> calls = new ArrayList<>(lockCalls.size());
+        for (ScriptCall call : lockCalls) {
+            calls.add(new ScriptCall(unlockAllScript, call.getKeys(), unlockArgs(request)));
+        }
+        try {
+            scriptRegistry.evalPipelined(executor, calls);
+        } catch (Exception e) {
+            //the locks expire after expireTime anyway
+            logger.error("release locks failed", e);
+        }
+    }
+
+    /**
+     * close the release notification subscription and stop the watchdog, call it when the locker is discarded.
+     * locks still held are not released, they expire after their expireTime.
+     * blocking locks taken afterwards poll every notifyPollTime, the executor and the scheduler are not closed
+     */
+    public void shutdown() {
+        if (notifier != null) {
+            notifier.close();
+        }
+        if (watchdog != null) {
+            watchdog.close();
+        }
+    }
+
+    /**
+     * one call for single redis, one call per hash slot for cluster
+     */
+    private List<ScriptCall> scriptCalls(Collection<String> keys, RedisScript redisScript, List<String> args) {
+        Set<String> fullKeys = new LinkedHashSet<>();
+        for (String key : keys) {
+            fullKeys.add(fullKey(key));
+        }
+        Map<Integer, List<String>> slots = KeyRouter.groupBySlot(fullKeys, executor.isCluster());
+        List<ScriptCall> calls = new ArrayList<>(slots.size());
+        for (List<String> slotKeys : slots.values()) {
+            calls.add(new ScriptCall(redisScript, slotKeys, args));
+        }
+        return calls;
+    }
+
+    private List<String> unlockArgs(String request) {
+        return notifier == null ? Collections.singletonList(request) : Arrays.asList(request, RELEASE_CHANNEL_PREFIX);
+    }
+
+
+    /**
+     * renew locks with one script call per batch, all batches in one pipeline, used by the watchdog
+     *
+     * @param keys keys of each batch
+     * @param args args of each batch
+     * @return results of each batch
+     */
+    @SuppressWarnings("unchecked")
+    private List<List<Long>> renew(List<List<String>> keys, List<List<String>> args) {
+        List<ScriptCall> calls = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            calls.add(new ScriptCall(renewScript, keys.get(i), args.get(i)));
+        }
+        List<List<Long>> results = new ArrayList<>(calls.size());
+        for (Object result : scriptRegistry.evalPipelined(executor, calls)) {
+            results.add((List<Long>) result);
+        }
+        return results;
+    }
+
+    /**
+     * eval for lock and unlock, redis errors are recorded
+     */
+    private Object lockEval(RedisScript redisScript, String key, List<String> args) {
+        return lockEval(redisScript, Collections.singletonList(key), args);
+    }
+
+    private Object lockEval(RedisScript redisScript, List<String> keys, List<String> args) {
+        try {
+            return eval(redisScript, keys, args);
+        } catch (RuntimeException e) {
+            metrics.lockError(lockPrefix, e);
+            throw e;
+        }
+    }
+
+    private String fullKey(String key) {
+        return keyRouter.route(lockPrefix + key);
+    }
+
+    private void attempted(String fullKey, String request, long start, boolean locked, int expireTime) {
+        long now = System.nanoTime();
+        metrics.lockAttempt(lockPrefix, now - start, locked);
+        if (!locked || acquired == null) {
+            return;
+        }
+        int index = fullKey.hashCode();
+        for (int i = 0; i < HOLD_PROBES; i++) {
+            Acquired lock = acquired[(index + i) & (MAX_TRACKED_HOLDS - 1)];
+            synchronized (lock) {
+                //同一个 key 再次加锁时覆盖
+                if (lock.key == null || lock.key.equals(fullKey) || now - lock.expiresAt > 0) {
+                    lock.key = fullKey;
+                    lock.request = request;
+                    lock.nanos = now;
+                    lock.expiresAt = now + TimeUnit.MILLISECONDS.toNanos(expireTime);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param unlocked false when the unlock failed, the acquire time is only dropped
+     */
+    private void released(String fullKey, String request, boolean unlocked) {
+        if (acquired == null) {
+            return;
+        }
+        int index = fullKey.hashCode();
+        for (int i = 0; i < HOLD_PROBES; i++) {
+            Acquired lock = acquired[(index + i) & (MAX_TRACKED_HOLDS - 1)];
+            long nanos;
+            synchronized (lock) {
+                if (!fullKey.equals(lock.key)) {
+                    continue;
+                }
+                if (!request.equals(lock.request)) {
+                    return;
+                }
+                nanos = lock.nanos;
+                lock.key = null;
+                lock.request = null;
+            }
+            if (unlocked) {
+                metrics.lockHeld(lockPrefix, System.nanoTime() - nanos);
+            }
+            return;
+        }
+    }
+
+    private Object eval(RedisScript redisScript, List<String> keys, List<String> args) {
+        return scriptRegistry.eval(executor, redisScript, keys, args);
     }
 
 
@@ -230,9 +704,50 @@ public class RedisLocker {
      * read lua script
      */
     private void buildScript() {
-        script = ScriptUtil.getScript("lock.lua");
+        script = scriptRegistry.register("lock.lua");
+        renewScript = scriptRegistry.register("renew.lua");
+        reentrantLockScript = scriptRegistry.register("reentrant_lock.lua");
+        reentrantUnlockScript = scriptRegistry.register("reentrant_unlock.lua");
+        lockAllScript = scriptRegistry.register("lock_all.lua");
+        unlockAllScript = scriptRegistry.register("unlock_all.lua");
+        fencedLockScript = scriptRegistry.register("fenced_lock.lua");
+    }
+
+
+    /**
+     * 加锁成功的时间，key 为 null 表示空槽，读写时锁住槽
+     */
+    private static class Acquired {
+        private String key;
+        private String request;
+        private long nanos;
+        /**
+         * 不续期时锁在 Redis 中过期的时间
+         */
+        private long expiresAt;
     }
 
+    /**
+     * 当前线程对某个可重入锁的持有
+     */
+    private static class Hold {
+        private final String request;
+        private int count = 1;
+
+        private Hold(String request) {
+            this.request = request;
+        }
+    }
+
+
+    /**
+     * 默认共享的调度线程，线程只执行一次 SET NX 就返回，少量线程即可支撑大量等待者
+     */
+    static class DefaultScheduler {
+        static final ScheduledExecutorService INSTANCE = new ScheduledThreadPoolExecutor(
+                Math.max(2, Runtime.getRuntime().availableProcessors()),
+                new ThreadFactoryBuilder().setNameFormat("redis-locker-%d").setDaemon(true).build());
+    }
 
     public static class Builder {
         private static final String DEFAULT_LOCK_PREFIX = "lock_";
@@ -240,17 +755,45 @@ public class RedisLocker {
          * default sleep time
          */
         private static final int DEFAULT_SLEEP_TIME = 100;
+        /**
+         * default safety net poll time when release notification is enabled
+         */
+        private static final int DEFAULT_NOTIFY_POLL_TIME = 1000;
+        /**
+         * default lease time
+         */
+        private static final int DEFAULT_LEASE_TIME = 10 * TIME;
 
-        private JedisConnectionFactory jedisConnectionFactory = null;
-
-        private int type;
+        private RedisCommandExecutor executor;
 
         private String lockPrefix = DEFAULT_LOCK_PREFIX;
+        private KeyRouter keyRouter = KeyRouter.NONE;
         private int sleepTime = DEFAULT_SLEEP_TIME;
 
+        private ScheduledExecutorService scheduler = null;
+
+        private boolean releaseNotification = false;
+        private int notifyPollTime = DEFAULT_NOTIFY_POLL_TIME;
+
+        private int leaseTime = DEFAULT_LEASE_TIME;
+        private boolean watchdog = false;
+
+        private boolean reentrant = false;
+
+        private MetricsRecorder metrics = NoopMetricsRecorder.INSTANCE;
+
         public Builder(JedisConnectionFactory jedisConnectionFactory, int type) {
-            this.jedisConnectionFactory = jedisConnectionFactory;
-            this.type = type;
+            this(new ConnectionFactoryCommandExecutor(jedisConnectionFactory, type));
+        }
+
+        /**
+         * @param executor long-lived executor, can be shared by lockers and limiters
+         */
+        public Builder(RedisCommandExecutor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor cannot be null");
+            }
+            this.executor = executor;
         }
 
         public Builder lockPrefix(String lockPrefix) {
@@ -258,12 +801,122 @@ public class RedisLocker {
             return this;
         }
 
+        /**
+         * hash tag of lock keys in cluster mode, default {@link KeyRouter#NONE}.
+         * with {@link KeyRouter#fixed(String)} {@link RedisLocker#tryLockAll(Collection, String, int)}
+         * locks all keys in one atomic script call
+         *
+         * @param keyRouter
+         * @return
+         */
+        public Builder keyRouter(KeyRouter keyRouter) {
+            if (keyRouter == null) {
+                throw new IllegalArgumentException("keyRouter cannot be null");
+            }
+            this.keyRouter = keyRouter;
+            return this;
+        }
+
         public Builder sleepTime(int sleepTime) {
             this.sleepTime = sleepTime;
             return this;
         }
 
+        /**
+         * custom scheduler for {@link RedisLocker#lockAsync(String, String, int)},
+         * default is a shared daemon pool
+         *
+         * @param scheduler
+         * @return
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * unlock publishes a release message and blocking lock waits for it instead of polling every sleepTime,
+         * must be enabled on every instance sharing the locks.
+         * the executor must support subscribe, a LettuceCommandExecutor needs a pub/sub connection
+         *
+         * @param releaseNotification
+         * @return
+         */
+        public Builder releaseNotification(boolean releaseNotification) {
+            this.releaseNotification = releaseNotification;
+            return this;
+        }
+
+        /**
+         * safety net poll time when release notification is enabled
+         *
+         * @param notifyPollTime
+         * @return
+         */
+        public Builder notifyPollTime(int notifyPollTime) {
+            this.notifyPollTime = notifyPollTime;
+            return this;
+        }
+
+        /**
+         * expire time of {@link RedisLocker#tryLock(String, String)} and the blocking locks, default 10s
+         *
+         * @param leaseTime milliseconds
+         * @return
+         */
+        public Builder leaseTime(int leaseTime) {
+            if (leaseTime <= 0) {
+                throw new IllegalArgumentException("leaseTime must be positive");
+            }
+            this.leaseTime = leaseTime;
+            return this;
+        }
+
+        /**
+         * renew locks held by this instance every leaseTime / 3 until unlock,
+         * so a short leaseTime can be used without losing the lock during long work.
+         * locks taken with a custom expireTime are not renewed
+         *
+         * @param watchdog
+         * @return
+         */
+        public Builder watchdog(boolean watchdog) {
+            this.watchdog = watchdog;
+            return this;
+        }
+
+        /**
+         * reentrant locks stored as a hash of request -> hold count,
+         * the same request can lock again and must unlock the same number of times.
+         * re-entry by the owning thread does not touch redis.
+         * a key must not be shared with a non reentrant locker
+         *
+         * @param reentrant
+         * @return
+         */
+        public Builder reentrant(boolean reentrant) {
+            this.reentrant = reentrant;
+            return this;
+        }
+
+        /**
+         * record attempt latency, wait time, retries, hold time and redis errors per lockPrefix
+         *
+         * @param metricsRecorder
+         * @return
+         */
+        public Builder metricsRecorder(MetricsRecorder metricsRecorder) {
+            if (metricsRecorder == null) {
+                throw new IllegalArgumentException("metricsRecorder cannot be null");
+            }
+            this.metrics = metricsRecorder;
+            return this;
+        }
+
         public RedisLocker build() {
+            if (releaseNotification && !executor.isSubscribable()) {
+                throw new IllegalArgumentException("releaseNotification requires an executor that supports subscribe");
+            }
             return new RedisLocker(this);
         }
 
@@ -0,0 +1,348 @@
+package top.masterc.lock;
+
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import top.masterc.executor.ConnectionFactoryCommandExecutor;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.metrics.MetricsRecorder;
+import top.masterc.metrics.NoopMetricsRecorder;
+import top.masterc.util.KeyRouter;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redis的分布式读写锁
+ * <p>
+ * 每个锁四个 key，使用同一个 hash tag 保证集群模式下在同一个 slot：
+ * readers hash（持有者 value -> 重入次数）、写锁、等待中的写者、读者过期时间 zset（持有者 value -> 过期时间）。
+ * 每个读者按自己的过期时间过期，加读锁和写锁时清理已过期的读者，崩溃的读者不会一直阻塞写者。
+ * 读者之间互不阻塞，写者与所有读者和其他写者互斥。
+ * 写者优先时，阻塞等待的写者会登记自己，新的读者让路，避免读多写少时写者饿死
+ *
+ * @author Master.C
+ */
+public class RedisReadWriteLock {
+
+    private static final Long SCRIPT_LOCK_MSG = 1L;
+
+    private static final Long UNLOCK_MSG = 1L;
+
+    private static final int TIME = 1000;
+
+    private final RedisCommandExecutor executor;
+
+    private final ScriptRegistry scriptRegistry = new ScriptRegistry();
+
+    private final String lockPrefix;
+
+    private final int sleepTime;
+
+    private final int leaseTime;
+
+    private final boolean writerPreference;
+
+    private final MetricsRecorder metrics;
+
+    private final String readName;
+
+    private final String writeName;
+
+    private final RedisScript readLockScript;
+
+    private final RedisScript readUnlockScript;
+
+    private final RedisScript writeLockScript;
+
+    private final RedisScript writeUnlockScript;
+
+    private RedisReadWriteLock(Builder builder) {
+        this.executor = builder.executor;
+        this.lockPrefix = builder.lockPrefix;
+        this.sleepTime = builder.sleepTime;
+        this.leaseTime = builder.leaseTime;
+        this.writerPreference = builder.writerPreference;
+        this.metrics = builder.metrics;
+        this.readName = lockPrefix + "read";
+        this.writeName = lockPrefix + "write";
+        this.readLockScript = scriptRegistry.register("read_lock.lua");
+        this.readUnlockScript = scriptRegistry.register("read_unlock.lua");
+        this.writeLockScript = scriptRegistry.register("write_lock.lua");
+        this.writeUnlockScript = scriptRegistry.register("lock.lua");
+    }
+
+    /**
+     * Non-blocking read lock, expires after leaseTime.
+     * the same request can lock again and must unlock the same number of times
+     *
+     * @param key     lock business type
+     * @param request value
+     * @return true lock success,false when a writer holds the lock or, with writer preference, waits for it
+     */
+    public boolean tryReadLock(String key, String request) {
+        return tryReadLock(key, request, leaseTime);
+    }
+
+    /**
+     * Non-blocking read lock
+     *
+     * @param key        lock business type
+     * @param request    value
+     * @param expireTime custom expireTime of this reader, re-entry keeps the later expiry
+     * @return true lock success
+     */
+    public boolean tryReadLock(String key, String request, int expireTime) {
+        long start = System.nanoTime();
+        Object result = lockEval(readName, readLockScript, keys(key),
+                Arrays.asList(request, String.valueOf(expireTime), writerPreference ? "1" : "0"));
+        boolean locked = SCRIPT_LOCK_MSG.equals(result);
+        metrics.lockAttempt(readName, System.nanoTime() - start, locked);
+        return locked;
+    }
+
+    /**
+     * blocking read lock
+     *
+     * @param key
+     * @param request
+     * @param blockTime max wait time in milliseconds
+     * @return
+     * @throws InterruptedException
+     */
+    public boolean readLock(String key, String request, int blockTime) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(blockTime);
+        for (int retries = 0; ; retries++) {
+            if (tryReadLock(key, request)) {
+                metrics.lockWait(readName, System.nanoTime() - start, retries, true);
+                return true;
+            }
+            if (!sleep(deadline)) {
+                metrics.lockWait(readName, System.nanoTime() - start, retries, false);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * release one hold of the read lock
+     *
+     * @param key
+     * @param request request must be the same as lock request
+     * @return true when request held the read lock
+     */
+    public boolean unlockRead(String key, String request) {
+        Object result = lockEval(readName, readUnlockScript, keys(key), Collections.singletonList(request));
+        return result instanceof Long && (Long) result >= 0;
+    }
+
+    /**
+     * Non-blocking write lock, expires after leaseTime.
+     * succeeds when there is no writer and no reader other than request itself
+     *
+     * @param key     lock business type
+     * @param request value
+     * @return true lock success,false lock fail
+     */
+    public boolean tryWriteLock(String key, String request) {
+        return tryWriteLock(key, request, leaseTime);
+    }
+
+    /**
+     * Non-blocking write lock, does not make readers wait
+     *
+     * @param key        lock business type
+     * @param request    value
+     * @param expireTime custom expireTime
+     * @return true lock success
+     */
+    public boolean tryWriteLock(String key, String request, int expireTime) {
+        return writeLock(key, request, expireTime, 0);
+    }
+
+    /**
+     * blocking write lock, with writer preference new readers wait until it is locked or blockTime elapsed
+     *
+     * @param key
+     * @param request
+     * @param blockTime max wait time in milliseconds
+     * @return
+     * @throws InterruptedException
+     */
+    public boolean writeLock(String key, String request, int blockTime) throws InterruptedException {
+        //每次重试都刷新登记，写者放弃后登记很快过期
+        int waitTime = writerPreference ? 3 * sleepTime : 0;
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(blockTime);
+        for (int retries = 0; ; retries++) {
+            if (writeLock(key, request, leaseTime, waitTime)) {
+                metrics.lockWait(writeName, System.nanoTime() - start, retries, true);
+                return true;
+            }
+            if (!sleep(deadline)) {
+                metrics.lockWait(writeName, System.nanoTime() - start, retries, false);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * unlock
+     *
+     * @param key
+     * @param request request must be the same as lock request
+     * @return
+     */
+    public boolean unlockWrite(String key, String request) {
+        String writer = base(key) + ":write";
+        Object result = lockEval(writeName, writeUnlockScript, Collections.singletonList(writer),
+                Collections.singletonList(request));
+        return UNLOCK_MSG.equals(result);
+    }
+
+    private boolean writeLock(String key, String request, int expireTime, int waitTime) {
+        long start = System.nanoTime();
+        Object result = lockEval(writeName, writeLockScript, keys(key),
+                Arrays.asList(request, String.valueOf(expireTime), String.valueOf(waitTime)));
+        boolean locked = SCRIPT_LOCK_MSG.equals(result);
+        metrics.lockAttempt(writeName, System.nanoTime() - start, locked);
+        return locked;
+    }
+
+    /**
+     * readers hash, writer, waiting writer, reader expiry
+     */
+    private List<String> keys(String key) {
+        String base = base(key);
+        return Arrays.asList(base + ":read", base + ":write", base + ":write_wait", base + ":read_expire");
+    }
+
+    /**
+     * 读写锁的 key 都由它派生，集群模式下带 hash tag 保证在同一个 slot
+     */
+    private String base(String key) {
+        String fullKey = lockPrefix + key;
+        return executor.isCluster() ? KeyRouter.perKey().route(fullKey) : fullKey;
+    }
+
+    /**
+     * @return false when deadline passed
+     */
+    private boolean sleep(long deadline) throws InterruptedException {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            return false;
+        }
+        TimeUnit.MILLISECONDS.sleep(Math.min(sleepTime, remaining));
+        return true;
+    }
+
+    /**
+     * eval for lock and unlock, redis errors are recorded
+     */
+    private Object lockEval(String name, RedisScript redisScript, List<String> keys, List<String> args) {
+        try {
+            return scriptRegistry.eval(executor, redisScript, keys, args);
+        } catch (RuntimeException e) {
+            metrics.lockError(name, e);
+            throw e;
+        }
+    }
+
+    public static class Builder {
+        private static final String DEFAULT_LOCK_PREFIX = "lock_";
+        /**
+         * default sleep time
+         */
+        private static final int DEFAULT_SLEEP_TIME = 100;
+        /**
+         * default lease time
+         */
+        private static final int DEFAULT_LEASE_TIME = 10 * TIME;
+
+        private RedisCommandExecutor executor;
+
+        private String lockPrefix = DEFAULT_LOCK_PREFIX;
+        private int sleepTime = DEFAULT_SLEEP_TIME;
+        private int leaseTime = DEFAULT_LEASE_TIME;
+
+        private boolean writerPreference = true;
+
+        private MetricsRecorder metrics = NoopMetricsRecorder.INSTANCE;
+
+        public Builder(JedisConnectionFactory jedisConnectionFactory, int type) {
+            this(new ConnectionFactoryCommandExecutor(jedisConnectionFactory, type));
+        }
+
+        /**
+         * @param executor long-lived executor, can be shared by lockers and limiters
+         */
+        public Builder(RedisCommandExecutor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor cannot be null");
+            }
+            this.executor = executor;
+        }
+
+        public Builder lockPrefix(String lockPrefix) {
+            this.lockPrefix = lockPrefix;
+            return this;
+        }
+
+        public Builder sleepTime(int sleepTime) {
+            if (sleepTime <= 0) {
+                throw new IllegalArgumentException("sleepTime must be positive");
+            }
+            this.sleepTime = sleepTime;
+            return this;
+        }
+
+        /**
+         * expire time of the locks without a custom expireTime, default 10s
+         *
+         * @param leaseTime milliseconds
+         * @return
+         */
+        public Builder leaseTime(int leaseTime) {
+            if (leaseTime <= 0) {
+                throw new IllegalArgumentException("leaseTime must be positive");
+            }
+            this.leaseTime = leaseTime;
+            return this;
+        }
+
+        /**
+         * a writer blocked in {@link RedisReadWriteLock#writeLock(String, String, int)} stops new readers
+         * until it gets the lock, so writers are not starved by a steady stream of readers. default true,
+         * must be the same on every instance sharing the locks
+         *
+         * @param writerPreference
+         * @return
+         */
+        public Builder writerPreference(boolean writerPreference) {
+            this.writerPreference = writerPreference;
+            return this;
+        }
+
+        /**
+         * record attempt latency, wait time, retries and redis errors as lockPrefix + "read" / "write"
+         *
+         * @param metricsRecorder
+         * @return
+         */
+        public Builder metricsRecorder(MetricsRecorder metricsRecorder) {
+            if (metricsRecorder == null) {
+                throw new IllegalArgumentException("metricsRecorder cannot be null");
+            }
+            this.metrics = metricsRecorder;
+            return this;
+        }
+
+        public RedisReadWriteLock build() {
+            return new RedisReadWriteLock(this);
+        }
+    }
+}
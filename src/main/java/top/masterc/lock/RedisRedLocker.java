@@ -0,0 +1,464 @@
+package top.masterc.lock;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import top.masterc.constant.RedisToolsConstant;
+import top.masterc.executor.ConnectionFactoryCommandExecutor;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.metrics.MetricsRecorder;
+import top.masterc.metrics.NoopMetricsRecorder;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Redlock，基于 N 个相互独立的 Redis 主节点的分布式锁
+ * <p>
+ * 加锁时并行向所有节点 SET NX PX，在多数节点（N / 2 + 1）上成功且剩余有效期
+ * （expireTime - 耗时 - 时钟漂移）大于 0 才算成功，耗时约为最慢节点的 RTT 而不是所有节点 RTT 之和；
+ * 失败时并行在所有节点上用 lock.lua 释放，包括超时的节点，因为超时的 SET 可能已经成功。
+ * 单个节点宕机或故障转移丢失锁不影响互斥性
+ *
+ * @author Master.C
+ */
+public class RedisRedLocker {
+    private static Logger logger = LoggerFactory.getLogger(RedisRedLocker.class);
+
+    private static final Long UNLOCK_MSG = 1L;
+
+    private static final int TIME = 1000;
+
+    /**
+     * 补偿节点间时钟漂移的固定毫秒数
+     */
+    private static final long DRIFT_MILLIS = 2;
+
+    private final List<Node> nodes;
+
+    private final int quorum;
+
+    private final String lockPrefix;
+
+    private final int sleepTime;
+
+    private final int leaseTime;
+
+    private final double clockDriftFactor;
+
+    /**
+     * 并行访问各节点的线程池，调用线程自己执行最后一个节点
+     */
+    private final ExecutorService requestExecutor;
+
+    private final MetricsRecorder metrics;
+
+    private RedisRedLocker(Builder builder) {
+        this.lockPrefix = builder.lockPrefix;
+        this.sleepTime = builder.sleepTime;
+        this.leaseTime = builder.leaseTime;
+        this.clockDriftFactor = builder.clockDriftFactor;
+        this.requestExecutor = builder.requestExecutor != null ? builder.requestExecutor : DefaultExecutor.INSTANCE;
+        this.metrics = builder.metrics;
+        this.nodes = new ArrayList<>(builder.executors.size());
+        for (RedisCommandExecutor executor : builder.executors) {
+            nodes.add(new Node(executor));
+        }
+        this.quorum = nodes.size() / 2 + 1;
+    }
+
+    /**
+     * Non-blocking lock, expires after leaseTime
+     *
+     * @param key     lock business type
+     * @param request value, must be unique per holder
+     * @return true when locked on a quorum of nodes within the validity time
+     */
+    public boolean tryLock(String key, String request) {
+        return tryLock(key, request, leaseTime);
+    }
+
+    /**
+     * Non-blocking lock
+     *
+     * @param key        lock business type
+     * @param request    value, must be unique per holder
+     * @param expireTime custom expireTime in milliseconds, the lock is safe for expireTime minus the acquisition time
+     * @return true when locked on a quorum of nodes within the validity time
+     */
+    public boolean tryLock(String key, String request, int expireTime) {
+        return tryLockValidity(key, request, expireTime) > 0;
+    }
+
+    /**
+     * Non-blocking lock returning the validity time, expires after leaseTime
+     *
+     * @param key     lock business type
+     * @param request value, must be unique per holder
+     * @return milliseconds the lock is safe to use for, 0 when lock fail
+     */
+    public long tryLockValidity(String key, String request) {
+        return tryLockValidity(key, request, leaseTime);
+    }
+
+    /**
+     * Non-blocking lock returning the validity time.
+     * the validity is expireTime minus the acquisition time and the clock drift, finish the protected work within it
+     * or stop using the lock
+     *
+     * @param key        lock business type
+     * @param request    value, must be unique per holder
+     * @param expireTime custom expireTime in milliseconds
+     * @return milliseconds the lock is safe to use for, 0 when lock fail
+     */
+    public long tryLockValidity(String key, String request, int expireTime) {
+        String fullKey = lockPrefix + key;
+        long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(nodes.size());
+        CompletableFuture<Boolean> decision = new CompletableFuture<>();
+        Votes votes = new Votes();
+        for (int i = 0; i < nodes.size(); i++) {
+            RedisCommandExecutor executor = nodes.get(i).executor;
+            CompletableFuture<Boolean> result = call(() -> executor.setIfAbsent(fullKey, request, expireTime),
+                    i == nodes.size() - 1);
+            result.whenComplete((locked, e) -> votes.vote(decision, Boolean.TRUE.equals(locked), e));
+            results.add(result);
+        }
+
+        boolean locked = await(decision, expireTime);
+        long elapsed = System.nanoTime() - start;
+        long validity = expireTime - TimeUnit.NANOSECONDS.toMillis(elapsed)
+                - (long) (expireTime * clockDriftFactor) - DRIFT_MILLIS;
+        locked = locked && validity > 0;
+        metrics.lockAttempt(lockPrefix, elapsed, locked);
+        if (!locked) {
+            //释放所有节点，等仍在进行的 SET 结束后再释放，避免释放先于加锁到达；
+            //回调可能运行在线程池上，只提交释放请求不等待结果
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                    .whenComplete((v, e) -> release(fullKey, request, false));
+            return 0;
+        }
+        return validity;
+    }
+
+    /**
+     * blocking lock, retries after a random delay up to sleepTime to avoid split votes between competitors
+     *
+     * @param key
+     * @param request
+     * @throws InterruptedException
+     */
+    public void lock(String key, String request) throws InterruptedException {
+        long start = System.nanoTime();
+        for (int retries = 0; ; retries++) {
+            if (tryLock(key, request)) {
+                metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, true);
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(retryDelay());
+        }
+    }
+
+    /**
+     * blocking lock,custom time
+     *
+     * @param key
+     * @param request
+     * @param blockTime max wait time in milliseconds
+     * @return
+     * @throws InterruptedException
+     */
+    public boolean lock(String key, String request, int blockTime) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(blockTime);
+        for (int retries = 0; ; retries++) {
+            if (tryLock(key, request)) {
+                metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, true);
+                return true;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                metrics.lockWait(lockPrefix, System.nanoTime() - start, retries, false);
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(Math.min(retryDelay(), remaining));
+        }
+    }
+
+    /**
+     * unlock on all nodes in parallel
+     *
+     * @param key
+     * @param request request must be the same as lock request
+     * @return true when released on a quorum of nodes
+     */
+    public boolean unlock(String key, String request) {
+        List<CompletableFuture<Boolean>> results = release(lockPrefix + key, request, true);
+        int released = 0;
+        for (CompletableFuture<Boolean> result : results) {
+            try {
+                if (result.get()) {
+                    released++;
+                }
+            } catch (ExecutionException e) {
+                //recorded by call
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return released >= quorum;
+    }
+
+    /**
+     * 并行在所有节点上释放，不等待结果
+     *
+     * @param inline 在调用线程上执行最后一个节点，线程池上的回调不能 inline，否则会占着线程池等待
+     * @return 每个节点是否释放成功
+     */
+    private List<CompletableFuture<Boolean>> release(String fullKey, String request, boolean inline) {
+        List<String> keys = Collections.singletonList(fullKey);
+        List<String> args = Collections.singletonList(request);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            results.add(call(() -> UNLOCK_MSG.equals(node.unlock(keys, args)), inline && i == nodes.size() - 1));
+        }
+        return results;
+    }
+
+    /**
+     * 在线程池上执行一个节点的命令，inline 时在调用线程上执行，节点异常记录后按失败处理
+     */
+    private CompletableFuture<Boolean> call(Supplier<Boolean> command, boolean inline) {
+        Supplier<Boolean> recorded = () -> {
+            try {
+                return command.get();
+            } catch (RuntimeException e) {
+                metrics.lockError(lockPrefix, e);
+                logger.warn("redlock node failed", e);
+                throw e;
+            }
+        };
+        if (!inline) {
+            return CompletableFuture.supplyAsync(recorded, requestExecutor);
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            result.complete(recorded.get());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * 等待多数派结果，最多等 expireTime，超过后锁已经没有有效期
+     */
+    private boolean await(CompletableFuture<Boolean> decision, int expireTime) {
+        try {
+            return decision.get(expireTime, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private long retryDelay() {
+        return ThreadLocalRandom.current().nextInt(sleepTime / 2, sleepTime + 1);
+    }
+
+    /**
+     * 一次加锁的投票，达到多数或不可能达到多数时立即决定
+     */
+    private class Votes {
+        private int granted;
+        private int denied;
+
+        private synchronized void vote(CompletableFuture<Boolean> decision, boolean locked, Throwable e) {
+            if (locked && e == null) {
+                granted++;
+            } else {
+                denied++;
+            }
+            if (granted >= quorum) {
+                decision.complete(true);
+            } else if (denied > nodes.size() - quorum) {
+                decision.complete(false);
+            }
+        }
+    }
+
+    /**
+     * 一个独立的主节点，每个节点各自预加载脚本
+     */
+    private static class Node {
+        private final RedisCommandExecutor executor;
+        private final ScriptRegistry scriptRegistry = new ScriptRegistry();
+        private final RedisScript unlockScript;
+
+        private Node(RedisCommandExecutor executor) {
+            this.executor = executor;
+            this.unlockScript = scriptRegistry.register("lock.lua");
+        }
+
+        private Object unlock(List<String> keys, List<String> args) {
+            return scriptRegistry.eval(executor, unlockScript, keys, args);
+        }
+    }
+
+    /**
+     * 默认共享的请求线程，Jedis 是阻塞的，每个并行请求占用一个线程
+     */
+    private static class DefaultExecutor {
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("redis-redlocker-%d").setDaemon(true).build());
+    }
+
+    public static class Builder {
+        private static final String DEFAULT_LOCK_PREFIX = "lock_";
+        /**
+         * default max retry delay
+         */
+        private static final int DEFAULT_SLEEP_TIME = 100;
+        /**
+         * default lease time
+         */
+        private static final int DEFAULT_LEASE_TIME = 10 * TIME;
+        /**
+         * default clock drift factor recommended by redlock
+         */
+        private static final double DEFAULT_CLOCK_DRIFT_FACTOR = 0.01;
+
+        private List<RedisCommandExecutor> executors;
+
+        private String lockPrefix = DEFAULT_LOCK_PREFIX;
+        private int sleepTime = DEFAULT_SLEEP_TIME;
+        private int leaseTime = DEFAULT_LEASE_TIME;
+        private double clockDriftFactor = DEFAULT_CLOCK_DRIFT_FACTOR;
+
+        private ExecutorService requestExecutor = null;
+
+        private MetricsRecorder metrics = NoopMetricsRecorder.INSTANCE;
+
+        /**
+         * @param jedisConnectionFactories independent single redis masters, usually an odd number such as 3 or 5
+         */
+        public Builder(JedisConnectionFactory... jedisConnectionFactories) {
+            this(executors(jedisConnectionFactories));
+        }
+
+        /**
+         * @param executors long-lived executors of independent single redis masters
+         */
+        public Builder(List<RedisCommandExecutor> executors) {
+            if (executors == null || executors.isEmpty()) {
+                throw new IllegalArgumentException("executors cannot be empty");
+            }
+            for (RedisCommandExecutor executor : executors) {
+                if (executor.isCluster()) {
+                    throw new IllegalArgumentException("redlock nodes must be independent single redis masters");
+                }
+            }
+            this.executors = new ArrayList<>(executors);
+        }
+
+        private static List<RedisCommandExecutor> executors(JedisConnectionFactory... jedisConnectionFactories) {
+            List<RedisCommandExecutor> executors = new ArrayList<>(jedisConnectionFactories.length);
+            for (JedisConnectionFactory jedisConnectionFactory : jedisConnectionFactories) {
+                executors.add(new ConnectionFactoryCommandExecutor(jedisConnectionFactory, RedisToolsConstant.SINGLE));
+            }
+            return executors;
+        }
+
+        public Builder lockPrefix(String lockPrefix) {
+            this.lockPrefix = lockPrefix;
+            return this;
+        }
+
+        /**
+         * max retry delay of the blocking locks, the actual delay is random between sleepTime / 2 and sleepTime
+         *
+         * @param sleepTime
+         * @return
+         */
+        public Builder sleepTime(int sleepTime) {
+            if (sleepTime <= 0) {
+                throw new IllegalArgumentException("sleepTime must be positive");
+            }
+            this.sleepTime = sleepTime;
+            return this;
+        }
+
+        /**
+         * expire time of {@link RedisRedLocker#tryLock(String, String)} and the blocking locks, default 10s
+         *
+         * @param leaseTime milliseconds
+         * @return
+         */
+        public Builder leaseTime(int leaseTime) {
+            if (leaseTime <= 0) {
+                throw new IllegalArgumentException("leaseTime must be positive");
+            }
+            this.leaseTime = leaseTime;
+            return this;
+        }
+
+        /**
+         * part of expireTime reserved for clock drift between nodes, default 0.01
+         *
+         * @param clockDriftFactor
+         * @return
+         */
+        public Builder clockDriftFactor(double clockDriftFactor) {
+            if (clockDriftFactor < 0 || clockDriftFactor >= 1) {
+                throw new IllegalArgumentException("clockDriftFactor must be in [0, 1)");
+            }
+            this.clockDriftFactor = clockDriftFactor;
+            return this;
+        }
+
+        /**
+         * custom executor for the parallel node requests, default is a shared daemon cached pool
+         *
+         * @param requestExecutor
+         * @return
+         */
+        public Builder requestExecutor(ExecutorService requestExecutor) {
+            this.requestExecutor = requestExecutor;
+            return this;
+        }
+
+        /**
+         * record attempt latency, wait time, retries and node errors per lockPrefix
+         *
+         * @param metricsRecorder
+         * @return
+         */
+        public Builder metricsRecorder(MetricsRecorder metricsRecorder) {
+            if (metricsRecorder == null) {
+                throw new IllegalArgumentException("metricsRecorder cannot be null");
+            }
+            this.metrics = metricsRecorder;
+            return this;
+        }
+
+        public RedisRedLocker build() {
+            return new RedisRedLocker(this);
+        }
+    }
+}
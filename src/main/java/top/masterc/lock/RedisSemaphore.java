@@ -0,0 +1,336 @@
+package top.masterc.lock;
+
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import top.masterc.executor.ConnectionFactoryCommandExecutor;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.metrics.MetricsRecorder;
+import top.masterc.metrics.NoopMetricsRecorder;
+import top.masterc.util.KeyRouter;
+import top.masterc.util.RedisScript;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redis的分布式信号量，限制所有实例对某个资源的并发数
+ * <p>
+ * 许可保存在一个 sorted set 中，member 为 token:序号，score 为获取时间；每个 token 获取的许可数记在一个 hash 中，
+ * 释放和续期按服务端记录的数量处理，调用方传错数量不会多释放或少释放。
+ * 获取和释放都是一次 lua 调用；获取时先回收获取时间超过 leaseTime 的许可，持有者崩溃后许可不会永久泄漏。
+ * 持有时间可能超过 leaseTime 时用 {@link #renew(String)} 续期
+ *
+ * @author Master.C
+ */
+public class RedisSemaphore {
+
+    private static final Long SCRIPT_ACQUIRE_MSG = 1L;
+
+    private static final Long SCRIPT_HELD_MSG = 1L;
+
+    private static final int TIME = 1000;
+
+    private final RedisCommandExecutor executor;
+
+    private final ScriptRegistry scriptRegistry = new ScriptRegistry();
+
+    private final String name;
+
+    private final List<String> keys;
+
+    private final int permits;
+
+    private final int leaseTime;
+
+    private final int sleepTime;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final MetricsRecorder metrics;
+
+    private final RedisScript acquireScript;
+
+    private final RedisScript releaseScript;
+
+    private final RedisScript renewScript;
+
+    private RedisSemaphore(Builder builder) {
+        this.executor = builder.executor;
+        this.name = builder.prefix + builder.name;
+        //许可 zset 和 token -> 许可数 hash，集群模式下在同一个 slot
+        this.keys = Arrays.asList(name, KeyRouter.derive(name, "counts", executor.isCluster()));
+        this.permits = builder.permits;
+        this.leaseTime = builder.leaseTime;
+        this.sleepTime = builder.sleepTime;
+        this.scheduler = builder.scheduler != null ? builder.scheduler : RedisLocker.DefaultScheduler.INSTANCE;
+        this.metrics = builder.metrics;
+        this.acquireScript = scriptRegistry.register("semaphore_acquire.lua");
+        this.releaseScript = scriptRegistry.register("semaphore_release.lua");
+        this.renewScript = scriptRegistry.register("semaphore_renew.lua");
+    }
+
+    /**
+     * Non-blocking acquire one permit
+     *
+     * @return token to release the permit, null when no permit is available
+     */
+    public String tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Non-blocking acquire, all or nothing
+     *
+     * @param count number of permits
+     * @return token to release the permits, null when not enough permits are available
+     */
+    public String tryAcquire(int count) {
+        if (count <= 0 || count > permits) {
+            throw new IllegalArgumentException("count must be in [1, " + permits + "]");
+        }
+        String token = UUID.randomUUID().toString();
+        long start = System.nanoTime();
+        Object result = eval(acquireScript, Arrays.asList(String.valueOf(permits), String.valueOf(count),
+                String.valueOf(leaseTime), token));
+        boolean acquired = SCRIPT_ACQUIRE_MSG.equals(result);
+        metrics.lockAttempt(name, System.nanoTime() - start, acquired);
+        return acquired ? token : null;
+    }
+
+    /**
+     * blocking acquire
+     *
+     * @param count   number of permits
+     * @param timeout max wait time in milliseconds
+     * @return token to release the permits, null when timeout
+     * @throws InterruptedException
+     */
+    public String acquire(int count, int timeout) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (int retries = 0; ; retries++) {
+            String token = tryAcquire(count);
+            if (token != null) {
+                metrics.lockWait(name, System.nanoTime() - start, retries, true);
+                return token;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                metrics.lockWait(name, System.nanoTime() - start, retries, false);
+                return null;
+            }
+            TimeUnit.MILLISECONDS.sleep(Math.min(sleepTime, remaining));
+        }
+    }
+
+    /**
+     * asynchronous acquire, retries are scheduled on the scheduler instead of blocking the caller
+     *
+     * @param count   number of permits
+     * @param timeout max wait time in milliseconds
+     * @return completes with the token, or null when timeout
+     */
+    public CompletableFuture<String> acquireAsync(int count, int timeout) {
+        if (count <= 0 || count > permits) {
+            throw new IllegalArgumentException("count must be in [1, " + permits + "]");
+        }
+        CompletableFuture<String> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        scheduler.execute(() -> tryAcquireAsync(future, count, start, deadline, 0));
+        return future;
+    }
+
+    private void tryAcquireAsync(CompletableFuture<String> future, int count, long start, long deadline, int retries) {
+        //cancelled by caller
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            String token = tryAcquire(count);
+            if (token != null) {
+                if (future.complete(token)) {
+                    metrics.lockWait(name, System.nanoTime() - start, retries, true);
+                } else {
+                    //the caller gave up while we were acquiring
+                    release(token);
+                }
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                metrics.lockWait(name, System.nanoTime() - start, retries, false);
+                future.complete(null);
+                return;
+            }
+            scheduler.schedule(() -> tryAcquireAsync(future, count, start, deadline, retries + 1),
+                    Math.min(TimeUnit.MILLISECONDS.toNanos(sleepTime), remaining), TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * release all permits acquired with token, the number of permits is the one recorded when acquiring
+     *
+     * @param token token returned by acquire
+     * @return true when all permits were still held, false when they were reclaimed after leaseTime
+     */
+    public boolean release(String token) {
+        return SCRIPT_HELD_MSG.equals(eval(releaseScript, Collections.singletonList(token)));
+    }
+
+    /**
+     * reset the acquisition time of all permits acquired with token, so they are not reclaimed for another leaseTime
+     *
+     * @param token token returned by acquire
+     * @return true when all permits were still held and renewed
+     */
+    public boolean renew(String token) {
+        return SCRIPT_HELD_MSG.equals(eval(renewScript, Arrays.asList(token, String.valueOf(leaseTime))));
+    }
+
+    /**
+     * eval on the permit set, redis errors are recorded
+     */
+    private Object eval(RedisScript redisScript, List<String> args) {
+        try {
+            return scriptRegistry.eval(executor, redisScript, keys, args);
+        } catch (RuntimeException e) {
+            metrics.lockError(name, e);
+            throw e;
+        }
+    }
+
+    public static class Builder {
+        private static final String DEFAULT_PREFIX = "semaphore_";
+        /**
+         * default sleep time
+         */
+        private static final int DEFAULT_SLEEP_TIME = 100;
+        /**
+         * default lease time
+         */
+        private static final int DEFAULT_LEASE_TIME = 60 * TIME;
+
+        private RedisCommandExecutor executor;
+
+        private String prefix = DEFAULT_PREFIX;
+        private String name;
+        private int permits;
+
+        private int leaseTime = DEFAULT_LEASE_TIME;
+        private int sleepTime = DEFAULT_SLEEP_TIME;
+
+        private ScheduledExecutorService scheduler = null;
+
+        private MetricsRecorder metrics = NoopMetricsRecorder.INSTANCE;
+
+        public Builder(JedisConnectionFactory jedisConnectionFactory, int type) {
+            this(new ConnectionFactoryCommandExecutor(jedisConnectionFactory, type));
+        }
+
+        /**
+         * @param executor long-lived executor, can be shared by lockers and limiters
+         */
+        public Builder(RedisCommandExecutor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor cannot be null");
+            }
+            this.executor = executor;
+        }
+
+        /**
+         * semaphore name, instances with the same name share the permits
+         *
+         * @param name
+         * @return
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder prefix(String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        /**
+         * total permits, must be the same on every instance
+         *
+         * @param permits
+         * @return
+         */
+        public Builder permits(int permits) {
+            if (permits <= 0) {
+                throw new IllegalArgumentException("permits must be positive");
+            }
+            this.permits = permits;
+            return this;
+        }
+
+        /**
+         * permits not released or renewed within leaseTime are reclaimed, default 60s
+         *
+         * @param leaseTime milliseconds
+         * @return
+         */
+        public Builder leaseTime(int leaseTime) {
+            if (leaseTime <= 0) {
+                throw new IllegalArgumentException("leaseTime must be positive");
+            }
+            this.leaseTime = leaseTime;
+            return this;
+        }
+
+        public Builder sleepTime(int sleepTime) {
+            if (sleepTime <= 0) {
+                throw new IllegalArgumentException("sleepTime must be positive");
+            }
+            this.sleepTime = sleepTime;
+            return this;
+        }
+
+        /**
+         * custom scheduler for {@link RedisSemaphore#acquireAsync(int, int)},
+         * default is the pool shared with {@link RedisLocker}
+         *
+         * @param scheduler
+         * @return
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * record attempt latency, wait time, retries and redis errors per prefix + name
+         *
+         * @param metricsRecorder
+         * @return
+         */
+        public Builder metricsRecorder(MetricsRecorder metricsRecorder) {
+            if (metricsRecorder == null) {
+                throw new IllegalArgumentException("metricsRecorder cannot be null");
+            }
+            this.metrics = metricsRecorder;
+            return this;
+        }
+
+        public RedisSemaphore build() {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("name cannot be empty");
+            }
+            if (permits <= 0) {
+                throw new IllegalArgumentException("permits must be set");
+            }
+            return new RedisSemaphore(this);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package top.masterc.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.PackedConcurrentHistogram;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存中的指标，延迟使用 HdrHistogram，计数使用 LongAdder
+ * <p>
+ * 每个名称第一次出现时创建统计对象，之后记录不分配对象。限流以 key 为名称，key 很多时名称数量达到 maxNames 之后
+ * 新出现的名称合并记录到 {@link #OTHERS}，内存不随 key 数量增长。
+ * 直方图使用 packed 存储，只为记录过的值所在的区间分配空间，一个直方图通常只占几 KB
+ * 需要自行引入 org.hdrhistogram:HdrHistogram，可以定时读取 {@link #lockStats(String)} / {@link #limiterStats(String)} 导出到监控系统
+ *
+ * @author Master.C
+ */
+public class InMemoryMetricsRecorder implements MetricsRecorder {
+
+    /**
+     * 超过 1 小时的值按 1 小时记录
+     */
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    /**
+     * 1 微秒以下的差别不区分，减少直方图的桶数
+     */
+    private static final long LOWEST_DISCERNIBLE_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private static final int DEFAULT_MAX_NAMES = 256;
+
+    /**
+     * 超过 maxNames 之后的名称合并记录的名称
+     */
+    public static final String OTHERS = "others";
+
+    private static final LockStats EMPTY_LOCK_STATS = new LockStats();
+
+    private static final LimiterStats EMPTY_LIMITER_STATS = new LimiterStats();
+
+    private final int maxNames;
+
+    private final Map<String, LockStats> locks = new ConcurrentHashMap<>();
+
+    private final Map<String, LimiterStats> limiters = new ConcurrentHashMap<>();
+
+    public InMemoryMetricsRecorder() {
+        this(DEFAULT_MAX_NAMES);
+    }
+
+    /**
+     * @param maxNames 锁和限流各自最多单独统计的名称数量
+     */
+    public InMemoryMetricsRecorder(int maxNames) {
+        if (maxNames <= 0) {
+            throw new IllegalArgumentException("maxNames must be positive");
+        }
+        this.maxNames = maxNames;
+    }
+
+    @Override
+    public void lockAttempt(String name, long latencyNanos, boolean acquired) {
+        LockStats stats = lockStatsFor(name);
+        record(stats.attemptLatency, latencyNanos);
+        (acquired ? stats.acquired : stats.failed).increment();
+    }
+
+    @Override
+    public void lockWait(String name, long waitNanos, int retries, boolean acquired) {
+        LockStats stats = lockStatsFor(name);
+        record(stats.waitTime, waitNanos);
+        stats.retries.add(retries);
+        if (!acquired) {
+            stats.timeouts.increment();
+        }
+    }
+
+    @Override
+    public void lockHeld(String name, long holdNanos) {
+        record(lockStatsFor(name).holdTime, holdNanos);
+    }
+
+    @Override
+    public void lockError(String name, Exception e) {
+        lockStatsFor(name).errors.increment();
+    }
+
+    @Override
+    public void limiterDecision(String name, long latencyNanos, boolean permitted) {
+        LimiterStats stats = limiterStatsFor(name);
+        record(stats.latency, latencyNanos);
+        (permitted ? stats.permitted : stats.rejected).increment();
+    }
+
+    @Override
+    public void limiterError(String name, Exception e) {
+        limiterStatsFor(name).errors.increment();
+    }
+
+    /**
+     * @param name
+     * @return 没有记录过的名称返回全为 0 的统计，不会创建
+     */
+    public LockStats lockStats(String name) {
+        return locks.getOrDefault(name, EMPTY_LOCK_STATS);
+    }
+
+    /**
+     * @param name
+     * @return 没有记录过的名称返回全为 0 的统计，不会创建
+     */
+    public LimiterStats limiterStats(String name) {
+        return limiters.getOrDefault(name, EMPTY_LIMITER_STATS);
+    }
+
+    public Map<String, LockStats> getLocks() {
+        return Collections.unmodifiableMap(locks);
+    }
+
+    public Map<String, LimiterStats> getLimiters() {
+        return Collections.unmodifiableMap(limiters);
+    }
+
+    private LockStats lockStatsFor(String name) {
+        LockStats stats = locks.get(name);
+        if (stats != null) {
+            return stats;
+        }
+        return locks.computeIfAbsent(locks.size() < maxNames ? name : OTHERS, n -> new LockStats());
+    }
+
+    private LimiterStats limiterStatsFor(String name) {
+        LimiterStats stats = limiters.get(name);
+        if (stats != null) {
+            return stats;
+        }
+        return limiters.computeIfAbsent(limiters.size() < maxNames ? name : OTHERS, n -> new LimiterStats());
+    }
+
+    private static void record(Histogram histogram, long nanos) {
+        histogram.recordValue(Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+    }
+
+    private static Histogram newHistogram() {
+        return new PackedConcurrentHistogram(LOWEST_DISCERNIBLE_NANOS, HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * 一个 lockPrefix 的指标，延迟单位纳秒
+     */
+    public static class LockStats {
+        private final Histogram attemptLatency = newHistogram();
+        private final Histogram waitTime = newHistogram();
+        private final Histogram holdTime = newHistogram();
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * @return 每次加锁命令的耗时
+         */
+        public Histogram getAttemptLatency() {
+            return attemptLatency.copy();
+        }
+
+        /**
+         * @return 阻塞 / 异步加锁从开始到成功或超时的时间
+         */
+        public Histogram getWaitTime() {
+            return waitTime.copy();
+        }
+
+        public Histogram getHoldTime() {
+            return holdTime.copy();
+        }
+
+        public long getAcquired() {
+            return acquired.sum();
+        }
+
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+    }
+
+    /**
+     * 一个限流 key 的指标，延迟单位纳秒
+     */
+    public static class LimiterStats {
+        private final Histogram latency = newHistogram();
+        private final LongAdder permitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        public Histogram getLatency() {
+            return latency.copy();
+        }
+
+        public long getPermitted() {
+            return permitted.sum();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return 拒绝比例，没有请求时为 0
+         */
+        public double getRejectionRate() {
+            long rejectedCount = rejected.sum();
+            long total = rejectedCount + permitted.sum();
+            return total == 0 ? 0 : (double) rejectedCount / total;
+        }
+    }
+}
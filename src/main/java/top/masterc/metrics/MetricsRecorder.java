@@ -0,0 +1,64 @@
+package top.masterc.metrics;
+
+/**
+ * 锁和限流的指标记录
+ * <p>
+ * 在加锁、解锁、限流的调用线程上同步调用，实现必须无锁且不在热路径上分配对象。
+ * 锁以 lockPrefix 为名称，限流以限流 key 为名称（全局限流为 rate_limiter）
+ *
+ * @author Master.C
+ */
+public interface MetricsRecorder {
+
+    /**
+     * 一次加锁命令（SET NX 或加锁脚本）
+     *
+     * @param name         lockPrefix
+     * @param latencyNanos 命令耗时
+     * @param acquired     是否加锁成功
+     */
+    void lockAttempt(String name, long latencyNanos, boolean acquired);
+
+    /**
+     * 阻塞加锁或异步加锁结束
+     *
+     * @param name      lockPrefix
+     * @param waitNanos 从开始加锁到成功或超时的时间
+     * @param retries   第一次之后的重试次数
+     * @param acquired  false 表示超时
+     */
+    void lockWait(String name, long waitNanos, int retries, boolean acquired);
+
+    /**
+     * 锁从加锁成功到解锁的持有时间
+     *
+     * @param name      lockPrefix
+     * @param holdNanos 持有时间
+     */
+    void lockHeld(String name, long holdNanos);
+
+    /**
+     * 加锁、解锁时 Redis 调用失败
+     *
+     * @param name lockPrefix
+     * @param e
+     */
+    void lockError(String name, Exception e);
+
+    /**
+     * 一次限流判断
+     *
+     * @param name         限流 key
+     * @param latencyNanos 判断耗时，租借模式下本地判断也会记录
+     * @param permitted    是否放行
+     */
+    void limiterDecision(String name, long latencyNanos, boolean permitted);
+
+    /**
+     * 限流时 Redis 调用失败
+     *
+     * @param name 限流 key
+     * @param e
+     */
+    void limiterError(String name, Exception e);
+}
@@ -0,0 +1,38 @@
+package top.masterc.metrics;
+
+/**
+ * 不记录任何指标，默认使用
+ *
+ * @author Master.C
+ */
+public final class NoopMetricsRecorder implements MetricsRecorder {
+
+    public static final NoopMetricsRecorder INSTANCE = new NoopMetricsRecorder();
+
+    private NoopMetricsRecorder() {
+    }
+
+    @Override
+    public void lockAttempt(String name, long latencyNanos, boolean acquired) {
+    }
+
+    @Override
+    public void lockWait(String name, long waitNanos, int retries, boolean acquired) {
+    }
+
+    @Override
+    public void lockHeld(String name, long holdNanos) {
+    }
+
+    @Override
+    public void lockError(String name, Exception e) {
+    }
+
+    @Override
+    public void limiterDecision(String name, long latencyNanos, boolean permitted) {
+    }
+
+    @Override
+    public void limiterError(String name, Exception e) {
+    }
+}
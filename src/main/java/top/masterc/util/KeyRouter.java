@@ -0,0 +1,136 @@
+package top.masterc.util;
+
+import redis.clients.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 集群模式下的 key 路由
+ * <p>
+ * slot 在本地用 CRC16 计算，不访问 Redis。通过 hash tag 决定哪些 key 落在同一个 slot：
+ * {@link #NONE} 不加 tag；{@link #perKey()} 把业务 key 整体作为 tag，同一个 key 派生出的窗口、fence 等 key 在同一个 slot；
+ * {@link #fixed(String)} 所有 key 使用同一个 tag，可以在一个脚本里原子地操作多个 key，代价是全部落在一个节点上。
+ * 已经带有 hash tag 的 key 不会被改写；key 中有 '{' '}' 但不构成 hash tag 时，{@link #perKey()} 用去掉括号后的 key 作为 tag
+ *
+ * @author Master.C
+ */
+public final class KeyRouter {
+
+    /**
+     * key 不变
+     */
+    public static final KeyRouter NONE = new KeyRouter(null, false);
+
+    private static final KeyRouter PER_KEY = new KeyRouter(null, true);
+
+    private final String tag;
+
+    private final boolean perKey;
+
+    private KeyRouter(String tag, boolean perKey) {
+        this.tag = tag;
+        this.perKey = perKey;
+    }
+
+    /**
+     * key 整体作为 hash tag，key 变为 {key}；key 中有括号时变为 {去掉括号的 key}key
+     *
+     * @return
+     */
+    public static KeyRouter perKey() {
+        return PER_KEY;
+    }
+
+    /**
+     * 所有 key 使用同一个 hash tag，key 变为 {tag}key
+     *
+     * @param tag
+     * @return
+     */
+    public static KeyRouter fixed(String tag) {
+        if (tag == null || tag.isEmpty() || tag.indexOf('{') >= 0 || tag.indexOf('}') >= 0) {
+            throw new IllegalArgumentException("tag cannot be empty or contain '{' '}'");
+        }
+        return new KeyRouter(tag, false);
+    }
+
+    /**
+     * @param key
+     * @return the key to send to redis
+     */
+    public String route(String key) {
+        if (tag == null && !perKey) {
+            return key;
+        }
+        if (hasHashTag(key)) {
+            return key;
+        }
+        return perKey ? tagged(key) : "{" + tag + "}" + key;
+    }
+
+    /**
+     * 由一个已经路由过的 key 派生出的 key（fence 计数、读写锁的各个 key 等），集群模式下与它在同一个 slot。
+     * 不改写配置的路由：带 hash tag 的 key 和非集群模式下只追加后缀；集群模式下没有 tag 的 key 整体作为 tag，
+     * {key} 与 key 的 slot 相同
+     *
+     * @param key     routed key
+     * @param suffix
+     * @param cluster
+     * @return key:suffix
+     */
+    public static String derive(String key, String suffix, boolean cluster) {
+        if (!cluster || hasHashTag(key)) {
+            return key + ":" + suffix;
+        }
+        if (key.indexOf('{') >= 0 || key.indexOf('}') >= 0) {
+            throw new IllegalArgumentException("key with '{' or '}' needs a hash tag in cluster mode, "
+                    + "use KeyRouter.perKey() or KeyRouter.fixed(String): " + key);
+        }
+        return "{" + key + "}:" + suffix;
+    }
+
+    private static String tagged(String key) {
+        if (key.indexOf('{') < 0 && key.indexOf('}') < 0) {
+            return "{" + key + "}";
+        }
+        String tag = key.replace("{", "").replace("}", "");
+        return "{" + (tag.isEmpty() ? "_" : tag) + "}" + key;
+    }
+
+    /**
+     * @param key
+     * @return true when redis only hashes part of the key
+     */
+    public static boolean hasHashTag(String key) {
+        int open = key.indexOf('{');
+        int close = open < 0 ? -1 : key.indexOf('}', open + 1);
+        return close > open + 1;
+    }
+
+    /**
+     * @param key
+     * @return cluster slot of the key, hash tag aware
+     */
+    public static int slot(String key) {
+        return JedisClusterCRC16.getSlot(key);
+    }
+
+    /**
+     * group keys by slot, in order of first appearance. all keys are in slot 0 when not cluster
+     *
+     * @param keys
+     * @param cluster
+     * @return slot -> keys
+     */
+    public static Map<Integer, List<String>> groupBySlot(Collection<String> keys, boolean cluster) {
+        Map<Integer, List<String>> slots = new LinkedHashMap<>();
+        for (String key : keys) {
+            slots.computeIfAbsent(cluster ? slot(key) : 0, s -> new ArrayList<>()).add(key);
+        }
+        return slots;
+    }
+}
@@ -0,0 +1,62 @@
+package top.masterc.util;
+
+import com.google.common.io.BaseEncoding;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * lua 脚本及其 SHA1，SHA1 在加载时计算一次，调用时只发送 SHA1
+ *
+ * @author Master.C
+ */
+public class RedisScript {
+
+    private final String path;
+
+    private final String script;
+
+    private final String sha1;
+
+    public RedisScript(String path, String script) {
+        if (script == null) {
+            throw new IllegalArgumentException("script not found: " + path);
+        }
+        this.path = path;
+        this.script = script;
+        this.sha1 = sha1(script);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * 与 Redis SCRIPT LOAD 返回值一致的小写十六进制 SHA1
+     *
+     * @param script
+     * @return
+     */
+    private static String sha1(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return BaseEncoding.base16().lowerCase().encode(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not supported", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path + "(" + sha1 + ")";
+    }
+}
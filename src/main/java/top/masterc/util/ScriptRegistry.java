@@ -0,0 +1,184 @@
+package top.masterc.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.executor.ScriptCall;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * lua 脚本注册表
+ * <p>
+ * 脚本通过 {@link ScriptUtil#getScript(String)} 读取并预先计算 SHA1，第一次调用时在所有节点上 SCRIPT LOAD，
+ * 之后只通过 EVALSHA 调用；节点返回 NOSCRIPT（重启、SCRIPT FLUSH、故障转移）时退回 EVAL，EVAL 同时会把脚本重新缓存到该节点
+ *
+ * @author Master.C
+ */
+public class ScriptRegistry {
+
+    private static Logger logger = LoggerFactory.getLogger(ScriptRegistry.class);
+
+    private final Map<String, RedisScript> scripts = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean loaded = new AtomicBoolean(false);
+
+    /**
+     * 注册脚本
+     *
+     * @param path classpath 下的脚本路径
+     * @return
+     */
+    public RedisScript register(String path) {
+        return scripts.computeIfAbsent(path, p -> new RedisScript(p, ScriptUtil.getScript(p)));
+    }
+
+    public RedisScript getScript(String path) {
+        return scripts.get(path);
+    }
+
+    /**
+     * 在所有节点上 SCRIPT LOAD 已注册的脚本，集群模式下包括每一个主节点
+     *
+     * @param connection Jedis 或 JedisCluster
+     */
+    public void preload(Object connection) {
+        for (RedisScript script : scripts.values()) {
+            load(connection, script);
+        }
+    }
+
+    /**
+     * 在所有节点上 SCRIPT LOAD 一个脚本，集群模式下单个节点失败不影响其他节点
+     *
+     * @param connection Jedis 或 JedisCluster
+     * @param script
+     */
+    public static void load(Object connection, RedisScript script) {
+        if (connection instanceof Jedis) {
+            ((Jedis) connection).scriptLoad(script.getScript());
+        } else if (connection instanceof JedisCluster) {
+            Map<String, JedisPool> nodes = ((JedisCluster) connection).getClusterNodes();
+            for (Map.Entry<String, JedisPool> node : nodes.entrySet()) {
+                Jedis jedis = null;
+                try {
+                    jedis = node.getValue().getResource();
+                    jedis.scriptLoad(script.getScript());
+                } catch (Exception e) {
+                    logger.warn("script load failed on node {}", node.getKey(), e);
+                } finally {
+                    if (jedis != null) {
+                        jedis.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 通过 EVALSHA 执行脚本，NOSCRIPT 时退回 EVAL
+     *
+     * @param connection Jedis 或 JedisCluster
+     * @param script
+     * @param keys
+     * @param args
+     * @return
+     */
+    public Object eval(Object connection, RedisScript script, List<String> keys, List<String> args) {
+        preloadOnce(connection);
+        return evalsha(connection, script, keys, args);
+    }
+
+    /**
+     * 通过执行器执行脚本，第一次调用时先在所有节点上预加载已注册的脚本
+     *
+     * @param executor
+     * @param script
+     * @param keys
+     * @param args
+     * @return
+     */
+    public Object eval(RedisCommandExecutor executor, RedisScript script, List<String> keys, List<String> args) {
+        preloadOnce(executor);
+        return executor.eval(script, keys, args);
+    }
+
+    /**
+     * 通过执行器流水线执行多个脚本，任何一个调用返回错误时抛出第一个错误
+     *
+     * @param executor
+     * @param calls
+     * @return 按调用顺序的结果
+     */
+    public List<Object> evalPipelined(RedisCommandExecutor executor, List<ScriptCall> calls) {
+        preloadOnce(executor);
+        List<Object> results = executor.evalPipelined(calls);
+        for (Object result : results) {
+            if (result instanceof RuntimeException) {
+                throw (RuntimeException) result;
+            }
+        }
+        return results;
+    }
+
+    private void preloadOnce(RedisCommandExecutor executor) {
+        if (loaded.get() || !loaded.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (RedisScript registered : scripts.values()) {
+                executor.scriptLoad(registered);
+            }
+        } catch (Exception e) {
+            logger.warn("script preload failed", e);
+        }
+    }
+
+    /**
+     * EVALSHA，NOSCRIPT（重启、SCRIPT FLUSH、故障转移）时退回 EVAL
+     *
+     * @param connection Jedis 或 JedisCluster
+     * @param script
+     * @param keys
+     * @param args
+     * @return
+     */
+    public static Object evalsha(Object connection, RedisScript script, List<String> keys, List<String> args) {
+        if (connection instanceof Jedis) {
+            Jedis jedis = (Jedis) connection;
+            try {
+                return jedis.evalsha(script.getSha1(), keys, args);
+            } catch (JedisNoScriptException e) {
+                logger.debug("NOSCRIPT {}, fall back to EVAL", script);
+                return jedis.eval(script.getScript(), keys, args);
+            }
+        } else {
+            JedisCluster jedisCluster = (JedisCluster) connection;
+            try {
+                return jedisCluster.evalsha(script.getSha1(), keys, args);
+            } catch (JedisNoScriptException e) {
+                logger.debug("NOSCRIPT {}, fall back to EVAL", script);
+                return jedisCluster.eval(script.getScript(), keys, args);
+            }
+        }
+    }
+
+    private void preloadOnce(Object connection) {
+        if (loaded.get() || !loaded.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            preload(connection);
+        } catch (Exception e) {
+            //EVALSHA 会在 NOSCRIPT 时自行恢复，预加载失败不影响调用
+            logger.warn("script preload failed", e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+-- 加锁并返回 fencing token，加锁和递增在同一个脚本中原子执行
+-- KEYS[1] 锁，KEYS[2] 该锁的 fencing 计数器（不过期，保证 token 单调递增）
+-- ARGV[1] value，ARGV[2] 过期时间 毫秒
+-- 返回 token，锁已被持有返回 0
+if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then
+    return redis.call('incr', KEYS[2])
+end
+return 0
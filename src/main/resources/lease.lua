@@ -0,0 +1,40 @@
+--
+-- Created by IntelliJ IDEA.
+-- User: Master.C
+--
+-- 从当前窗口批量租借限流许可，本地用完后再来租借
+-- 限流 key 前缀，与 limit.lua 相同
+local base = KEYS[1]
+-- 限流大小
+local limit = tonumber(ARGV[1])
+-- 单次最多租借的许可数
+local batch = tonumber(ARGV[2])
+-- 单次最多租借剩余许可的比例，窗口越满租得越少，窗口结束时各实例未用完的许可也就越少
+local tolerance = tonumber(ARGV[3])
+-- 窗口大小 毫秒
+local window = tonumber(ARGV[4])
+
+-- 用 Redis 的时间计算窗口，所有实例对窗口的划分一致；TIME 是非确定命令，按效果复制
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local index = math.floor(now / window)
+local key = base .. ':' .. index
+
+-- 获取当前流量大小
+local curentLimit = tonumber(redis.call('get', key) or "0")
+local remaining = limit - curentLimit
+
+-- 窗口剩余毫秒数，本地租借在这之后失效，不依赖本机时钟
+local ttl = window - now % window
+
+if remaining <= 0 then
+    -- 达到限流大小 返回
+    return { 0, index, ttl };
+end
+
+local grant = math.min(batch, math.max(1, math.floor(remaining * tolerance)))
+redis.call("INCRBY", key, grant)
+redis.call("PEXPIRE", key, window * 2)
+-- 租到的许可数、窗口编号（归还时用）和窗口剩余毫秒数
+return { grant, index, ttl }
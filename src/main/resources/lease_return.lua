@@ -0,0 +1,14 @@
+--
+-- Created by IntelliJ IDEA.
+-- User: Master.C
+--
+-- 窗口结束时归还本地未用完的许可，key 已过期则不再处理，避免留下没有过期时间的负数 key
+-- 限流 key 前缀，计数 key 为 前缀:租借时的窗口编号
+local key = KEYS[1] .. ':' .. ARGV[2]
+local permits = tonumber(ARGV[1])
+
+if redis.call('exists', key) == 1 then
+    return redis.call("DECRBY", key, permits)
+else
+    return 0
+end
@@ -3,21 +3,30 @@
 -- User: Master.C
 --
 --lua 下标从 1 开始
--- 限流 key
-local key = KEYS[1]
+-- 限流 key 前缀，计数 key 为 前缀:窗口编号，集群模式下前缀带 hash tag，与计数 key 在同一个 slot
+local base = KEYS[1]
 -- 限流大小
 local limit = tonumber(ARGV[1])
+-- 本次请求占用的许可数
+local permits = tonumber(ARGV[2] or "1")
+-- 窗口大小 毫秒
+local window = tonumber(ARGV[3] or "1000")
+
+-- 用 Redis 的时间计算窗口，所有实例对窗口的划分一致；TIME 是非确定命令，按效果复制
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local key = base .. ':' .. math.floor(now / window)
 
 -- 获取当前流量大小
 local curentLimit = tonumber(redis.call('get', key) or "0")
 
-if curentLimit + 1 > limit then
-    -- 达到限流大小 返回
-    return 0;
+if curentLimit + permits > limit then
+    -- 达到限流大小 返回 -等待时间，下一个窗口才有许可
+    return -(window - now % window);
 else
-    -- 没有达到阈值 value + 1
-    redis.call("INCRBY", key, 1)
-    redis.call("EXPIRE", key, 2)
-    return curentLimit + 1
+    -- 没有达到阈值 value + permits
+    redis.call("INCRBY", key, permits)
+    redis.call("PEXPIRE", key, window * 2)
+    return curentLimit + permits
 end
-
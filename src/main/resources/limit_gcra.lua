@@ -0,0 +1,37 @@
+--
+-- Created by IntelliJ IDEA.
+-- User: Master.C
+--
+-- GCRA 限流，key 中只保存理论到达时间(TAT)，每个 key 占用固定内存
+-- 限流 key
+local key = KEYS[1]
+-- 限流大小
+local limit = tonumber(ARGV[1])
+-- 窗口大小 毫秒
+local window = tonumber(ARGV[2])
+-- 本次请求占用的许可数
+local permits = tonumber(ARGV[3] or "1")
+
+-- 用 Redis 的时间计算窗口，所有实例对窗口的划分一致；TIME 是非确定命令，按效果复制
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+-- 两个请求之间的理论间隔
+local interval = window / limit
+
+local tat = tonumber(redis.call('get', key) or now)
+if tat < now then
+    tat = now
+end
+
+local newTat = tat + interval * permits
+-- 允许在一个窗口内突发 limit 个请求
+if newTat - now > window then
+    -- 达到限流大小 返回 -等待时间
+    return -math.max(1, math.ceil(newTat - now - window));
+end
+
+redis.call('SET', key, newTat, 'PX', math.ceil(newTat - now))
+-- 窗口内剩余可突发的请求数 + 1，始终大于 0
+return math.floor((window - (newTat - now)) / interval) + 1
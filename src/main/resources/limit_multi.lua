@@ -0,0 +1,29 @@
+--
+-- Created by IntelliJ IDEA.
+-- User: Master.C
+--
+-- 多规则固定窗口限流，所有规则都通过才给每个计数 + 1，任一规则拒绝时不修改任何计数
+-- KEYS[i] 第 i 条规则的计数 key 前缀，计数 key 为 前缀:窗口编号
+-- ARGV[2i-1] 第 i 条规则的限流大小，ARGV[2i] 窗口大小 毫秒
+-- 用 Redis 的时间计算窗口，所有实例对窗口的划分一致；TIME 是非确定命令，按效果复制
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local counters = {}
+for i = 1, #KEYS do
+    local limit = tonumber(ARGV[2 * i - 1])
+    local window = tonumber(ARGV[2 * i])
+    counters[i] = KEYS[i] .. ':' .. math.floor(now / window)
+    local curentLimit = tonumber(redis.call('get', counters[i]) or "0")
+    if curentLimit + 1 > limit then
+        -- 返回拒绝的规则下标
+        return -i
+    end
+end
+
+for i = 1, #KEYS do
+    redis.call("INCRBY", counters[i], 1)
+    redis.call("PEXPIRE", counters[i], ARGV[2 * i])
+end
+return 1
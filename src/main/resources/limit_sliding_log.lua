@@ -0,0 +1,41 @@
+--
+-- Created by IntelliJ IDEA.
+-- User: Master.C
+--
+-- 滑动日志限流，sorted set 中保存窗口内每个请求的时间
+-- 限流 key
+local key = KEYS[1]
+-- 限流大小
+local limit = tonumber(ARGV[1])
+-- 窗口大小 毫秒
+local window = tonumber(ARGV[2])
+-- 本次请求在 sorted set 中的 member，调用方保证唯一
+local member = ARGV[3]
+-- 本次请求占用的许可数，每个许可一个 member
+local permits = tonumber(ARGV[4] or "1")
+
+-- 用 Redis 的时间计算窗口，所有实例对窗口的划分一致；TIME 是非确定命令，按效果复制
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+-- 清除窗口外的请求
+redis.call('ZREMRANGEBYSCORE', key, 0, now - window)
+
+local curentLimit = redis.call('ZCARD', key)
+
+if curentLimit + permits > limit then
+    -- 达到限流大小 返回 -等待时间，等最早的若干个请求滑出窗口
+    local oldest = redis.call('ZRANGE', key, curentLimit + permits - limit - 1, curentLimit + permits - limit - 1, 'WITHSCORES')
+    return -math.max(1, tonumber(oldest[2]) + window - now);
+else
+    if permits == 1 then
+        redis.call('ZADD', key, now, member)
+    else
+        for i = 1, permits do
+            redis.call('ZADD', key, now, member .. ':' .. i)
+        end
+    end
+    redis.call('PEXPIRE', key, window)
+    return curentLimit + permits
+end
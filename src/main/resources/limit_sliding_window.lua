@@ -0,0 +1,44 @@
+--
+-- Created by IntelliJ IDEA.
+-- User: Master.C
+--
+-- 滑动窗口计数限流，按上一个窗口未滑出部分的比例加权估算当前流量
+-- 限流 key 前缀，两个窗口的计数 key 为 前缀:窗口编号，集群模式下前缀带 hash tag，两个计数 key 在同一个 slot
+local base = KEYS[1]
+-- 限流大小
+local limit = tonumber(ARGV[1])
+-- 窗口大小 毫秒
+local window = tonumber(ARGV[2])
+-- 本次请求占用的许可数
+local permits = tonumber(ARGV[3] or "1")
+
+-- 用 Redis 的时间计算窗口，所有实例对窗口的划分一致；TIME 是非确定命令，按效果复制
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local index = math.floor(now / window)
+local current = base .. ':' .. index
+local previous = base .. ':' .. (index - 1)
+
+local previousLimit = tonumber(redis.call('get', previous) or "0")
+local curentLimit = tonumber(redis.call('get', current) or "0")
+local elapsed = now % window
+local estimated = math.floor(previousLimit * (window - elapsed) / window) + curentLimit
+
+if estimated + permits > limit then
+    -- 达到限流大小 返回 -等待时间
+    local delay
+    if curentLimit + permits <= limit then
+        -- 当前窗口内等上一个窗口的权重降下来
+        delay = window - elapsed - (limit - permits - curentLimit) * window / previousLimit
+    else
+        -- 下一个窗口里当前窗口成为上一个窗口，等它的权重降下来
+        delay = window - elapsed + math.max(0, window - (limit - permits) * window / curentLimit)
+    end
+    return -math.max(1, math.ceil(delay));
+else
+    redis.call("INCRBY", current, permits)
+    -- 下一个窗口还要用它做加权
+    redis.call("PEXPIRE", current, window * 2)
+    return estimated + permits
+end
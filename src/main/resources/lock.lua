@@ -1,5 +1,11 @@
+-- 释放锁，value 与加锁时一致才删除
+-- ARGV[2] 为释放通知频道前缀，传入时向 前缀 + key 频道发布释放消息，唤醒其他实例上的等待者
 if redis.call('get', KEYS[1]) == ARGV[1] then
-    return redis.call('del', KEYS[1])
+    local result = redis.call('del', KEYS[1])
+    if ARGV[2] then
+        redis.call('publish', ARGV[2] .. KEYS[1], ARGV[1])
+    end
+    return result
 else
     return 0
-end
\ No newline at end of file
+end
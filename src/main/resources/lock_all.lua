@@ -0,0 +1,11 @@
+-- 一次性获取多把锁，任何一把已被持有则一把都不加
+-- ARGV[1] value，ARGV[2] 过期时间 毫秒
+for _, key in ipairs(KEYS) do
+    if redis.call('exists', key) == 1 then
+        return 0
+    end
+end
+for _, key in ipairs(KEYS) do
+    redis.call('set', key, ARGV[1], 'PX', ARGV[2])
+end
+return 1
@@ -0,0 +1,37 @@
+-- 读锁，readers hash 的 field 为持有者 value，值为重入次数；每个读者的过期时间单独记在 zset 中，
+-- 崩溃的读者到期后被清理，不会因为其他读者续上了整个 hash 的过期时间而一直阻塞写者
+-- KEYS[1] readers hash，KEYS[2] 写锁，KEYS[3] 等待中的写者，KEYS[4] 读者过期时间 zset
+-- ARGV[1] value，ARGV[2] 过期时间 毫秒，ARGV[3] 为 1 时写者优先
+-- 成功返回 1
+-- 用 Redis 的时间计算过期时间，不受客户端时钟偏差影响；TIME 是非确定命令，按效果复制
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+-- 清理已过期的读者
+for _, reader in ipairs(redis.call('zrangebyscore', KEYS[4], '-inf', now)) do
+    redis.call('hdel', KEYS[1], reader)
+end
+redis.call('zremrangebyscore', KEYS[4], '-inf', now)
+
+local writer = redis.call('get', KEYS[2])
+if writer and writer ~= ARGV[1] then
+    return 0
+end
+-- 写者优先：有写者在等待时新的读者让路，已持有读锁或写锁的重入不受影响
+if ARGV[3] == '1' and not writer and redis.call('exists', KEYS[3]) == 1
+        and redis.call('hexists', KEYS[1], ARGV[1]) == 0 then
+    return 0
+end
+redis.call('hincrby', KEYS[1], ARGV[1], 1)
+-- 重入时保留较晚的过期时间
+local deadline = now + tonumber(ARGV[2])
+local current = redis.call('zscore', KEYS[4], ARGV[1])
+if not current or tonumber(current) < deadline then
+    redis.call('zadd', KEYS[4], deadline, ARGV[1])
+end
+-- 两个 key 随最晚的读者过期，所有读者都崩溃时整体清理
+local last = redis.call('zrange', KEYS[4], -1, -1, 'WITHSCORES')
+local ttl = tonumber(last[2]) - now
+redis.call('pexpire', KEYS[1], ttl)
+redis.call('pexpire', KEYS[4], ttl)
+return 1
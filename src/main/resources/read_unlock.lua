@@ -0,0 +1,12 @@
+-- 释放一次读锁
+-- KEYS[1] readers hash，KEYS[4] 读者过期时间 zset，ARGV[1] value
+-- 返回该持有者剩余的重入次数，未持有返回 -1
+if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then
+    return -1
+end
+local count = redis.call('hincrby', KEYS[1], ARGV[1], -1)
+if count <= 0 then
+    redis.call('hdel', KEYS[1], ARGV[1])
+    redis.call('zrem', KEYS[4], ARGV[1])
+end
+return count
@@ -0,0 +1,9 @@
+-- 可重入加锁，锁为 hash，field 为持有者 value，值为重入次数
+-- ARGV[1] 持有者 value，ARGV[2] 过期时间 毫秒
+if redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1 then
+    redis.call('hincrby', KEYS[1], ARGV[1], 1)
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return 1
+else
+    return 0
+end
@@ -0,0 +1,15 @@
+-- 可重入解锁，重入次数减一，减到 0 时删除锁
+-- ARGV[1] 持有者 value，ARGV[2] 为释放通知频道前缀，与 lock.lua 一致
+-- 返回剩余重入次数，不是持有者时返回 -1
+if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then
+    return -1
+end
+local count = redis.call('hincrby', KEYS[1], ARGV[1], -1)
+if count > 0 then
+    return count
+end
+redis.call('del', KEYS[1])
+if ARGV[2] then
+    redis.call('publish', ARGV[2] .. KEYS[1], ARGV[1])
+end
+return 0
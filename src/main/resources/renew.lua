@@ -0,0 +1,27 @@
+--
+-- Created by IntelliJ IDEA.
+-- User: Master.C
+--
+-- 批量续期本实例持有的锁，value 与加锁时一致才续期
+-- KEYS[i] 锁 key，ARGV[1] 续期时间 毫秒，ARGV[i + 1] KEYS[i] 加锁时的 value
+-- 可重入锁为 hash，持有者 value 为 field
+local ttl = ARGV[1]
+local result = {}
+
+for i, key in ipairs(KEYS) do
+    local held
+    if redis.call('type', key).ok == 'hash' then
+        held = redis.call('hexists', key, ARGV[i + 1]) == 1
+    else
+        held = redis.call('get', key) == ARGV[i + 1]
+    end
+    if held then
+        redis.call('pexpire', key, ttl)
+        result[i] = 1
+    else
+        -- 锁已过期或被其他人持有，停止续期
+        result[i] = 0
+    end
+end
+
+return result
@@ -0,0 +1,25 @@
+-- 获取信号量许可，zset 的 member 为 token:序号，score 为获取时间（Redis 时间，不受客户端时钟偏差影响）；
+-- 每个 token 获取的许可数记在 hash 中，释放和续期按服务端记录的数量处理，不依赖调用方传入
+-- 先清理获取时间早于 now - leaseTime 的许可，持有者崩溃后许可在 leaseTime 后自动回收
+-- KEYS[1] 许可 zset，KEYS[2] token -> 许可数 hash
+-- ARGV[1] 许可总数，ARGV[2] 本次获取数，ARGV[3] leaseTime 毫秒，ARGV[4] token
+-- 成功返回 1
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local expired = now - tonumber(ARGV[3])
+for _, member in ipairs(redis.call('zrangebyscore', KEYS[1], '-inf', expired)) do
+    redis.call('hdel', KEYS[2], string.match(member, '^(.*):%d+$'))
+end
+redis.call('zremrangebyscore', KEYS[1], '-inf', expired)
+local permits = tonumber(ARGV[2])
+if redis.call('zcard', KEYS[1]) + permits > tonumber(ARGV[1]) then
+    return 0
+end
+for i = 1, permits do
+    redis.call('zadd', KEYS[1], now, ARGV[4] .. ':' .. i)
+end
+redis.call('hset', KEYS[2], ARGV[4], permits)
+redis.call('pexpire', KEYS[1], ARGV[3])
+redis.call('pexpire', KEYS[2], ARGV[3])
+return 1
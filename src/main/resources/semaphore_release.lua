@@ -0,0 +1,16 @@
+-- 释放 token 获取的全部许可，许可数取自获取时记录的数量
+-- KEYS[1] 许可 zset，KEYS[2] token -> 许可数 hash，ARGV[1] token
+-- 全部许可仍被持有时返回 1；已过期被回收或 token 不存在返回 0，仍持有的许可同样被释放
+local count = tonumber(redis.call('hget', KEYS[2], ARGV[1]))
+if not count then
+    return 0
+end
+local released = 0
+for i = 1, count do
+    released = released + redis.call('zrem', KEYS[1], ARGV[1] .. ':' .. i)
+end
+redis.call('hdel', KEYS[2], ARGV[1])
+if released == count then
+    return 1
+end
+return 0
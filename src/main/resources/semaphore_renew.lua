@@ -0,0 +1,27 @@
+-- 续期 token 获取的全部许可，把仍持有的许可的获取时间更新为当前时间，许可数取自获取时记录的数量
+-- KEYS[1] 许可 zset，KEYS[2] token -> 许可数 hash，ARGV[1] token，ARGV[2] leaseTime 毫秒
+-- 全部许可都续期时返回 1，已过期被回收的许可不会续期
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local count = tonumber(redis.call('hget', KEYS[2], ARGV[1]))
+if not count then
+    return 0
+end
+local renewed = 0
+for i = 1, count do
+    local member = ARGV[1] .. ':' .. i
+    local score = redis.call('zscore', KEYS[1], member)
+    if score and tonumber(score) > now - tonumber(ARGV[2]) then
+        redis.call('zadd', KEYS[1], now, member)
+        renewed = renewed + 1
+    end
+end
+if renewed > 0 then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    redis.call('pexpire', KEYS[2], ARGV[2])
+end
+if renewed == count then
+    return 1
+end
+return 0
@@ -0,0 +1,13 @@
+-- 释放多把锁，value 与加锁时一致才删除，返回删除的数量
+-- ARGV[2] 为释放通知频道前缀，与 lock.lua 一致
+local count = 0
+for _, key in ipairs(KEYS) do
+    if redis.call('get', key) == ARGV[1] then
+        redis.call('del', key)
+        count = count + 1
+        if ARGV[2] then
+            redis.call('publish', ARGV[2] .. key, ARGV[1])
+        end
+    end
+end
+return count
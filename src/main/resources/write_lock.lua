@@ -0,0 +1,28 @@
+-- 写锁，没有写者且没有其他读者时加锁，唯一的读者是自己时可以升级
+-- KEYS[1] readers hash，KEYS[2] 写锁，KEYS[3] 等待中的写者，KEYS[4] 读者过期时间 zset
+-- ARGV[1] value，ARGV[2] 过期时间 毫秒，ARGV[3] 加锁失败时登记等待的时间 毫秒，0 表示不登记
+-- 成功返回 1
+-- 用 Redis 的时间判断读者是否过期；TIME 是非确定命令，按效果复制
+redis.replicate_commands()
+if redis.call('exists', KEYS[2]) == 0 then
+    -- 先清理已过期的读者，崩溃的读者不会让写者一直等待，与 read_lock.lua 一致
+    local time = redis.call('time')
+    local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+    for _, reader in ipairs(redis.call('zrangebyscore', KEYS[4], '-inf', now)) do
+        redis.call('hdel', KEYS[1], reader)
+    end
+    redis.call('zremrangebyscore', KEYS[4], '-inf', now)
+
+    local readers = redis.call('hlen', KEYS[1])
+    if readers == 0 or (readers == 1 and redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+        redis.call('set', KEYS[2], ARGV[1], 'PX', ARGV[2])
+        if redis.call('get', KEYS[3]) == ARGV[1] then
+            redis.call('del', KEYS[3])
+        end
+        return 1
+    end
+end
+if tonumber(ARGV[3]) > 0 then
+    redis.call('set', KEYS[3], ARGV[1], 'PX', ARGV[3])
+end
+return 0
@@ -0,0 +1,280 @@
+package top.masterc.executor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
+import top.masterc.util.RedisScript;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class BatchingCommandExecutorTest {
+
+    private static final RedisScript SCRIPT = new RedisScript("limit.lua", "return 1");
+
+    @Mock
+    private RedisCommandExecutor delegate;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void singleCallNotPipelined() {
+        Mockito.when(delegate.eval(SCRIPT, Collections.singletonList("k"), Collections.singletonList("1"))).thenReturn(1L);
+
+        BatchingCommandExecutor executor = new BatchingCommandExecutor(delegate);
+
+        Assert.assertEquals(1L, executor.eval(SCRIPT, Collections.singletonList("k"), Collections.singletonList("1")));
+        Mockito.verify(delegate, Mockito.never()).evalPipelined(Mockito.anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void concurrentCallsBatched() throws Exception {
+        CountDownLatch firstSent = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        //第一个调用在途时其余调用排队，之后作为一批发送
+        Mockito.when(delegate.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        firstSent.countDown();
+                        release.await();
+                        return Long.valueOf((String) ((List<String>) invocation.getArguments()[2]).get(0));
+                    }
+                });
+        Mockito.when(delegate.evalPipelined(Mockito.anyList())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                List<Object> results = new ArrayList<>();
+                for (ScriptCall call : (List<ScriptCall>) invocation.getArguments()[0]) {
+                    results.add(Long.valueOf(call.getArgs().get(0)));
+                }
+                return results;
+            }
+        });
+
+        BatchingCommandExecutor executor = new BatchingCommandExecutor(delegate, 64, 0, 1);
+        ExecutorService pool = Executors.newFixedThreadPool(9);
+        List<Future<Object>> results = new ArrayList<>();
+        results.add(pool.submit(() -> executor.eval(SCRIPT, Collections.singletonList("k0"), Collections.singletonList("0"))));
+        firstSent.await();
+        for (int i = 1; i < 9; i++) {
+            String arg = String.valueOf(i);
+            results.add(pool.submit(() -> executor.eval(SCRIPT, Collections.singletonList("k" + arg), Collections.singletonList(arg))));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (int i = 0; i < 9; i++) {
+            Assert.assertEquals((long) i, results.get(i).get());
+        }
+        pool.shutdown();
+        Mockito.verify(delegate, Mockito.times(1)).evalPipelined(Mockito.anyList());
+    }
+
+    @Test
+    public void nestedRepliesDecodedLikeEval() throws Exception {
+        JedisPool jedisPool = Mockito.mock(JedisPool.class);
+        Jedis jedis = Mockito.mock(Jedis.class);
+        Pipeline pipeline = Mockito.mock(Pipeline.class);
+        Mockito.when(jedisPool.getResource()).thenReturn(jedis);
+        Mockito.when(jedis.pipelined()).thenReturn(pipeline);
+        CountDownLatch firstSent = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        //单独调用时 Jedis 已经把表中的二进制回复转为 String
+        List<Object> expected = Arrays.asList(1L, "5", Arrays.asList("lease", 20L));
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyListOf(String.class), Mockito.anyListOf(String.class)))
+                .thenAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        firstSent.countDown();
+                        release.await();
+                        return expected;
+                    }
+                });
+        //流水线返回原始回复，表中是 byte[]
+        List<Object> raw = Arrays.asList(1L, "5".getBytes(), Arrays.asList("lease".getBytes(), 20L));
+        Mockito.when(pipeline.syncAndReturnAll()).thenReturn(Arrays.asList((Object) raw, raw));
+
+        BatchingCommandExecutor executor = new BatchingCommandExecutor(new JedisPoolCommandExecutor(jedisPool), 64, 0, 1);
+        RedisScript script = new RedisScript("lease.lua", "return {1, '5', {'lease', 20}}");
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        List<Future<Object>> results = new ArrayList<>();
+        results.add(pool.submit(() -> executor.eval(script, Collections.singletonList("k0"), Collections.singletonList("0"))));
+        firstSent.await();
+        results.add(pool.submit(() -> executor.eval(script, Collections.singletonList("k1"), Collections.singletonList("1"))));
+        results.add(pool.submit(() -> executor.eval(script, Collections.singletonList("k2"), Collections.singletonList("2"))));
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<Object> result : results) {
+            Assert.assertEquals(expected, result.get());
+        }
+        pool.shutdown();
+        Mockito.verify(pipeline).syncAndReturnAll();
+    }
+
+    @Test
+    public void errorPropagated() {
+        Mockito.when(delegate.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenThrow(new IllegalStateException("connection lost"));
+
+        BatchingCommandExecutor executor = new BatchingCommandExecutor(delegate);
+        try {
+            executor.eval(SCRIPT, Collections.singletonList("k"), Collections.singletonList("1"));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("connection lost", e.getMessage());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void waitersBlockWhileBatchInFlight() throws Exception {
+        CountDownLatch singlesSent = new CountDownLatch(2);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch releaseSecond = new CountDownLatch(1);
+        CountDownLatch batchSent = new CountDownLatch(1);
+        CountDownLatch releaseBatch = new CountDownLatch(1);
+        Mockito.when(delegate.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        singlesSent.countDown();
+                        if ("0".equals(((List<String>) invocation.getArguments()[2]).get(0))) {
+                            releaseFirst.await();
+                        } else {
+                            releaseSecond.await();
+                        }
+                        return 1L;
+                    }
+                });
+        Mockito.when(delegate.evalPipelined(Mockito.anyList())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                batchSent.countDown();
+                releaseBatch.await();
+                return Collections.nCopies(((List<ScriptCall>) invocation.getArguments()[0]).size(), 1L);
+            }
+        });
+
+        BatchingCommandExecutor executor = new BatchingCommandExecutor(delegate, 64, 0, 2);
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(10, r -> {
+            Thread thread = new Thread(r);
+            threads.add(thread);
+            return thread;
+        });
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String arg = String.valueOf(i);
+            results.add(pool.submit(() -> executor.eval(SCRIPT, Collections.singletonList("k" + arg), Collections.singletonList(arg))));
+            if (i == 0) {
+                //两个单独发送的调用占满发送权，其余调用排队
+                Thread.sleep(50);
+            } else if (i == 1) {
+                Assert.assertTrue(singlesSent.await(5, TimeUnit.SECONDS));
+            }
+        }
+        Thread.sleep(100);
+        //排队的调用作为一批发出，之后空出一个发送权，已经被取走的调用不能反复抢这个发送权
+        releaseFirst.countDown();
+        Assert.assertTrue(batchSent.await(5, TimeUnit.SECONDS));
+        releaseSecond.countDown();
+        Thread.sleep(50);
+
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        long before = 0;
+        for (Thread thread : threads) {
+            before += mxBean.getThreadCpuTime(thread.getId());
+        }
+        Thread.sleep(200);
+        long after = 0;
+        for (Thread thread : threads) {
+            after += mxBean.getThreadCpuTime(thread.getId());
+        }
+        releaseBatch.countDown();
+
+        for (Future<Object> result : results) {
+            Assert.assertEquals(1L, result.get());
+        }
+        pool.shutdown();
+        Mockito.verify(delegate, Mockito.times(2)).eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList());
+        Mockito.verify(delegate, Mockito.times(1)).evalPipelined(Mockito.anyList());
+        Assert.assertTrue("waiters spun for " + (after - before) + "ns", after - before < TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void scriptErrorFailsOnlyItsCall() throws Exception {
+        CountDownLatch firstSent = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(delegate.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        firstSent.countDown();
+                        release.await();
+                        return 0L;
+                    }
+                });
+        Mockito.when(delegate.evalPipelined(Mockito.anyList())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                List<Object> results = new ArrayList<>();
+                for (ScriptCall call : (List<ScriptCall>) invocation.getArguments()[0]) {
+                    if ("1".equals(call.getArgs().get(0))) {
+                        results.add(new JedisDataException("WRONGTYPE Operation against a key holding the wrong kind of value"));
+                    } else {
+                        results.add(Long.valueOf(call.getArgs().get(0)));
+                    }
+                }
+                return results;
+            }
+        });
+
+        BatchingCommandExecutor executor = new BatchingCommandExecutor(delegate, 64, 0, 1);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        Future<Object> first = pool.submit(() -> executor.eval(SCRIPT, Collections.singletonList("k0"), Collections.singletonList("0")));
+        firstSent.await();
+        List<Future<Object>> batched = Arrays.asList(
+                pool.submit(() -> executor.eval(SCRIPT, Collections.singletonList("k1"), Collections.singletonList("1"))),
+                pool.submit(() -> executor.eval(SCRIPT, Collections.singletonList("k2"), Collections.singletonList("2"))));
+        Thread.sleep(100);
+        release.countDown();
+
+        Assert.assertEquals(0L, first.get());
+        try {
+            batched.get(0).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof JedisDataException);
+        }
+        Assert.assertEquals(2L, batched.get(1).get());
+        pool.shutdown();
+        Mockito.verify(delegate, Mockito.times(1)).evalPipelined(Mockito.anyList());
+    }
+}
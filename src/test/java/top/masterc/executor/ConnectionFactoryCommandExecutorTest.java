@@ -0,0 +1,86 @@
+package top.masterc.executor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import top.masterc.constant.RedisToolsConstant;
+
+public class ConnectionFactoryCommandExecutorTest {
+
+    @Mock
+    private JedisConnectionFactory jedisConnectionFactory;
+
+    @Mock
+    private JedisPool jedisPool;
+
+    @Mock
+    private JedisCluster jedisCluster;
+
+    @Mock
+    private RedisClusterConnection clusterConnection;
+
+    @Mock
+    private Jedis jedis;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void usePooledConnectionOfFactory() {
+        Mockito.when(jedisConnectionFactory.getConnection()).thenAnswer(invocation -> new JedisConnection(jedis, jedisPool, 0));
+        Mockito.when(jedis.set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyInt())).thenReturn("OK");
+
+        RedisCommandExecutor executor = new ConnectionFactoryCommandExecutor(jedisConnectionFactory, RedisToolsConstant.SINGLE);
+        Assert.assertTrue(executor.setIfAbsent("lock_test", "request", 1000));
+        Assert.assertTrue(executor.setIfAbsent("lock_test", "request", 1000));
+
+        Mockito.verify(jedisConnectionFactory, Mockito.times(2)).getConnection();
+        //关闭连接时归还连接池
+        Mockito.verify(jedis, Mockito.times(2)).close();
+    }
+
+    @Test
+    public void useClusterOfFactory() throws Exception {
+        Mockito.when(jedisConnectionFactory.getClusterConnection()).thenReturn(clusterConnection);
+        Mockito.when(clusterConnection.getNativeConnection()).thenReturn(jedisCluster);
+        Mockito.when(jedisCluster.set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyLong())).thenReturn("OK");
+
+        RedisCommandExecutor executor = new ConnectionFactoryCommandExecutor(jedisConnectionFactory, RedisToolsConstant.CLUSTER);
+        Assert.assertTrue(executor.setIfAbsent("lock_test", "request", 1000));
+        Assert.assertTrue(executor.setIfAbsent("lock_test", "request", 1000));
+
+        //只在第一次调用时取出共享的 JedisCluster
+        Mockito.verify(jedisConnectionFactory).getClusterConnection();
+        Mockito.verify(jedisCluster, Mockito.times(2)).set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyLong());
+        //the cluster is shared with the factory and must stay open
+        Mockito.verify(jedisCluster, Mockito.never()).close();
+    }
+
+    @Test
+    public void closeFactoryConnection() {
+        JedisConnection connection = new JedisConnection(jedis);
+        Mockito.when(jedisConnectionFactory.getConnection()).thenReturn(connection);
+        Mockito.when(jedis.set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyInt())).thenReturn(null);
+
+        RedisCommandExecutor executor = new ConnectionFactoryCommandExecutor(jedisConnectionFactory, RedisToolsConstant.SINGLE);
+        Assert.assertFalse(executor.setIfAbsent("lock_test", "request", 1000));
+
+        Mockito.verify(jedisConnectionFactory).getConnection();
+        Assert.assertTrue(connection.isClosed());
+    }
+}
@@ -0,0 +1,102 @@
+package top.masterc.executor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.AdditionalMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+import top.masterc.lock.RedisLocker;
+import top.masterc.util.ScriptRegistry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class JedisClusterCommandExecutorTest {
+
+    @Mock
+    private JedisCluster jedisCluster;
+
+    @Mock
+    private JedisPool master1;
+
+    @Mock
+    private JedisPool master2;
+
+    @Mock
+    private Jedis jedis1;
+
+    @Mock
+    private Jedis jedis2;
+
+    @Mock
+    private Pipeline pipeline1;
+
+    @Mock
+    private Pipeline pipeline2;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+        Map<String, JedisPool> nodes = new LinkedHashMap<>();
+        nodes.put("127.0.0.1:7000", master1);
+        nodes.put("127.0.0.1:7001", master2);
+        Mockito.when(jedisCluster.getClusterNodes()).thenReturn(nodes);
+        Mockito.when(master1.getResource()).thenReturn(jedis1);
+        Mockito.when(master2.getResource()).thenReturn(jedis2);
+        Mockito.when(jedis1.pipelined()).thenReturn(pipeline1);
+        Mockito.when(jedis2.pipelined()).thenReturn(pipeline2);
+        Mockito.when(jedis1.clusterSlots()).thenReturn(Arrays.<Object>asList(
+                Arrays.<Object>asList(0L, 8191L, Arrays.<Object>asList(SafeEncoder.encode("127.0.0.1"), 7000L)),
+                Arrays.<Object>asList(8192L, 16383L, Arrays.<Object>asList(SafeEncoder.encode("127.0.0.1"), 7001L))));
+    }
+
+    @Test
+    public void tryLockAllRollback() {
+        Mockito.when(pipeline1.syncAndReturnAll()).thenReturn(Collections.<Object>singletonList(1L));
+        Mockito.when(pipeline2.syncAndReturnAll()).thenReturn(Collections.<Object>singletonList(0L));
+
+        RedisLocker redisLocker = new RedisLocker.Builder(new JedisClusterCommandExecutor(jedisCluster)).build();
+        boolean lock = redisLocker.tryLockAll(Arrays.asList(key(true), key(false)), "request", 1000);
+
+        Assert.assertFalse(lock);
+        //lock on both nodes, then roll back the node that succeeded
+        String unlockAll = new ScriptRegistry().register("unlock_all.lua").getSha1();
+        Mockito.verify(pipeline1).evalsha(AdditionalMatchers.aryEq(SafeEncoder.encode(unlockAll)),
+                Mockito.anyListOf(byte[].class), Mockito.anyListOf(byte[].class));
+        Mockito.verify(pipeline1, Mockito.times(2)).syncAndReturnAll();
+        Mockito.verify(pipeline2, Mockito.times(1)).syncAndReturnAll();
+        Mockito.verify(jedisCluster, Mockito.never()).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    public void unknownSlotFallBack() {
+        Mockito.when(jedis1.clusterSlots()).thenReturn(Collections.emptyList());
+        Mockito.when(jedisCluster.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        RedisLocker redisLocker = new RedisLocker.Builder(new JedisClusterCommandExecutor(jedisCluster)).build();
+        Assert.assertTrue(redisLocker.tryLockAll(Arrays.asList(key(true), key(false)), "request", 1000));
+
+        Mockito.verify(jedisCluster, Mockito.times(2)).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    /**
+     * @param first true 在 7000 节点上，false 在 7001 节点上
+     */
+    private String key(boolean first) {
+        for (int i = 0; ; i++) {
+            if (JedisClusterCRC16.getSlot("lock_sku_" + i) < 8192 == first) {
+                return "sku_" + i;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package top.masterc.executor;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.output.CommandOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.pubsub.api.async.RedisPubSubAsyncCommands;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import top.masterc.lock.RedisLocker;
+import top.masterc.util.RedisScript;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LettuceCommandExecutorTest {
+
+    private static final RedisScript SCRIPT = new RedisScript("lock.lua", "return 1");
+
+    @Mock
+    private StatefulRedisConnection<String, String> connection;
+
+    @Mock
+    private RedisAsyncCommands<String, String> commands;
+
+    private LettuceCommandExecutor executor;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(connection.async()).thenReturn(commands);
+        Mockito.when(connection.getTimeout()).thenReturn(Duration.ofSeconds(1));
+        executor = new LettuceCommandExecutor(connection);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void evalFallsBackToEval() {
+        Mockito.<RedisFuture<Object>>when(commands.dispatch(Mockito.eq(CommandType.EVALSHA), Mockito.any(CommandOutput.class),
+                Mockito.any(CommandArgs.class))).thenReturn(failed(new RedisNoScriptException("NOSCRIPT No matching script")));
+        Mockito.<RedisFuture<Object>>when(commands.dispatch(Mockito.eq(CommandType.EVAL), Mockito.any(CommandOutput.class),
+                Mockito.any(CommandArgs.class))).thenReturn(completed(1L));
+
+        Assert.assertEquals(1L, executor.eval(SCRIPT, Collections.singletonList("lock_test"), Collections.singletonList("request")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void evalPipelined() {
+        Mockito.<RedisFuture<Object>>when(commands.dispatch(Mockito.eq(CommandType.EVALSHA), Mockito.any(CommandOutput.class),
+                Mockito.any(CommandArgs.class))).thenReturn(completed(1L), completed(0L));
+
+        ScriptCall call = new ScriptCall(SCRIPT, Collections.singletonList("lock_test"), Collections.singletonList("request"));
+        Assert.assertEquals(Arrays.asList(1L, 0L), executor.evalPipelined(Arrays.asList(call, call)));
+        //全部发出后才等待回复
+        Mockito.verify(commands, Mockito.times(2)).dispatch(Mockito.eq(CommandType.EVALSHA),
+                Mockito.any(CommandOutput.class), Mockito.any(CommandArgs.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void subscribe() throws Exception {
+        StatefulRedisPubSubConnection<String, String> pubSubConnection = Mockito.mock(StatefulRedisPubSubConnection.class);
+        RedisPubSubAsyncCommands<String, String> pubSubCommands = Mockito.mock(RedisPubSubAsyncCommands.class);
+        Mockito.when(pubSubConnection.async()).thenReturn(pubSubCommands);
+        Mockito.when(pubSubConnection.isOpen()).thenReturn(true);
+        Mockito.when(pubSubCommands.subscribe(Mockito.<String>anyVararg())).thenReturn((RedisFuture) completed(null));
+        Mockito.when(pubSubCommands.unsubscribe(Mockito.<String>anyVararg())).thenReturn((RedisFuture) completed(null));
+        LettuceCommandExecutor pubSubExecutor = new LettuceCommandExecutor(connection, pubSubConnection);
+
+        AtomicReference<Subscription> subscription = new AtomicReference<>();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        List<String> messages = new CopyOnWriteArrayList<>();
+        Thread thread = new Thread(() -> pubSubExecutor.subscribe(new MessageListener() {
+            @Override
+            public void onSubscribed(Subscription s) {
+                subscription.set(s);
+                subscribed.countDown();
+            }
+
+            @Override
+            public void onMessage(String channel, String message) {
+                messages.add(channel + "=" + message);
+            }
+        }, "idle"));
+        thread.start();
+        Assert.assertTrue(subscribed.await(1, TimeUnit.SECONDS));
+        ArgumentCaptor<RedisPubSubListener> listener = ArgumentCaptor.forClass(RedisPubSubListener.class);
+        Mockito.verify(pubSubConnection).addListener(listener.capture());
+        Mockito.verify(pubSubCommands).subscribe("idle");
+
+        subscription.get().subscribe("released:lock_test");
+        listener.getValue().message("released:lock_test", "request");
+        //订阅连接上其他订阅的频道不投递
+        listener.getValue().message("other", "request");
+        Assert.assertEquals(Collections.singletonList("released:lock_test=request"), messages);
+
+        //全部退订后 subscribe 返回
+        subscription.get().unsubscribe();
+        thread.join(1000);
+        Assert.assertFalse(thread.isAlive());
+        Mockito.verify(pubSubCommands).unsubscribe(Mockito.<String>anyVararg());
+        Mockito.verify(pubSubConnection).removeListener(listener.getValue());
+    }
+
+    @Test
+    public void subscribeWithoutPubSubConnection() {
+        Assert.assertFalse(executor.isSubscribable());
+        try {
+            executor.subscribe(Mockito.mock(MessageListener.class), "channel");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            //expected
+        }
+        try {
+            new RedisLocker.Builder(executor).releaseNotification(true).build();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //释放通知不会在没有订阅连接时退化为轮询
+        }
+    }
+
+    private static RedisFuture<Object> completed(Object value) {
+        Completed future = new Completed();
+        future.complete(value);
+        return future;
+    }
+
+    private static RedisFuture<Object> failed(Exception e) {
+        Completed future = new Completed();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static class Completed extends CompletableFuture<Object> implements RedisFuture<Object> {
+        @Override
+        public String getError() {
+            return null;
+        }
+
+        @Override
+        public boolean await(long timeout, TimeUnit unit) {
+            return isDone();
+        }
+    }
+}
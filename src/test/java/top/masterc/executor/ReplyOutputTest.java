@@ -0,0 +1,41 @@
+package top.masterc.executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ReplyOutputTest {
+
+    @Test
+    public void integer() {
+        ReplyOutput output = new ReplyOutput();
+        output.set(-300L);
+
+        Assert.assertEquals(-300L, output.get());
+    }
+
+    @Test
+    public void nestedArrays() {
+        ReplyOutput output = new ReplyOutput();
+        output.multi(3);
+        output.set(50L);
+        output.multi(2);
+        output.set(ByteBuffer.wrap("a".getBytes(StandardCharsets.UTF_8)));
+        output.set(null);
+        output.multi(0);
+
+        Assert.assertEquals(Arrays.asList(50L, Arrays.asList("a", null), Collections.emptyList()), output.get());
+    }
+
+    @Test
+    public void nil() {
+        ReplyOutput output = new ReplyOutput();
+        output.set(null);
+
+        Assert.assertNull(output.get());
+    }
+}
@@ -0,0 +1,595 @@
+package top.masterc.fake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 进程内的 Redis 替身，只实现锁和限流脚本用到的命令
+ * <p>
+ * 与 Redis 一样串行执行所有命令和脚本（一把全局锁），脚本通过 {@link LuaScripting} 用 LuaJ 执行，
+ * 所以基准测试跑的是真实的 lua 脚本。key 在访问时惰性过期。
+ * <p>
+ * 回复：整数为 Long，bulk string 为 String，nil 为 null，status 为 {@link Status}，multi bulk 为 List，
+ * 错误抛出 {@link FakeRedisException}
+ *
+ * @author Master.C
+ */
+public class FakeRedis {
+
+    private static final Status OK = new Status("OK");
+
+    private static final String WRONGTYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    private final Map<String, Entry> data = new HashMap<>();
+
+    private final LuaScripting scripting = new LuaScripting(this);
+
+    private final List<BiConsumer<String, String>> subscribers = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong commands = new AtomicLong();
+
+    /**
+     * 执行一条命令
+     *
+     * @param args 命令及参数
+     * @return 回复
+     */
+    public synchronized Object execute(String... args) {
+        return call(Arrays.asList(args));
+    }
+
+    /**
+     * 执行一条命令，脚本内的 redis.call 也通过这里，调用方已经持有锁
+     *
+     * @param args 命令及参数
+     * @return 回复
+     */
+    public synchronized Object call(List<String> args) {
+        if (args.isEmpty()) {
+            throw new FakeRedisException("ERR empty command");
+        }
+        commands.incrementAndGet();
+        String command = args.get(0).toUpperCase(Locale.ROOT);
+        switch (command) {
+            case "PING":
+                return new Status("PONG");
+            case "GET":
+                return get(args);
+            case "SET":
+                return set(args);
+            case "DEL":
+                return del(args);
+            case "EXISTS":
+                return exists(args);
+            case "TYPE":
+                return type(args);
+            case "PEXPIRE":
+                return expire(args, 1);
+            case "EXPIRE":
+                return expire(args, 1000);
+            case "PTTL":
+                return pttl(args);
+            case "INCR":
+                return incrBy(args.get(1), 1);
+            case "INCRBY":
+                return incrBy(args.get(1), parseLong(args.get(2)));
+            case "DECRBY":
+                return incrBy(args.get(1), -parseLong(args.get(2)));
+            case "HGET":
+                return hget(args);
+            case "HEXISTS":
+                return hget(args) == null ? 0L : 1L;
+            case "HSET":
+                return hset(args);
+            case "HINCRBY":
+                return hincrBy(args);
+            case "HDEL":
+                return hdel(args);
+            case "HLEN":
+                return (long) hash(args.get(1), false).size();
+            case "ZADD":
+                return zadd(args);
+            case "ZREM":
+                return zrem(args);
+            case "ZCARD":
+                return (long) zset(args.get(1), false).size();
+            case "ZSCORE":
+                return zscore(args);
+            case "ZRANGE":
+                return zrange(args);
+            case "ZRANGEBYSCORE":
+                return zrangeByScore(args);
+            case "ZREMRANGEBYSCORE":
+                return zremRangeByScore(args);
+            case "PUBLISH":
+                return publish(args.get(1), args.get(2));
+            case "TIME":
+                return time();
+            case "DBSIZE":
+                return dbsize();
+            case "FLUSHALL":
+                data.clear();
+                return OK;
+            case "SCRIPT":
+                return script(args);
+            case "EVAL":
+                return scripting.eval(args.get(1), keys(args), argv(args));
+            case "EVALSHA":
+                return scripting.evalsha(args.get(1).toLowerCase(Locale.ROOT), keys(args), argv(args));
+            default:
+                throw new FakeRedisException("ERR unknown command '" + args.get(0) + "'");
+        }
+    }
+
+    /**
+     * 订阅所有频道，消息在 PUBLISH 的线程上回调
+     *
+     * @param subscriber (channel, message)
+     */
+    public void subscribe(BiConsumer<String, String> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(BiConsumer<String, String> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * @return 已执行的命令数，包括脚本中的 redis.call
+     */
+    public long commandsProcessed() {
+        return commands.get();
+    }
+
+    private Object get(List<String> args) {
+        Entry entry = entry(args.get(1));
+        if (entry == null) {
+            return null;
+        }
+        if (!(entry.value instanceof String)) {
+            throw new FakeRedisException(WRONGTYPE);
+        }
+        return entry.value;
+    }
+
+    private Object set(List<String> args) {
+        String key = args.get(1);
+        boolean nx = false;
+        boolean xx = false;
+        long expireAt = 0;
+        for (int i = 3; i < args.size(); i++) {
+            String option = args.get(i).toUpperCase(Locale.ROOT);
+            if ("NX".equals(option)) {
+                nx = true;
+            } else if ("XX".equals(option)) {
+                xx = true;
+            } else if ("PX".equals(option)) {
+                expireAt = now() + parseLong(args.get(++i));
+            } else if ("EX".equals(option)) {
+                expireAt = now() + parseLong(args.get(++i)) * 1000;
+            } else {
+                throw new FakeRedisException("ERR syntax error");
+            }
+        }
+        Entry entry = entry(key);
+        if (nx && entry != null || xx && entry == null) {
+            return null;
+        }
+        data.put(key, new Entry(args.get(2), expireAt));
+        return OK;
+    }
+
+    private Object del(List<String> args) {
+        long count = 0;
+        for (int i = 1; i < args.size(); i++) {
+            if (entry(args.get(i)) != null) {
+                data.remove(args.get(i));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Object exists(List<String> args) {
+        long count = 0;
+        for (int i = 1; i < args.size(); i++) {
+            if (entry(args.get(i)) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Object type(List<String> args) {
+        Entry entry = entry(args.get(1));
+        if (entry == null) {
+            return new Status("none");
+        }
+        if (entry.value instanceof String) {
+            return new Status("string");
+        }
+        return new Status(entry.value instanceof ZSet ? "zset" : "hash");
+    }
+
+    private Object expire(List<String> args, long unit) {
+        Entry entry = entry(args.get(1));
+        if (entry == null) {
+            return 0L;
+        }
+        entry.expireAt = now() + parseLong(args.get(2)) * unit;
+        return 1L;
+    }
+
+    private Object pttl(List<String> args) {
+        Entry entry = entry(args.get(1));
+        if (entry == null) {
+            return -2L;
+        }
+        return entry.expireAt == 0 ? -1L : entry.expireAt - now();
+    }
+
+    private Object incrBy(String key, long increment) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            entry = new Entry("0", 0);
+            data.put(key, entry);
+        }
+        if (!(entry.value instanceof String)) {
+            throw new FakeRedisException(WRONGTYPE);
+        }
+        long value = parseLong((String) entry.value) + increment;
+        entry.value = String.valueOf(value);
+        return value;
+    }
+
+    private Object hget(List<String> args) {
+        return hash(args.get(1), false).get(args.get(2));
+    }
+
+    private Object hset(List<String> args) {
+        Map<String, String> hash = hash(args.get(1), true);
+        long added = 0;
+        for (int i = 2; i + 1 < args.size(); i += 2) {
+            if (hash.put(args.get(i), args.get(i + 1)) == null) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private Object hincrBy(List<String> args) {
+        Map<String, String> hash = hash(args.get(1), true);
+        String current = hash.get(args.get(2));
+        long value = (current == null ? 0 : parseLong(current)) + parseLong(args.get(3));
+        hash.put(args.get(2), String.valueOf(value));
+        return value;
+    }
+
+    private Object hdel(List<String> args) {
+        Map<String, String> hash = hash(args.get(1), false);
+        long count = 0;
+        for (int i = 2; i < args.size(); i++) {
+            if (hash.remove(args.get(i)) != null) {
+                count++;
+            }
+        }
+        removeIfEmpty(args.get(1), hash.isEmpty());
+        return count;
+    }
+
+    private Object zadd(List<String> args) {
+        ZSet zset = zset(args.get(1), true);
+        long added = 0;
+        for (int i = 2; i + 1 < args.size(); i += 2) {
+            if (zset.add(args.get(i + 1), parseDouble(args.get(i)))) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private Object zrem(List<String> args) {
+        ZSet zset = zset(args.get(1), false);
+        long count = 0;
+        for (int i = 2; i < args.size(); i++) {
+            if (zset.remove(args.get(i))) {
+                count++;
+            }
+        }
+        removeIfEmpty(args.get(1), zset.size() == 0);
+        return count;
+    }
+
+    private Object zscore(List<String> args) {
+        Double score = zset(args.get(1), false).score(args.get(2));
+        return score == null ? null : formatDouble(score);
+    }
+
+    /**
+     * ZRANGE key start stop [WITHSCORES]，只支持按下标
+     */
+    private Object zrange(List<String> args) {
+        ZSet zset = zset(args.get(1), false);
+        int size = zset.size();
+        long start = parseLong(args.get(2));
+        long stop = parseLong(args.get(3));
+        start = start < 0 ? Math.max(0, size + start) : start;
+        stop = stop < 0 ? size + stop : Math.min(stop, size - 1);
+        boolean withScores = args.size() > 4 && "WITHSCORES".equalsIgnoreCase(args.get(4));
+        List<Object> reply = new ArrayList<>();
+        int index = 0;
+        for (Map.Entry<Double, TreeSet<String>> entry : zset.ordered.entrySet()) {
+            for (String member : entry.getValue()) {
+                if (index >= start && index <= stop) {
+                    reply.add(member);
+                    if (withScores) {
+                        reply.add(formatDouble(entry.getKey()));
+                    }
+                }
+                index++;
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * ZRANGEBYSCORE key min max，不支持 WITHSCORES 和 LIMIT
+     */
+    private Object zrangeByScore(List<String> args) {
+        return zset(args.get(1), false).rangeByScore(parseScore(args.get(2)), parseScore(args.get(3)));
+    }
+
+    private Object zremRangeByScore(List<String> args) {
+        ZSet zset = zset(args.get(1), false);
+        long count = zset.removeRangeByScore(parseScore(args.get(2)), parseScore(args.get(3)));
+        removeIfEmpty(args.get(1), zset.size() == 0);
+        return count;
+    }
+
+    private Object publish(String channel, String message) {
+        for (BiConsumer<String, String> subscriber : subscribers) {
+            subscriber.accept(channel, message);
+        }
+        return (long) subscribers.size();
+    }
+
+    private Object time() {
+        long micros = System.currentTimeMillis() * 1000 + System.nanoTime() / 1000 % 1000;
+        return Arrays.<Object>asList(String.valueOf(micros / 1000000), String.valueOf(micros % 1000000));
+    }
+
+    private Object dbsize() {
+        long count = 0;
+        long now = now();
+        for (Entry entry : data.values()) {
+            if (!entry.expired(now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Object script(List<String> args) {
+        String sub = args.get(1).toUpperCase(Locale.ROOT);
+        if ("LOAD".equals(sub)) {
+            return scripting.load(args.get(2));
+        }
+        if ("FLUSH".equals(sub)) {
+            scripting.flush();
+            return OK;
+        }
+        throw new FakeRedisException("ERR unknown SCRIPT subcommand '" + args.get(1) + "'");
+    }
+
+    private static List<String> keys(List<String> args) {
+        int numKeys = (int) parseLong(args.get(2));
+        return new ArrayList<>(args.subList(3, 3 + numKeys));
+    }
+
+    private static List<String> argv(List<String> args) {
+        int numKeys = (int) parseLong(args.get(2));
+        return new ArrayList<>(args.subList(3 + numKeys, args.size()));
+    }
+
+    private Entry entry(String key) {
+        Entry entry = data.get(key);
+        if (entry != null && entry.expired(now())) {
+            data.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hash(String key, boolean create) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            if (!create) {
+                return Collections.emptyMap();
+            }
+            entry = new Entry(new HashMap<String, String>(), 0);
+            data.put(key, entry);
+        }
+        if (!(entry.value instanceof HashMap)) {
+            throw new FakeRedisException(WRONGTYPE);
+        }
+        return (Map<String, String>) entry.value;
+    }
+
+    private ZSet zset(String key, boolean create) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            if (!create) {
+                return new ZSet();
+            }
+            entry = new Entry(new ZSet(), 0);
+            data.put(key, entry);
+        }
+        if (!(entry.value instanceof ZSet)) {
+            throw new FakeRedisException(WRONGTYPE);
+        }
+        return (ZSet) entry.value;
+    }
+
+    private void removeIfEmpty(String key, boolean empty) {
+        if (empty) {
+            data.remove(key);
+        }
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new FakeRedisException("ERR value is not an integer or out of range");
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new FakeRedisException("ERR value is not a valid float");
+        }
+    }
+
+    /**
+     * 支持 -inf、+inf 和 ( 开区间前缀
+     */
+    private static double[] parseScore(String value) {
+        boolean exclusive = value.startsWith("(");
+        String number = exclusive ? value.substring(1) : value;
+        double score;
+        if ("-inf".equalsIgnoreCase(number)) {
+            score = Double.NEGATIVE_INFINITY;
+        } else if ("+inf".equalsIgnoreCase(number) || "inf".equalsIgnoreCase(number)) {
+            score = Double.POSITIVE_INFINITY;
+        } else {
+            score = parseDouble(number);
+        }
+        return new double[]{score, exclusive ? 1 : 0};
+    }
+
+    private static String formatDouble(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    /**
+     * status reply，如 OK
+     */
+    public static final class Status {
+        private final String value;
+
+        public Status(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private static final class Entry {
+        private Object value;
+        private long expireAt;
+
+        private Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        private boolean expired(long now) {
+            return expireAt != 0 && expireAt <= now;
+        }
+    }
+
+    /**
+     * sorted set，member -> score，按 score 排序
+     */
+    static final class ZSet {
+        private final Map<String, Double> scores = new HashMap<>();
+        private final TreeMap<Double, TreeSet<String>> ordered = new TreeMap<>();
+
+        boolean add(String member, double score) {
+            Double old = scores.put(member, score);
+            if (old != null) {
+                removeOrdered(member, old);
+            }
+            ordered.computeIfAbsent(score, s -> new TreeSet<>()).add(member);
+            return old == null;
+        }
+
+        boolean remove(String member) {
+            Double old = scores.remove(member);
+            if (old == null) {
+                return false;
+            }
+            removeOrdered(member, old);
+            return true;
+        }
+
+        Double score(String member) {
+            return scores.get(member);
+        }
+
+        int size() {
+            return scores.size();
+        }
+
+        List<Object> rangeByScore(double[] min, double[] max) {
+            List<Object> members = new ArrayList<>();
+            if (min[0] > max[0]) {
+                return members;
+            }
+            for (TreeSet<String> scored : ordered.subMap(min[0], min[1] == 0, max[0], max[1] == 0).values()) {
+                members.addAll(scored);
+            }
+            return members;
+        }
+
+        long removeRangeByScore(double[] min, double[] max) {
+            long count = 0;
+            if (min[0] > max[0]) {
+                return count;
+            }
+            Iterator<Map.Entry<Double, TreeSet<String>>> it =
+                    ordered.subMap(min[0], min[1] == 0, max[0], max[1] == 0).entrySet().iterator();
+            while (it.hasNext()) {
+                for (String member : it.next().getValue()) {
+                    scores.remove(member);
+                    count++;
+                }
+                it.remove();
+            }
+            return count;
+        }
+
+        private void removeOrdered(String member, double score) {
+            TreeSet<String> members = ordered.get(score);
+            members.remove(member);
+            if (members.isEmpty()) {
+                ordered.remove(score);
+            }
+        }
+    }
+}
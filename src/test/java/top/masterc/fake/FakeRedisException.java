@@ -0,0 +1,15 @@
+package top.masterc.fake;
+
+/**
+ * 命令执行错误，消息与 Redis 的错误回复一致，以错误类型开头，如 ERR、WRONGTYPE、NOSCRIPT
+ *
+ * @author Master.C
+ */
+public class FakeRedisException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FakeRedisException(String message) {
+        super(message);
+    }
+}
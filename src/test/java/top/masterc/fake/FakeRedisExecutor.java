@@ -0,0 +1,127 @@
+package top.masterc.fake;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import top.masterc.executor.MessageListener;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.executor.ScriptCall;
+import top.masterc.executor.Subscription;
+import top.masterc.util.RedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BiConsumer;
+
+/**
+ * 直接调用 {@link FakeRedis} 的执行器，没有网络和序列化开销，用于在真实脚本上测试锁和限流的行为，以及离线基准测试它们本身的开销
+ *
+ * @author Master.C
+ */
+public class FakeRedisExecutor implements RedisCommandExecutor {
+
+    private final FakeRedis redis;
+
+    public FakeRedisExecutor(FakeRedis redis) {
+        this.redis = redis;
+    }
+
+    public FakeRedis getRedis() {
+        return redis;
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, int expireTime) {
+        return execute("SET", key, value, "NX", "PX", String.valueOf(expireTime)) != null;
+    }
+
+    @Override
+    public Object eval(RedisScript script, List<String> keys, List<String> args) {
+        try {
+            return execute(command("EVALSHA", script.getSha1(), keys, args));
+        } catch (JedisNoScriptException e) {
+            return execute(command("EVAL", script.getScript(), keys, args));
+        }
+    }
+
+    @Override
+    public List<Object> evalPipelined(List<ScriptCall> calls) {
+        List<Object> results = new ArrayList<>(calls.size());
+        for (ScriptCall call : calls) {
+            try {
+                results.add(eval(call.getScript(), call.getKeys(), call.getArgs()));
+            } catch (JedisDataException e) {
+                results.add(e);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void scriptLoad(RedisScript script) {
+        execute("SCRIPT", "LOAD", script.getScript());
+    }
+
+    /**
+     * 替身把所有频道的消息都投递给订阅者，由订阅者按频道过滤；阻塞直到全部退订或线程被中断
+     */
+    @Override
+    public void subscribe(MessageListener listener, String... channels) {
+        CountDownLatch done = new CountDownLatch(1);
+        BiConsumer<String, String> subscriber = listener::onMessage;
+        redis.subscribe(subscriber);
+        try {
+            listener.onSubscribed(new Subscription() {
+                @Override
+                public void subscribe(String... channels) {
+                }
+
+                @Override
+                public void unsubscribe(String... channels) {
+                    if (channels.length == 0) {
+                        done.countDown();
+                    }
+                }
+            });
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            redis.unsubscribe(subscriber);
+        }
+    }
+
+    @Override
+    public boolean isCluster() {
+        return false;
+    }
+
+    /**
+     * 把替身的错误转换为 Jedis 的异常，调用方的错误处理与真实 Redis 一致
+     */
+    private Object execute(String... command) {
+        try {
+            return redis.execute(command);
+        } catch (FakeRedisException e) {
+            if (e.getMessage().startsWith("NOSCRIPT")) {
+                throw new JedisNoScriptException(e.getMessage());
+            }
+            throw new JedisDataException(e.getMessage());
+        }
+    }
+
+    private static String[] command(String name, String script, List<String> keys, List<String> args) {
+        String[] command = new String[3 + keys.size() + args.size()];
+        command[0] = name;
+        command[1] = script;
+        command[2] = String.valueOf(keys.size());
+        int i = 3;
+        for (String key : keys) {
+            command[i++] = key;
+        }
+        for (String arg : args) {
+            command[i++] = arg;
+        }
+        return command;
+    }
+}
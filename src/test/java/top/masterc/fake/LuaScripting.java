@@ -0,0 +1,213 @@
+package top.masterc.fake;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用 LuaJ 执行脚本，按 Redis 的规则在 Lua 和 Redis 回复之间转换
+ * <p>
+ * 脚本在 {@link FakeRedis} 的锁内执行，所有脚本共享一个 Globals，每次执行前重新设置 KEYS 和 ARGV
+ *
+ * @author Master.C
+ */
+class LuaScripting {
+
+    private final FakeRedis redis;
+
+    private final Globals globals = JsePlatform.standardGlobals();
+
+    private final Map<String, LuaValue> scripts = new HashMap<>();
+
+    LuaScripting(FakeRedis redis) {
+        this.redis = redis;
+        LuaTable api = new LuaTable();
+        api.set("call", new RedisCall(false));
+        api.set("pcall", new RedisCall(true));
+        api.set("status_reply", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("ok"), args.arg1()});
+            }
+        });
+        api.set("error_reply", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("err"), args.arg1()});
+            }
+        });
+        //脚本效果复制在替身中没有意义，保留调用以兼容脚本
+        api.set("replicate_commands", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return LuaValue.TRUE;
+            }
+        });
+        globals.set("redis", api);
+    }
+
+    String load(String script) {
+        String sha1 = sha1(script);
+        if (!scripts.containsKey(sha1)) {
+            try {
+                scripts.put(sha1, globals.load(script, "@user_script"));
+            } catch (LuaError e) {
+                throw new FakeRedisException("ERR Error compiling script " + e.getMessage());
+            }
+        }
+        return sha1;
+    }
+
+    void flush() {
+        scripts.clear();
+    }
+
+    Object eval(String script, List<String> keys, List<String> args) {
+        return evalsha(load(script), keys, args);
+    }
+
+    Object evalsha(String sha1, List<String> keys, List<String> args) {
+        LuaValue function = scripts.get(sha1);
+        if (function == null) {
+            throw new FakeRedisException("NOSCRIPT No matching script. Please use EVAL.");
+        }
+        globals.set("KEYS", toLuaArray(keys));
+        globals.set("ARGV", toLuaArray(args));
+        try {
+            return toRedis(function.call());
+        } catch (LuaError e) {
+            if (e.getCause() instanceof FakeRedisException) {
+                throw (FakeRedisException) e.getCause();
+            }
+            throw new FakeRedisException("ERR Error running script (call to f_" + sha1 + "): " + e.getMessage());
+        }
+    }
+
+    private static LuaTable toLuaArray(List<String> values) {
+        LuaTable table = new LuaTable();
+        for (int i = 0; i < values.size(); i++) {
+            table.set(i + 1, LuaValue.valueOf(values.get(i)));
+        }
+        return table;
+    }
+
+    /**
+     * Lua -> Redis：number 截断为整数，true 为 1，false / nil 为 nil，table 按 err / ok / 数组转换
+     */
+    private static Object toRedis(LuaValue value) {
+        switch (value.type()) {
+            case LuaValue.TNUMBER:
+                return (long) value.todouble();
+            case LuaValue.TSTRING:
+                return value.tojstring();
+            case LuaValue.TBOOLEAN:
+                return value.toboolean() ? 1L : null;
+            case LuaValue.TTABLE:
+                LuaValue err = value.get("err");
+                if (err.isstring()) {
+                    throw new FakeRedisException(err.tojstring());
+                }
+                LuaValue ok = value.get("ok");
+                if (ok.isstring()) {
+                    return new FakeRedis.Status(ok.tojstring());
+                }
+                List<Object> list = new ArrayList<>();
+                for (int i = 1; ; i++) {
+                    LuaValue item = value.get(i);
+                    if (item.isnil()) {
+                        break;
+                    }
+                    list.add(toRedis(item));
+                }
+                return list;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Redis -> Lua：整数为 number，nil 为 false，status 为 {ok = ...}，multi bulk 为数组
+     */
+    private static LuaValue toLua(Object reply) {
+        if (reply == null) {
+            return LuaValue.FALSE;
+        }
+        if (reply instanceof Long) {
+            return LuaValue.valueOf((double) (Long) reply);
+        }
+        if (reply instanceof String) {
+            return LuaValue.valueOf((String) reply);
+        }
+        if (reply instanceof FakeRedis.Status) {
+            LuaTable table = new LuaTable();
+            table.set("ok", ((FakeRedis.Status) reply).getValue());
+            return table;
+        }
+        List<?> list = (List<?>) reply;
+        LuaTable table = new LuaTable();
+        for (int i = 0; i < list.size(); i++) {
+            table.set(i + 1, toLua(list.get(i)));
+        }
+        return table;
+    }
+
+    private static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * redis.call / redis.pcall
+     */
+    private class RedisCall extends VarArgFunction {
+
+        private final boolean protectedCall;
+
+        private RedisCall(boolean protectedCall) {
+            this.protectedCall = protectedCall;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            List<String> command = new ArrayList<>(args.narg());
+            for (int i = 1; i <= args.narg(); i++) {
+                LuaValue arg = args.arg(i);
+                if (!arg.isstring()) {
+                    throw new LuaError("Lua redis() command arguments must be strings or integers");
+                }
+                //LuaJ 把整数值的 number 格式化为不带小数点的整数，与 Redis 一致
+                command.add(arg.tojstring());
+            }
+            try {
+                return toLua(redis.call(command));
+            } catch (FakeRedisException e) {
+                if (protectedCall) {
+                    LuaTable table = new LuaTable();
+                    table.set("err", e.getMessage());
+                    return table;
+                }
+                throw new LuaError(e);
+            }
+        }
+    }
+}
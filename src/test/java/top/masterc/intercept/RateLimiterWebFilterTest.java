@@ -0,0 +1,118 @@
+package top.masterc.intercept;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import top.masterc.annotation.SpringControllerLimiter;
+import top.masterc.limit.ReactiveRateLimiter;
+
+public class RateLimiterWebFilterTest {
+
+    @Mock
+    private ReactiveRateLimiter rateLimiter;
+
+    @Mock
+    private HandlerMapping handlerMapping;
+
+    @Mock
+    private ServerWebExchange exchange;
+
+    @Mock
+    private ServerHttpRequest request;
+
+    @Mock
+    private ServerHttpResponse response;
+
+    @Mock
+    private WebFilterChain chain;
+
+    private HttpHeaders requestHeaders;
+
+    private HttpHeaders responseHeaders;
+
+    private RateLimiterWebFilter filter;
+
+    @Before
+    public void setBefore() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        requestHeaders = new HttpHeaders();
+        responseHeaders = new HttpHeaders();
+        Mockito.when(exchange.getRequest()).thenReturn(request);
+        Mockito.when(exchange.getResponse()).thenReturn(response);
+        Mockito.when(request.getHeaders()).thenReturn(requestHeaders);
+        Mockito.when(response.getHeaders()).thenReturn(responseHeaders);
+        Mockito.when(response.bufferFactory()).thenReturn(new DefaultDataBufferFactory());
+        Mockito.when(response.writeWith(Mockito.<Publisher>any())).thenReturn(Mono.empty());
+        Mockito.when(chain.filter(exchange)).thenReturn(Mono.empty());
+        HandlerMethod handler = new HandlerMethod(new Controller(), Controller.class.getMethod("limited"));
+        Mockito.when(handlerMapping.getHandler(exchange)).thenReturn(Mono.just((Object) handler));
+
+        filter = new RateLimiterWebFilter(rateLimiter, handlerMapping,
+                e -> e.getRequest().getHeaders().getFirst("X-User"));
+    }
+
+    @Test
+    public void permitted() {
+        requestHeaders.set("X-User", "user1");
+        Mockito.when(rateLimiter.acquireOrDelay("user1", 1)).thenReturn(Mono.just(0L));
+
+        filter.filter(exchange, chain).block();
+
+        Mockito.verify(chain).filter(exchange);
+        Mockito.verify(response, Mockito.never()).setStatusCode(Mockito.any(HttpStatus.class));
+    }
+
+    @Test
+    public void rejected() {
+        requestHeaders.set("X-User", "user1");
+        Mockito.when(rateLimiter.acquireOrDelay("user1", 1)).thenReturn(Mono.just(1500L));
+
+        filter.filter(exchange, chain).block();
+
+        Mockito.verify(chain, Mockito.never()).filter(exchange);
+        Mockito.verify(response).setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        //向上取整到秒
+        Assert.assertEquals("2", responseHeaders.getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    public void nullKeyPassesThrough() {
+        filter.filter(exchange, chain).block();
+
+        Mockito.verify(chain).filter(exchange);
+        Mockito.verify(rateLimiter, Mockito.never()).acquireOrDelay(Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    public void globalLimit() {
+        filter = new RateLimiterWebFilter(rateLimiter, handlerMapping);
+        Mockito.when(rateLimiter.acquireOrDelay()).thenReturn(Mono.just(200L));
+
+        filter.filter(exchange, chain).block();
+
+        Mockito.verify(chain, Mockito.never()).filter(exchange);
+        Assert.assertEquals("1", responseHeaders.getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    public static class Controller {
+
+        @SpringControllerLimiter
+        public String limited() {
+            return "ok";
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package top.masterc.limit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class KeyLeasesTest {
+
+    @Test
+    public void keysComputedOnce() {
+        KeyLeases leases = new KeyLeases(16, key -> Collections.singletonList("{" + key + "}"));
+
+        KeyLeases.KeyLease lease = leases.get("user1");
+
+        Assert.assertSame(lease, leases.get("user1"));
+        Assert.assertEquals(Collections.singletonList("{user1}"), lease.keys);
+        Assert.assertEquals(-1, lease.get().redisWindow);
+        Assert.assertFalse(lease.get().expired(System.nanoTime()));
+    }
+
+    @Test
+    public void bounded() {
+        KeyLeases leases = new KeyLeases(100, key -> Collections.singletonList(key));
+        for (int i = 0; i < 10000; i++) {
+            leases.get("user" + i);
+        }
+
+        Assert.assertTrue(leases.size() <= 100);
+    }
+}
@@ -0,0 +1,71 @@
+package top.masterc.limit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+import top.masterc.executor.ReactiveRedisCommandExecutor;
+import top.masterc.util.KeyRouter;
+import top.masterc.util.RedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ReactiveRateLimiterTest {
+
+    @Mock
+    private ReactiveRedisCommandExecutor executor;
+
+    private ReactiveRateLimiter limiter;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+        limiter = new ReactiveRateLimiter.Builder(executor)
+                .limit(100)
+                .keyRouter(KeyRouter.perKey())
+                .build();
+    }
+
+    @Test
+    public void acquire() {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(Mono.just((Object) 1L), Mono.just((Object) 0L));
+
+        Assert.assertTrue(limiter.acquire().block());
+        Assert.assertFalse(limiter.acquire().block());
+        //与 RedisRateLimiter 相同的 key 和参数
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(RedisScript.class),
+                Mockito.eq(Collections.singletonList("{rate_limiter}")), Mockito.eq(Arrays.asList("100", "1", "1000")));
+    }
+
+    @Test
+    public void acquireOrDelay() {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(Mono.just((Object) (-300L)));
+
+        Assert.assertEquals(Long.valueOf(300), limiter.acquireOrDelay("user1", 10).block());
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class),
+                Mockito.eq(Collections.singletonList("{user1}")), Mockito.eq(Arrays.asList("100", "10", "1000")));
+    }
+
+    @Test
+    public void lazy() {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(Mono.just((Object) 1L));
+
+        Mono<Boolean> permitted = limiter.acquire("user1");
+
+        //只在订阅时访问 Redis
+        Mockito.verify(executor, Mockito.never()).eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList());
+        Assert.assertTrue(permitted.block());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void permitsOverLimit() {
+        limiter.acquire("user1", 101);
+    }
+}
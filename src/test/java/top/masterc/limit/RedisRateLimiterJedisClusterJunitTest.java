@@ -46,11 +46,11 @@ public class RedisRateLimiterJedisClusterJunitTest {
         Mockito.when(jedisConnectionFactory.getClusterConnection()).thenReturn(clusterConnection);
 
         jedisCluster = (JedisCluster) clusterConnection.getNativeConnection();
-        Mockito.when(jedisCluster.eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(0L);
+        Mockito.when(jedisCluster.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(0L);
 
         boolean limit = redisRateLimiter.acquire();
         System.out.println("limit=" + limit);
-        Mockito.verify(jedisCluster).eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+        Mockito.verify(jedisCluster).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
         Assert.assertFalse(limit);
 
     }
@@ -62,11 +62,11 @@ public class RedisRateLimiterJedisClusterJunitTest {
         Mockito.when(jedisConnectionFactory.getClusterConnection()).thenReturn(clusterConnection);
 
         jedisCluster = (JedisCluster) clusterConnection.getNativeConnection();
-        Mockito.when(jedisCluster.eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+        Mockito.when(jedisCluster.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
 
         boolean limit = redisRateLimiter.acquire();
         System.out.println("limit=" + limit);
-        Mockito.verify(jedisCluster).eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+        Mockito.verify(jedisCluster).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
         Assert.assertTrue(limit);
 
     }
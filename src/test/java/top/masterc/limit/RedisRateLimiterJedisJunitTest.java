@@ -3,6 +3,7 @@ package top.masterc.limit;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -12,6 +13,17 @@ import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import top.masterc.constant.RedisToolsConstant;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.executor.ScriptCall;
+import top.masterc.util.KeyRouter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Function:
@@ -33,6 +45,9 @@ public class RedisRateLimiterJedisJunitTest {
     @Mock
     private JedisConnectionFactory jedisConnectionFactory;
 
+    @Mock
+    private RedisCommandExecutor executor;
+
     @Before
     public void setBefore() {
         MockitoAnnotations.initMocks(this);
@@ -49,11 +64,11 @@ public class RedisRateLimiterJedisJunitTest {
         Mockito.when(jedisConnectionFactory.getConnection()).thenReturn(redisConnection);
 
         jedis = (Jedis) redisConnection.getNativeConnection();
-        Mockito.when(jedis.eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(0L);
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(0L);
 
         boolean limit = redisRateLimiter.acquire();
         System.out.println("limit=" + limit);
-        Mockito.verify(jedis).eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+        Mockito.verify(jedis).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
         Assert.assertFalse(limit);
 
     }
@@ -65,12 +80,352 @@ public class RedisRateLimiterJedisJunitTest {
         Mockito.when(jedisConnectionFactory.getConnection()).thenReturn(redisConnection);
 
         jedis = (Jedis) redisConnection.getNativeConnection();
-        Mockito.when(jedis.eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
 
         boolean limit = redisRateLimiter.acquire();
         System.out.println("limit=" + limit);
-        Mockito.verify(jedis).eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+        Mockito.verify(jedis).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
         Assert.assertTrue(limit);
 
     }
+
+    @Test
+    public void leaseLocally() throws Exception {
+        RedisRateLimiter leaseLimiter = new RedisRateLimiter.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .limit(100)
+                .leaseSize(50)
+                .build();
+
+        RedisConnection redisConnection = new JedisConnection(jedis);
+        Mockito.when(jedisConnectionFactory.getConnection()).thenReturn(redisConnection);
+        jedis = (Jedis) redisConnection.getNativeConnection();
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(Arrays.asList(50L, 1L, 1000L));
+
+        for (int i = 0; i < 50; i++) {
+            Assert.assertTrue(leaseLimiter.acquire());
+        }
+
+        Mockito.verify(jedis, Mockito.times(1)).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    public void leaseExhausted() throws Exception {
+        RedisRateLimiter leaseLimiter = new RedisRateLimiter.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .limit(100)
+                .leaseSize(50)
+                .build();
+
+        RedisConnection redisConnection = new JedisConnection(jedis);
+        Mockito.when(jedisConnectionFactory.getConnection()).thenReturn(redisConnection);
+        jedis = (Jedis) redisConnection.getNativeConnection();
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(Arrays.asList(2L, 1L, 1000L), Arrays.asList(0L, 1L, 1000L));
+
+        Assert.assertTrue(leaseLimiter.acquire());
+        Assert.assertTrue(leaseLimiter.acquire());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertFalse(leaseLimiter.acquire());
+        }
+
+        //one lease, one rejected lease, then rejected locally
+        Mockito.verify(jedis, Mockito.times(2)).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    public void slidingWindowKeys() {
+        RedisRateLimiter slidingLimiter = new RedisRateLimiter.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .limit(100)
+                .algorithm(LimitAlgorithm.SLIDING_WINDOW)
+                .build();
+
+        RedisConnection redisConnection = new JedisConnection(jedis);
+        Mockito.when(jedisConnectionFactory.getConnection()).thenReturn(redisConnection);
+        jedis = (Jedis) redisConnection.getNativeConnection();
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        Assert.assertTrue(slidingLimiter.acquire("user1"));
+
+        ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(jedis).evalsha(Mockito.anyString(), keys.capture(), Mockito.anyList());
+        //脚本用 Redis TIME 拼出当前和上一个窗口的 key，非集群模式下不加 hash tag
+        Assert.assertEquals(Collections.singletonList("user1:sw"), keys.getValue());
+    }
+
+    @Test
+    public void gcraLimit() {
+        RedisRateLimiter gcraLimiter = new RedisRateLimiter.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .limit(100)
+                .algorithm(LimitAlgorithm.GCRA)
+                .build();
+
+        RedisConnection redisConnection = new JedisConnection(jedis);
+        Mockito.when(jedisConnectionFactory.getConnection()).thenReturn(redisConnection);
+        jedis = (Jedis) redisConnection.getNativeConnection();
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(0L);
+
+        Assert.assertFalse(gcraLimiter.acquire("user1"));
+
+        Mockito.verify(jedis).evalsha(Mockito.anyString(), Mockito.eq(Collections.singletonList("user1:gcra")), Mockito.anyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void leaseOnlyFixedWindow() {
+        new RedisRateLimiter.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .leaseSize(50)
+                .algorithm(LimitAlgorithm.GCRA)
+                .build();
+    }
+
+    @Test
+    public void keyRouter() {
+        RedisRateLimiter routedLimiter = new RedisRateLimiter.Builder(executor)
+                .limit(100)
+                .keyRouter(KeyRouter.perKey())
+                .build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        Assert.assertTrue(routedLimiter.acquire("user1"));
+
+        ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor).eval(Mockito.any(), keys.capture(), Mockito.anyList());
+        Assert.assertEquals(Collections.singletonList("{user1}"), keys.getValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void clusterWindowKeys() {
+        Mockito.when(executor.isCluster()).thenReturn(true);
+        RedisRateLimiter clusterLimiter = new RedisRateLimiter.Builder(executor).limit(100).build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        Assert.assertTrue(clusterLimiter.acquire("user1"));
+        //'}' in the key does not throw, the tag leaves the braces out
+        Assert.assertTrue(clusterLimiter.acquire("user}1"));
+
+        ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(), keys.capture(), Mockito.anyList());
+        //集群模式下窗口 key 与限流 key 在同一个 slot
+        Assert.assertEquals(Collections.singletonList("{user1}"), keys.getAllValues().get(0));
+        Assert.assertEquals(Collections.singletonList("{user1}user}1"), keys.getAllValues().get(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void acquireBatch() {
+        RedisRateLimiter batchLimiter = new RedisRateLimiter.Builder(executor)
+                .limit(100)
+                .build();
+        Mockito.when(executor.evalPipelined(Mockito.anyList())).thenReturn(Arrays.asList(1L, 0L));
+
+        Map<String, Boolean> permitted = batchLimiter.acquireBatch(Arrays.asList("user1", "user2", "user1"));
+
+        Assert.assertEquals(Arrays.asList("user1", "user2"), Arrays.asList(permitted.keySet().toArray()));
+        Assert.assertTrue(permitted.get("user1"));
+        Assert.assertFalse(permitted.get("user2"));
+        ArgumentCaptor<List> calls = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor).evalPipelined(calls.capture());
+        Assert.assertEquals(2, calls.getValue().size());
+        Assert.assertEquals(Collections.singletonList("user2"), ((ScriptCall) calls.getValue().get(1)).getKeys());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void acquireRules() {
+        RedisRateLimiter multiLimiter = new RedisRateLimiter.Builder(executor).build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L, -2L);
+        List<LimitRule> rules = Arrays.asList(LimitRule.perSecond("user1", 10),
+                new LimitRule("tenant1", 600, 1, TimeUnit.MINUTES));
+
+        Assert.assertTrue(multiLimiter.acquire(rules));
+        Assert.assertFalse(multiLimiter.acquire(rules));
+
+        ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(), keys.capture(),
+                Mockito.eq(Arrays.asList("10", "1000", "600", "60000")));
+        Assert.assertEquals(Arrays.asList("user1:1000", "tenant1:60000"), keys.getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void acquireRulesCrossSlot() {
+        Mockito.when(executor.isCluster()).thenReturn(true);
+        RedisRateLimiter multiLimiter = new RedisRateLimiter.Builder(executor).build();
+
+        multiLimiter.acquire(Arrays.asList(LimitRule.perSecond("user1", 10), LimitRule.perSecond("tenant1", 100)));
+    }
+
+    @Test
+    public void acquireRulesTagged() {
+        Mockito.when(executor.isCluster()).thenReturn(true);
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+        RedisRateLimiter multiLimiter = new RedisRateLimiter.Builder(executor)
+                .keyRouter(KeyRouter.fixed("tenant1"))
+                .build();
+
+        Assert.assertTrue(multiLimiter.acquire(Arrays.asList(LimitRule.perSecond("user1", 10),
+                LimitRule.perSecond("tenant1", 100))));
+    }
+
+    @Test
+    public void acquirePermits() {
+        RedisRateLimiter weightedLimiter = new RedisRateLimiter.Builder(executor)
+                .limit(100)
+                .algorithm(LimitAlgorithm.GCRA)
+                .build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L, -250L);
+
+        Assert.assertTrue(weightedLimiter.acquire("export", 40));
+        Assert.assertEquals(250, weightedLimiter.acquireOrDelay("export", 40));
+
+        ArgumentCaptor<List> args = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(), Mockito.anyList(), args.capture());
+        Assert.assertEquals("40", args.getValue().get(2));
+    }
+
+    @Test
+    public void keysNamespacedPerAlgorithm() {
+        //同一个 key 换算法时不会读到另一种数据结构
+        Set<String> keys = new HashSet<>();
+        for (LimitAlgorithm algorithm : LimitAlgorithm.values()) {
+            Assert.assertTrue(keys.add(algorithm.keys("user1", false).get(0)));
+            Assert.assertTrue(keys.add(algorithm.keys(LimitAlgorithm.DEFAULT_KEY, false).get(0)));
+        }
+        Assert.assertEquals(Collections.singletonList("{user1}:log"), LimitAlgorithm.SLIDING_LOG.keys("{user1}", true));
+        Assert.assertEquals(Collections.singletonList("{user1}:sw"), LimitAlgorithm.SLIDING_WINDOW.keys("user1", true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void permitsOverLimit() {
+        new RedisRateLimiter.Builder(executor).limit(100).build().acquire("export", 101);
+    }
+
+    @Test
+    public void tryAcquireWaitsForDelay() throws Exception {
+        RedisRateLimiter weightedLimiter = new RedisRateLimiter.Builder(executor).limit(100).build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(-50L, 10L);
+
+        long start = System.nanoTime();
+        Assert.assertTrue(weightedLimiter.tryAcquire("export", 10, 1000));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    public void tryAcquireGivesUpEarly() throws Exception {
+        RedisRateLimiter weightedLimiter = new RedisRateLimiter.Builder(executor).limit(100).build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(-800L);
+
+        Assert.assertFalse(weightedLimiter.tryAcquire("export", 10, 100));
+        Mockito.verify(executor, Mockito.times(1)).eval(Mockito.any(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void windowFromRedisTime() {
+        RedisRateLimiter fixedLimiter = new RedisRateLimiter.Builder(executor).limit(100).build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        Assert.assertTrue(fixedLimiter.acquire());
+        Assert.assertTrue(fixedLimiter.acquire());
+
+        //不带客户端时间，每次调用的 KEYS 和 ARGV 相同
+        ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List> args = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(), keys.capture(), args.capture());
+        Assert.assertEquals(Collections.singletonList("rate_limiter"), keys.getValue());
+        Assert.assertEquals(Arrays.asList("100", "1", "1000"), args.getValue());
+        Assert.assertSame(args.getAllValues().get(0), args.getAllValues().get(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void rejectionCache() {
+        RedisRateLimiter cachedLimiter = new RedisRateLimiter.Builder(executor)
+                .limit(100)
+                .rejectionCache(1000)
+                .build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(-500L);
+        Mockito.when(executor.evalPipelined(Mockito.anyList())).thenReturn(Arrays.asList(1L));
+
+        Assert.assertFalse(cachedLimiter.acquire("user1"));
+        Assert.assertFalse(cachedLimiter.acquire("user1"));
+        Assert.assertTrue(cachedLimiter.acquireOrDelay("user1", 1) > 0);
+        Map<String, Boolean> permitted = cachedLimiter.acquireBatch(Arrays.asList("user1", "user2"));
+
+        //只有第一次访问 Redis，批量时 user1 本地拒绝
+        Mockito.verify(executor, Mockito.times(1)).eval(Mockito.any(), Mockito.anyList(), Mockito.anyList());
+        ArgumentCaptor<List> calls = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor).evalPipelined(calls.capture());
+        Assert.assertEquals(1, calls.getValue().size());
+        Assert.assertEquals(Arrays.asList("user1", "user2"), Arrays.asList(permitted.keySet().toArray()));
+        Assert.assertFalse(permitted.get("user1"));
+        Assert.assertTrue(permitted.get("user2"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void keyLeaseCache() throws Exception {
+        RedisRateLimiter keyLimiter = new RedisRateLimiter.Builder(executor)
+                .limit(100)
+                .leaseSize(50)
+                .keyLeaseCache(1000)
+                .build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(1L, Arrays.asList(50L, 1L, 1000L));
+
+        for (int i = 0; i < 51; i++) {
+            Assert.assertTrue(keyLimiter.acquire("user1"));
+        }
+
+        //第一次只取一个许可，第二次租借 50 个，之后本地发放
+        ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List> args = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(), keys.capture(), args.capture());
+        Assert.assertEquals(Collections.singletonList("user1"), keys.getAllValues().get(0));
+        Assert.assertSame(keys.getAllValues().get(0), keys.getAllValues().get(1));
+        Assert.assertEquals(Arrays.asList("100", "1", "1000"), args.getAllValues().get(0));
+        Assert.assertEquals("50", args.getAllValues().get(1).get(1));
+    }
+
+    @Test
+    public void keyLeaseCacheRejectedLocally() throws Exception {
+        RedisRateLimiter keyLimiter = new RedisRateLimiter.Builder(executor)
+                .limit(100)
+                .leaseSize(50)
+                .keyLeaseCache(1000)
+                .build();
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList())).thenReturn(-300L);
+
+        Assert.assertFalse(keyLimiter.acquire("user1"));
+        Assert.assertTrue(keyLimiter.acquireOrDelay("user1", 1) > 0);
+
+        Mockito.verify(executor, Mockito.times(1)).eval(Mockito.any(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void leaseExpiresWithRedisWindow() throws Exception {
+        RedisRateLimiter leaseLimiter = new RedisRateLimiter.Builder(executor)
+                .limit(100)
+                .leaseSize(50)
+                .build();
+        //Redis 说当前窗口还剩 50ms，与本机时钟无关
+        Mockito.when(executor.eval(Mockito.any(), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(Arrays.asList(50L, 7L, 50L), 1L, Arrays.asList(50L, 8L, 1000L));
+
+        Assert.assertTrue(leaseLimiter.acquire());
+        Thread.sleep(100);
+        Assert.assertTrue(leaseLimiter.acquire());
+
+        ArgumentCaptor<List> args = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(executor, Mockito.times(3)).eval(Mockito.any(), Mockito.anyList(), args.capture());
+        //未用完的 49 个许可还给租借时的窗口
+        Assert.assertEquals(Arrays.asList("49", "7"), args.getAllValues().get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyLeaseCacheRequiresLease() {
+        new RedisRateLimiter.Builder(executor)
+                .keyLeaseCache(1000)
+                .build();
+    }
 }
@@ -0,0 +1,184 @@
+package top.masterc.limit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import top.masterc.fake.FakeRedis;
+import top.masterc.fake.FakeRedisExecutor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在 {@link FakeRedis} 上执行真实的 lua 脚本，验证各算法的放行数量、按权重放行、等待时间、批量租约、批量调用和多规则的原子性
+ */
+public class RedisRateLimiterScriptTest {
+
+    private FakeRedisExecutor executor;
+
+    @Before
+    public void setBefore() {
+        executor = new FakeRedisExecutor(new FakeRedis());
+    }
+
+    @Test
+    public void fixedWindow() throws InterruptedException {
+        RedisRateLimiter limiter = limiter(LimitAlgorithm.FIXED_WINDOW, 5);
+        awaitWindowStart();
+
+        Assert.assertEquals(5, permitted(limiter, "user1", 8));
+        long delay = limiter.acquireOrDelay("user1", 1);
+        //下一个窗口开始前没有许可
+        Assert.assertTrue(delay > 0 && delay <= LimitAlgorithm.WINDOW_MILLIS);
+        //其他 key 不受影响
+        Assert.assertTrue(limiter.acquire("user2"));
+
+        TimeUnit.MILLISECONDS.sleep(delay);
+        Assert.assertTrue(limiter.acquire("user1"));
+    }
+
+    @Test
+    public void fixedWindowPermits() throws InterruptedException {
+        RedisRateLimiter limiter = limiter(LimitAlgorithm.FIXED_WINDOW, 10);
+        awaitWindowStart();
+
+        Assert.assertTrue(limiter.acquire("export", 6));
+        //拒绝时不占用许可
+        Assert.assertFalse(limiter.acquire("export", 6));
+        Assert.assertTrue(limiter.acquire("export", 4));
+        Assert.assertFalse(limiter.acquire("export", 1));
+    }
+
+    @Test
+    public void slidingLog() throws InterruptedException {
+        RedisRateLimiter limiter = limiter(LimitAlgorithm.SLIDING_LOG, 5);
+
+        Assert.assertEquals(5, permitted(limiter, "user1", 8));
+        long delay = limiter.acquireOrDelay("user1", 1);
+        //等最早的请求滑出窗口
+        Assert.assertTrue(delay > 0 && delay <= LimitAlgorithm.WINDOW_MILLIS);
+
+        TimeUnit.MILLISECONDS.sleep(delay);
+        Assert.assertTrue(limiter.acquire("user1"));
+    }
+
+    @Test
+    public void slidingLogPermits() {
+        RedisRateLimiter limiter = limiter(LimitAlgorithm.SLIDING_LOG, 5);
+
+        Assert.assertTrue(limiter.acquire("export", 3));
+        Assert.assertFalse(limiter.acquire("export", 3));
+        Assert.assertTrue(limiter.acquire("export", 2));
+    }
+
+    @Test
+    public void slidingWindow() throws InterruptedException {
+        RedisRateLimiter limiter = limiter(LimitAlgorithm.SLIDING_WINDOW, 10);
+        awaitWindowStart();
+
+        Assert.assertEquals(10, permitted(limiter, "user1", 15));
+        long delay = limiter.acquireOrDelay("user1", 1);
+        //下一个窗口里还要等当前窗口的权重降下来
+        Assert.assertTrue(delay > 0 && delay <= 2 * LimitAlgorithm.WINDOW_MILLIS);
+
+        TimeUnit.MILLISECONDS.sleep(delay);
+        Assert.assertTrue(limiter.acquire("user1"));
+    }
+
+    @Test
+    public void gcra() throws InterruptedException {
+        RedisRateLimiter limiter = limiter(LimitAlgorithm.GCRA, 10);
+
+        //一个窗口内允许突发 limit 个
+        Assert.assertEquals(10, permitted(limiter, "user1", 15));
+        long delay = limiter.acquireOrDelay("user1", 1);
+        //之后按 window / limit 的间隔放行
+        Assert.assertTrue(delay > 0 && delay <= LimitAlgorithm.WINDOW_MILLIS / 10);
+
+        TimeUnit.MILLISECONDS.sleep(delay);
+        Assert.assertTrue(limiter.acquire("user1"));
+        Assert.assertFalse(limiter.acquire("user1"));
+    }
+
+    @Test
+    public void algorithmsShareKey() {
+        //同一个 key 用不同的算法限流，数据结构不冲突
+        for (LimitAlgorithm algorithm : LimitAlgorithm.values()) {
+            Assert.assertTrue(algorithm.name(), limiter(algorithm, 5).acquire("user1"));
+        }
+    }
+
+    @Test
+    public void lease() throws InterruptedException {
+        RedisRateLimiter limiter = new RedisRateLimiter.Builder(executor)
+                .limit(100)
+                .leaseSize(10)
+                .build();
+        awaitWindowStart();
+
+        int permitted = 0;
+        for (int i = 0; i < 150; i++) {
+            if (limiter.acquire()) {
+                permitted++;
+            }
+        }
+        Assert.assertEquals(100, permitted);
+    }
+
+    @Test
+    public void batch() throws InterruptedException {
+        RedisRateLimiter limiter = limiter(LimitAlgorithm.FIXED_WINDOW, 1);
+        awaitWindowStart();
+
+        Map<String, Boolean> first = limiter.acquireBatch(Arrays.asList("user1", "user2"));
+        Assert.assertEquals(Arrays.asList(true, true), Arrays.asList(first.values().toArray()));
+        Assert.assertTrue(limiter.acquireBatch(Collections.singletonList("user3")).get("user3"));
+
+        Map<String, Boolean> second = limiter.acquireBatch(Arrays.asList("user1", "user2", "user4"));
+        Assert.assertEquals(Arrays.asList(false, false, true), Arrays.asList(second.values().toArray()));
+    }
+
+    @Test
+    public void multiAllOrNothing() {
+        RedisRateLimiter limiter = limiter(LimitAlgorithm.FIXED_WINDOW, 100);
+        LimitRule user = new LimitRule("user1", 10, 1, TimeUnit.HOURS);
+        LimitRule global = new LimitRule("global", 1, 1, TimeUnit.HOURS);
+
+        Assert.assertTrue(limiter.acquire(Arrays.asList(user, global)));
+        Assert.assertFalse(limiter.acquire(Arrays.asList(user, global)));
+
+        //全局规则拒绝时用户规则的计数没有增加
+        LimitRule userOfTwo = new LimitRule("user1", 2, 1, TimeUnit.HOURS);
+        Assert.assertTrue(limiter.acquire(Collections.singletonList(userOfTwo)));
+        Assert.assertFalse(limiter.acquire(Collections.singletonList(userOfTwo)));
+    }
+
+    private RedisRateLimiter limiter(LimitAlgorithm algorithm, int limit) {
+        return new RedisRateLimiter.Builder(executor)
+                .limit(limit)
+                .algorithm(algorithm)
+                .build();
+    }
+
+    private static int permitted(RedisRateLimiter limiter, String key, int requests) {
+        int permitted = 0;
+        for (int i = 0; i < requests; i++) {
+            if (limiter.acquire(key)) {
+                permitted++;
+            }
+        }
+        return permitted;
+    }
+
+    /**
+     * 窗口剩余时间不多时等到下一个窗口开始，测试中的请求都落在同一个窗口
+     */
+    private static void awaitWindowStart() throws InterruptedException {
+        long elapsed = System.currentTimeMillis() % LimitAlgorithm.WINDOW_MILLIS;
+        if (elapsed > LimitAlgorithm.WINDOW_MILLIS / 2) {
+            TimeUnit.MILLISECONDS.sleep(LimitAlgorithm.WINDOW_MILLIS - elapsed + 1);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package top.masterc.limit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RejectionCacheTest {
+
+    @Test
+    public void rejectUntil() {
+        RejectionCache cache = new RejectionCache(16);
+        long now = System.nanoTime();
+        cache.reject("user1", 1, now + TimeUnit.MILLISECONDS.toNanos(100));
+
+        Assert.assertTrue(cache.rejected("user1", 1, now) > 0);
+        Assert.assertEquals(0, cache.rejected("user2", 1, now));
+        //窗口滚动后不再拒绝，条目被清除
+        Assert.assertEquals(0, cache.rejected("user1", 1, now + TimeUnit.MILLISECONDS.toNanos(100)));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void smallerRequestsGoToRedis() {
+        RejectionCache cache = new RejectionCache(16);
+        long now = System.nanoTime();
+        cache.reject("export", 50, now + TimeUnit.SECONDS.toNanos(1));
+
+        Assert.assertTrue(cache.rejected("export", 60, now) > 0);
+        Assert.assertEquals(0, cache.rejected("export", 10, now));
+    }
+
+    @Test
+    public void bounded() {
+        RejectionCache cache = new RejectionCache(64);
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < 10000; i++) {
+            cache.reject("user" + i, 1, until);
+        }
+
+        Assert.assertTrue(cache.size() <= 64);
+    }
+}
@@ -0,0 +1,92 @@
+package top.masterc.lock;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import top.masterc.executor.MessageListener;
+import top.masterc.executor.RedisCommandExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LockNotifierTest {
+
+    private LockNotifier lockNotifier;
+
+    @Mock
+    private RedisCommandExecutor executor;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+        lockNotifier = new LockNotifier(executor);
+    }
+
+    @Test
+    public void wakeOnRelease() throws Exception {
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                MessageListener listener = (MessageListener) invocation.getArguments()[0];
+                TimeUnit.MILLISECONDS.sleep(50);
+                listener.onMessage("redis_tool_released:lock_test", "request");
+                TimeUnit.SECONDS.sleep(10);
+                return null;
+            }
+        }).when(executor).subscribe(Mockito.any(MessageListener.class), Mockito.<String>anyVararg());
+
+        LockNotifier.Waiters waiters = lockNotifier.register("redis_tool_released:lock_test");
+        long start = System.currentTimeMillis();
+        waiters.await(5000);
+        long end = System.currentTimeMillis();
+        lockNotifier.unregister("redis_tool_released:lock_test", waiters);
+
+        System.out.println("woken after " + (end - start));
+        Assert.assertTrue(end - start < 5000);
+    }
+
+    @Test
+    public void pollWithoutRelease() throws Exception {
+        LockNotifier.Waiters waiters = lockNotifier.register("redis_tool_released:lock_test");
+        long start = System.currentTimeMillis();
+        waiters.await(100);
+        long end = System.currentTimeMillis();
+        lockNotifier.unregister("redis_tool_released:lock_test", waiters);
+
+        Assert.assertTrue(end - start >= 100);
+    }
+
+    @Test
+    public void close() throws Exception {
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch left = new CountDownLatch(1);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                subscribed.countDown();
+                try {
+                    TimeUnit.SECONDS.sleep(10);
+                } finally {
+                    left.countDown();
+                }
+                return null;
+            }
+        }).when(executor).subscribe(Mockito.any(MessageListener.class), Mockito.<String>anyVararg());
+
+        LockNotifier.Waiters waiters = lockNotifier.register("redis_tool_released:lock_test");
+        Assert.assertTrue(subscribed.await(1, TimeUnit.SECONDS));
+        lockNotifier.close();
+
+        //订阅线程离开 subscribe 后不再重连
+        Assert.assertTrue(left.await(1, TimeUnit.SECONDS));
+        lockNotifier.unregister("redis_tool_released:lock_test", waiters);
+        lockNotifier.register("redis_tool_released:lock_other");
+        TimeUnit.MILLISECONDS.sleep(1200);
+        Mockito.verify(executor).subscribe(Mockito.any(MessageListener.class), Mockito.<String>anyVararg());
+    }
+}
@@ -0,0 +1,103 @@
+package top.masterc.lock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class LockWatchdogTest {
+
+    @Mock
+    private LockWatchdog.Renewer renewer;
+
+    @Mock
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void renewAndStopOnLost() {
+        LockWatchdog watchdog = new LockWatchdog(renewer, scheduler, 3000, false);
+        watchdog.watch("lock_a", "request_a");
+        watchdog.watch("lock_b", "request_b");
+        Mockito.when(renewer.renew(Mockito.anyList(), Mockito.anyList())).thenAnswer(invocation -> {
+            List<List<String>> keys = (List<List<String>>) invocation.getArguments()[0];
+            //lock_b 已经被其他人持有
+            return Collections.singletonList(keys.get(0).get(0).equals("lock_a") ? Arrays.asList(1L, 0L) : Arrays.asList(0L, 1L));
+        });
+
+        watchdog.renew();
+
+        Assert.assertEquals(1, watchdog.size());
+        Mockito.verify(renewer).renew(Mockito.anyList(), Mockito.anyList());
+        //只启动一个续期任务
+        Mockito.verify(scheduler).scheduleWithFixedDelay(Mockito.any(Runnable.class), Mockito.eq(1000L),
+                Mockito.eq(1000L), Mockito.any());
+    }
+
+    @Test
+    public void unwatch() {
+        LockWatchdog watchdog = new LockWatchdog(renewer, scheduler, 3000, false);
+        watchdog.watch("lock_a", "request_a");
+        //value 不一致不移除
+        watchdog.unwatch("lock_a", "request_b");
+        Assert.assertEquals(1, watchdog.size());
+        watchdog.unwatch("lock_a", "request_a");
+        Assert.assertEquals(0, watchdog.size());
+
+        watchdog.renew();
+        Mockito.verify(renewer, Mockito.never()).renew(Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    public void clusterGroupBySlot() {
+        LockWatchdog watchdog = new LockWatchdog(renewer, scheduler, 3000, true);
+        watchdog.watch("{order}_1", "request_1");
+        watchdog.watch("{order}_2", "request_2");
+        watchdog.watch("{user}_1", "request_3");
+        Mockito.when(renewer.renew(Mockito.anyList(), Mockito.anyList())).thenAnswer(invocation -> {
+            List<List<String>> keys = (List<List<String>>) invocation.getArguments()[0];
+            List<List<Long>> results = new ArrayList<>();
+            for (List<String> slotKeys : keys) {
+                results.add(slotKeys.size() == 2 ? Arrays.asList(1L, 1L) : Arrays.asList(0L));
+            }
+            return results;
+        });
+
+        watchdog.renew();
+
+        //每个 slot 一组，一次调用发出所有分组
+        Mockito.verify(renewer).renew(Mockito.anyList(), Mockito.anyList());
+        Assert.assertEquals(2, watchdog.size());
+    }
+
+    @Test
+    public void close() {
+        ScheduledFuture<?> task = Mockito.mock(ScheduledFuture.class);
+        Mockito.doReturn(task).when(scheduler).scheduleWithFixedDelay(Mockito.any(Runnable.class), Mockito.anyLong(),
+                Mockito.anyLong(), Mockito.any(TimeUnit.class));
+        LockWatchdog watchdog = new LockWatchdog(renewer, scheduler, 3000, false);
+        watchdog.watch("lock_a", "request_a");
+
+        watchdog.close();
+        watchdog.watch("lock_b", "request_b");
+
+        Mockito.verify(task).cancel(false);
+        //关闭后不再启动续期任务
+        Mockito.verify(scheduler).scheduleWithFixedDelay(Mockito.any(Runnable.class), Mockito.anyLong(),
+                Mockito.anyLong(), Mockito.any(TimeUnit.class));
+    }
+}
@@ -0,0 +1,86 @@
+package top.masterc.lock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import top.masterc.executor.ReactiveRedisCommandExecutor;
+import top.masterc.util.RedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+public class ReactiveRedisLockerTest {
+
+    @Mock
+    private ReactiveRedisCommandExecutor executor;
+
+    private ReactiveRedisLocker locker;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+        locker = new ReactiveRedisLocker.Builder(executor)
+                .sleepTime(10)
+                .leaseTime(3000)
+                .build();
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(Mono.just((Object) 1L));
+    }
+
+    @Test
+    public void tryLock() {
+        Mockito.when(executor.setIfAbsent("lock_order", "request", 3000)).thenReturn(Mono.just(true));
+
+        Assert.assertTrue(locker.tryLock("order", "request").block());
+        Assert.assertTrue(locker.unlock("order", "request").block());
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class), Mockito.eq(Collections.singletonList("lock_order")),
+                Mockito.eq(Collections.singletonList("request")));
+    }
+
+    @Test
+    public void lockRetries() {
+        Mockito.when(executor.setIfAbsent("lock_order", "request", 3000))
+                .thenReturn(Mono.just(false), Mono.just(false), Mono.just(true));
+
+        Assert.assertTrue(locker.lock("order", "request", 1000).block());
+        Mockito.verify(executor, Mockito.times(3)).setIfAbsent("lock_order", "request", 3000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void withLock() {
+        Mockito.when(executor.setIfAbsent(Mockito.eq("lock_order"), Mockito.anyString(), Mockito.eq(3000)))
+                .thenReturn(Mono.just(true));
+
+        List<Integer> result = locker.withLock("order", 1000, Flux.just(1, 2, 3)).collectList().block();
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3), result);
+        ArgumentCaptor<String> request = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(executor).setIfAbsent(Mockito.eq("lock_order"), request.capture(), Mockito.eq(3000));
+        //释放的是同一个 request
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class), Mockito.eq(Collections.singletonList("lock_order")),
+                Mockito.eq(Collections.singletonList(request.getValue())));
+    }
+
+    @Test
+    public void withLockTimeout() {
+        Mockito.when(executor.setIfAbsent(Mockito.eq("lock_order"), Mockito.anyString(), Mockito.eq(3000)))
+                .thenReturn(Mono.just(false));
+
+        try {
+            locker.withLock("order", 50, Mono.just("done")).block();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Mockito.verify(executor, Mockito.never()).eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList());
+    }
+}
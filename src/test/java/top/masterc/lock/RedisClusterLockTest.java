@@ -158,25 +158,25 @@ public class RedisClusterLockTest {
     @Test
     public void unlock() throws Exception {
 
-        Mockito.when(jedisCluster.eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L) ;
+        Mockito.when(jedisCluster.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L) ;
 
         boolean locktest = redisLocker.unlock("test", "ec8ebca0-14ba0-4b23-99a8-b35fbba3629e");
 
         Assert.assertTrue(locktest);
 
-        Mockito.verify(jedisCluster).eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+        Mockito.verify(jedisCluster).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
     }
 
     @Test
     public void unlockFalse() throws Exception {
 
-        Mockito.when(jedisCluster.eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(0L) ;
+        Mockito.when(jedisCluster.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(0L) ;
 
         boolean locktest = redisLocker.unlock("test", "ec8ebca0-14ba0-4b23-99a8-b35fbba3629e");
 
         Assert.assertFalse(locktest);
 
-        Mockito.verify(jedisCluster).eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+        Mockito.verify(jedisCluster).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
     }
 
 }
\ No newline at end of file
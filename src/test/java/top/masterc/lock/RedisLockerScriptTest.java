@@ -0,0 +1,167 @@
+package top.masterc.lock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import top.masterc.fake.FakeRedis;
+import top.masterc.fake.FakeRedisExecutor;
+import top.masterc.metrics.InMemoryMetricsRecorder;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在 {@link FakeRedis} 上执行真实的 lua 脚本，验证重入计数、fencing token、多把锁的原子性、只有持有者能解锁、持有时间、看门狗续期和关闭后不再订阅释放通知
+ */
+public class RedisLockerScriptTest {
+
+    private FakeRedis redis;
+
+    private FakeRedisExecutor executor;
+
+    @Before
+    public void setBefore() {
+        redis = new FakeRedis();
+        executor = new FakeRedisExecutor(redis);
+    }
+
+    @Test
+    public void reentrantCounts() {
+        //两个实例用同一个 request，每次加锁都在 Redis 中计数
+        RedisLocker first = new RedisLocker.Builder(executor).reentrant(true).build();
+        RedisLocker second = new RedisLocker.Builder(executor).reentrant(true).build();
+
+        Assert.assertTrue(first.tryLock("order", "owner"));
+        Assert.assertTrue(second.tryLock("order", "owner"));
+        Assert.assertEquals("2", redis.execute("HGET", "lock_order", "owner"));
+        Assert.assertFalse(first.tryLock("order", "other"));
+
+        Assert.assertTrue(first.unlock("order", "owner"));
+        Assert.assertEquals("1", redis.execute("HGET", "lock_order", "owner"));
+        Assert.assertFalse(first.tryLock("order", "other"));
+
+        Assert.assertTrue(second.unlock("order", "owner"));
+        Assert.assertEquals(0L, redis.execute("EXISTS", "lock_order"));
+        Assert.assertTrue(first.tryLock("order", "other"));
+        //不是持有者不能解锁
+        Assert.assertFalse(second.unlock("order", "owner"));
+    }
+
+    @Test
+    public void fencedTokensIncrease() {
+        RedisLocker locker = new RedisLocker.Builder(executor).build();
+
+        Assert.assertEquals(1, locker.tryLockFenced("order", "first"));
+        //加锁失败不消耗 token
+        Assert.assertEquals(0, locker.tryLockFenced("order", "second"));
+        Assert.assertTrue(locker.unlock("order", "first"));
+
+        Assert.assertEquals(2, locker.tryLockFenced("order", "second"));
+        Assert.assertTrue(locker.unlock("order", "second"));
+        Assert.assertEquals(3, locker.tryLockFenced("order", "first"));
+    }
+
+    @Test
+    public void lockAllOrNothing() {
+        RedisLocker locker = new RedisLocker.Builder(executor).build();
+        Assert.assertTrue(locker.tryLock("b", "other"));
+
+        Assert.assertFalse(locker.tryLockAll(Arrays.asList("a", "b", "c"), "owner", 10000));
+        //一把都没有加
+        Assert.assertEquals(0L, redis.execute("EXISTS", "lock_a", "lock_c"));
+
+        Assert.assertTrue(locker.unlock("b", "other"));
+        Assert.assertTrue(locker.tryLockAll(Arrays.asList("a", "b", "c"), "owner", 10000));
+        Assert.assertFalse(locker.tryLock("c", "other"));
+        Assert.assertFalse(locker.unlockAll(Arrays.asList("a", "b", "c"), "other"));
+        Assert.assertTrue(locker.unlockAll(Arrays.asList("a", "b", "c"), "owner"));
+        Assert.assertEquals(0L, redis.execute("EXISTS", "lock_a", "lock_b", "lock_c"));
+    }
+
+    @Test
+    public void unlockOnlyOwner() {
+        RedisLocker locker = new RedisLocker.Builder(executor).build();
+
+        Assert.assertTrue(locker.tryLock("order", "owner"));
+        Assert.assertFalse(locker.unlock("order", "other"));
+        Assert.assertFalse(locker.tryLock("order", "other"));
+        Assert.assertTrue(locker.unlock("order", "owner"));
+        Assert.assertTrue(locker.tryLock("order", "other"));
+    }
+
+    @Test
+    public void holdTime() {
+        InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder();
+        RedisLocker locker = new RedisLocker.Builder(executor)
+                .metricsRecorder(recorder)
+                .build();
+        Assert.assertTrue(locker.tryLock("order", "owner"));
+        Assert.assertTrue(locker.tryLock("user", "owner"));
+
+        //不是持有者解锁不记录持有时间
+        Assert.assertFalse(locker.unlock("order", "other"));
+        Assert.assertEquals(0, recorder.lockStats("lock_").getHoldTime().getTotalCount());
+
+        Assert.assertTrue(locker.unlock("order", "owner"));
+        Assert.assertTrue(locker.unlock("user", "owner"));
+        Assert.assertEquals(2, recorder.lockStats("lock_").getHoldTime().getTotalCount());
+        //槽已清空，再次解锁不重复记录
+        Assert.assertFalse(locker.unlock("user", "owner"));
+        Assert.assertEquals(2, recorder.lockStats("lock_").getHoldTime().getTotalCount());
+    }
+
+    @Test
+    public void watchdogRenews() throws InterruptedException {
+        RedisLocker locker = new RedisLocker.Builder(executor)
+                .leaseTime(150)
+                .watchdog(true)
+                .build();
+        Assert.assertTrue(locker.tryLock("order", "owner"));
+        Assert.assertTrue(locker.tryLock("user", "owner"));
+
+        //持有时间超过 leaseTime，看门狗一直续期
+        TimeUnit.MILLISECONDS.sleep(400);
+        Assert.assertFalse(locker.tryLock("order", "other"));
+        Assert.assertFalse(locker.tryLock("user", "other"));
+
+        Assert.assertTrue(locker.unlock("order", "owner"));
+        Assert.assertTrue(locker.unlock("user", "owner"));
+        locker.shutdown();
+    }
+
+    @Test
+    public void shutdownUnsubscribes() throws Exception {
+        RedisLocker locker = new RedisLocker.Builder(executor)
+                .releaseNotification(true)
+                .build();
+        Assert.assertTrue(locker.tryLock("order", "owner"));
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return locker.lock("order", "waiter", 5000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Assert.assertTrue(awaitSubscribers(1));
+
+        Assert.assertTrue(locker.unlock("order", "owner"));
+        Assert.assertTrue(waiter.get(5, TimeUnit.SECONDS));
+
+        locker.shutdown();
+        Assert.assertTrue(awaitSubscribers(0));
+    }
+
+    /**
+     * PUBLISH 返回替身上的订阅者数量
+     */
+    private boolean awaitSubscribers(long subscribers) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (redis.execute("PUBLISH", "redis_tool_lock_notifier", "ping").equals(subscribers)) {
+                return true;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return false;
+    }
+}
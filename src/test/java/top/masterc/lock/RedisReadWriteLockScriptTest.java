@@ -0,0 +1,104 @@
+package top.masterc.lock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import top.masterc.fake.FakeRedis;
+import top.masterc.fake.FakeRedisExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在 {@link FakeRedis} 上执行真实的 lua 脚本，验证读写互斥、读锁重入、升级、写者优先和读者各自过期
+ */
+public class RedisReadWriteLockScriptTest {
+
+    private FakeRedisExecutor executor;
+
+    @Before
+    public void setBefore() {
+        executor = new FakeRedisExecutor(new FakeRedis());
+    }
+
+    @Test
+    public void readersShare() {
+        RedisReadWriteLock lock = lock(false);
+
+        Assert.assertTrue(lock.tryReadLock("doc", "reader1"));
+        Assert.assertTrue(lock.tryReadLock("doc", "reader2"));
+        Assert.assertFalse(lock.tryWriteLock("doc", "writer"));
+
+        Assert.assertTrue(lock.unlockRead("doc", "reader1"));
+        Assert.assertTrue(lock.unlockRead("doc", "reader2"));
+        Assert.assertTrue(lock.tryWriteLock("doc", "writer"));
+        Assert.assertFalse(lock.tryReadLock("doc", "reader1"));
+        Assert.assertFalse(lock.tryWriteLock("doc", "other"));
+
+        Assert.assertTrue(lock.unlockWrite("doc", "writer"));
+        Assert.assertTrue(lock.tryReadLock("doc", "reader1"));
+    }
+
+    @Test
+    public void readReentry() {
+        RedisReadWriteLock lock = lock(false);
+
+        Assert.assertTrue(lock.tryReadLock("doc", "reader"));
+        Assert.assertTrue(lock.tryReadLock("doc", "reader"));
+        Assert.assertTrue(lock.tryReadLock("doc", "other"));
+        Assert.assertTrue(lock.unlockRead("doc", "other"));
+
+        //唯一的读者可以升级为写锁
+        Assert.assertTrue(lock.tryWriteLock("doc", "reader"));
+        Assert.assertTrue(lock.unlockWrite("doc", "reader"));
+
+        Assert.assertTrue(lock.unlockRead("doc", "reader"));
+        Assert.assertFalse(lock.tryWriteLock("doc", "writer"));
+        Assert.assertTrue(lock.unlockRead("doc", "reader"));
+        //重入次数用完后不再持有
+        Assert.assertFalse(lock.unlockRead("doc", "reader"));
+        Assert.assertTrue(lock.tryWriteLock("doc", "writer"));
+    }
+
+    @Test
+    public void writerPreference() throws InterruptedException {
+        RedisReadWriteLock lock = lock(true);
+        Assert.assertTrue(lock.tryReadLock("doc", "reader1"));
+
+        //等待中的写者登记后新的读者让路，已持有的读者可以重入
+        Assert.assertFalse(lock.writeLock("doc", "writer", 30));
+        Assert.assertFalse(lock.tryReadLock("doc", "reader2"));
+        Assert.assertTrue(lock.tryReadLock("doc", "reader1"));
+
+        Assert.assertTrue(lock.unlockRead("doc", "reader1"));
+        Assert.assertTrue(lock.unlockRead("doc", "reader1"));
+        Assert.assertTrue(lock.writeLock("doc", "writer", 30));
+        Assert.assertTrue(lock.unlockWrite("doc", "writer"));
+        Assert.assertTrue(lock.tryReadLock("doc", "reader2"));
+    }
+
+    @Test
+    public void crashedReaderExpires() throws InterruptedException {
+        RedisReadWriteLock lock = lock(false);
+
+        //reader1 崩溃，没有释放
+        Assert.assertTrue(lock.tryReadLock("doc", "reader1", 100));
+        Assert.assertTrue(lock.tryReadLock("doc", "reader2", 10000));
+        TimeUnit.MILLISECONDS.sleep(150);
+        //reader2 仍然持有
+        Assert.assertFalse(lock.tryWriteLock("doc", "writer"));
+
+        //其他读者不断续上的过期时间不影响已过期的 reader1
+        Assert.assertTrue(lock.tryReadLock("doc", "reader3", 10000));
+        Assert.assertTrue(lock.unlockRead("doc", "reader3"));
+        Assert.assertTrue(lock.unlockRead("doc", "reader2"));
+        Assert.assertFalse(lock.unlockRead("doc", "reader1"));
+        Assert.assertTrue(lock.tryWriteLock("doc", "writer"));
+    }
+
+    private RedisReadWriteLock lock(boolean writerPreference) {
+        return new RedisReadWriteLock.Builder(executor)
+                .sleepTime(10)
+                .writerPreference(writerPreference)
+                .build();
+    }
+}
@@ -0,0 +1,111 @@
+package top.masterc.lock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.util.RedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RedisReadWriteLockTest {
+
+    private static final List<String> KEYS = Arrays.asList(
+            "{lock_config}:read", "{lock_config}:write", "{lock_config}:write_wait", "{lock_config}:read_expire");
+
+    @Mock
+    private RedisCommandExecutor executor;
+
+    private RedisReadWriteLock readWriteLock;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(executor.isCluster()).thenReturn(true);
+        readWriteLock = new RedisReadWriteLock.Builder(executor)
+                .sleepTime(10)
+                .leaseTime(3000)
+                .build();
+    }
+
+    @Test
+    public void readLock() {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(1L, 0L);
+
+        Assert.assertTrue(readWriteLock.tryReadLock("config", "request"));
+        Assert.assertTrue(readWriteLock.unlockRead("config", "request"));
+
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class), Mockito.eq(KEYS),
+                Mockito.eq(Arrays.asList("request", "3000", "1")));
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class), Mockito.eq(KEYS),
+                Mockito.eq(Collections.singletonList("request")));
+    }
+
+    @Test
+    public void unlockReadNotHeld() {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(-1L);
+
+        Assert.assertFalse(readWriteLock.unlockRead("config", "request"));
+    }
+
+    @Test
+    public void tryWriteLockDoesNotWait() {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(0L);
+
+        Assert.assertFalse(readWriteLock.tryWriteLock("config", "request"));
+
+        //a single attempt never stops new readers
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class), Mockito.eq(KEYS),
+                Mockito.eq(Arrays.asList("request", "3000", "0")));
+    }
+
+    @Test
+    public void writeLockRegistersWaiting() throws Exception {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(0L, 1L, 1L);
+
+        Assert.assertTrue(readWriteLock.writeLock("config", "request", 1000));
+        Assert.assertTrue(readWriteLock.unlockWrite("config", "request"));
+
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(RedisScript.class), Mockito.eq(KEYS),
+                Mockito.eq(Arrays.asList("request", "3000", "30")));
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class),
+                Mockito.eq(Collections.singletonList("{lock_config}:write")), Mockito.eq(Collections.singletonList("request")));
+    }
+
+    @Test
+    public void noWriterPreference() throws Exception {
+        RedisReadWriteLock fair = new RedisReadWriteLock.Builder(executor)
+                .writerPreference(false)
+                .build();
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(1L);
+
+        Assert.assertTrue(fair.tryReadLock("config", "request"));
+        Assert.assertTrue(fair.writeLock("config", "request", 100));
+
+        //read lock ignores waiting writers, blocked writers do not register
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(RedisScript.class), Mockito.eq(KEYS),
+                Mockito.eq(Arrays.asList("request", "10000", "0")));
+    }
+
+    @Test
+    public void singleNodeKeys() {
+        Mockito.when(executor.isCluster()).thenReturn(false);
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        Assert.assertTrue(readWriteLock.tryReadLock("con}fig", "request"));
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class),
+                Mockito.eq(Arrays.asList("lock_con}fig:read", "lock_con}fig:write", "lock_con}fig:write_wait",
+                        "lock_con}fig:read_expire")),
+                Mockito.anyList());
+    }
+}
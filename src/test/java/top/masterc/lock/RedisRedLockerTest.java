@@ -0,0 +1,134 @@
+package top.masterc.lock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.util.RedisScript;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class RedisRedLockerTest {
+
+    @Mock
+    private RedisCommandExecutor node1;
+
+    @Mock
+    private RedisCommandExecutor node2;
+
+    @Mock
+    private RedisCommandExecutor node3;
+
+    private RedisRedLocker redLocker;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+        redLocker = new RedisRedLocker.Builder(Arrays.asList(node1, node2, node3)).build();
+    }
+
+    @Test
+    public void quorum() {
+        Mockito.when(node1.setIfAbsent("lock_key", "request", 10000)).thenReturn(true);
+        Mockito.when(node2.setIfAbsent("lock_key", "request", 10000)).thenReturn(false);
+        Mockito.when(node3.setIfAbsent("lock_key", "request", 10000)).thenReturn(true);
+
+        Assert.assertTrue(redLocker.tryLock("key", "request"));
+    }
+
+    @Test
+    public void minorityReleasesAll() {
+        Mockito.when(node1.setIfAbsent("lock_key", "request", 10000)).thenReturn(true);
+        Mockito.when(node2.setIfAbsent("lock_key", "request", 10000)).thenReturn(false);
+        Mockito.when(node3.setIfAbsent("lock_key", "request", 10000)).thenReturn(false);
+
+        Assert.assertFalse(redLocker.tryLock("key", "request"));
+        for (RedisCommandExecutor node : Arrays.asList(node1, node2, node3)) {
+            Mockito.verify(node, Mockito.timeout(1000)).eval(Mockito.any(RedisScript.class),
+                    Mockito.eq(Arrays.asList("lock_key")), Mockito.eq(Arrays.asList("request")));
+        }
+    }
+
+    @Test
+    public void nodeDown() {
+        Mockito.when(node1.setIfAbsent("lock_key", "request", 10000)).thenThrow(new JedisConnectionException("down"));
+        Mockito.when(node2.setIfAbsent("lock_key", "request", 10000)).thenReturn(true);
+        Mockito.when(node3.setIfAbsent("lock_key", "request", 10000)).thenReturn(true);
+        Mockito.when(node1.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList()))
+                .thenThrow(new JedisConnectionException("down"));
+        Mockito.when(node2.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+        Mockito.when(node3.eval(Mockito.any(RedisScript.class), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        Assert.assertTrue(redLocker.tryLock("key", "request"));
+        Assert.assertTrue(redLocker.unlock("key", "request"));
+    }
+
+    @Test
+    public void parallel() {
+        for (RedisCommandExecutor node : Arrays.asList(node1, node2, node3)) {
+            Mockito.when(node.setIfAbsent("lock_key", "request", 10000)).thenAnswer(invocation -> {
+                TimeUnit.MILLISECONDS.sleep(300);
+                return true;
+            });
+        }
+
+        long start = System.nanoTime();
+        Assert.assertTrue(redLocker.tryLock("key", "request"));
+        //顺序执行需要 900ms
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 600);
+    }
+
+    @Test
+    public void expiredWhileAcquiring() {
+        for (RedisCommandExecutor node : Arrays.asList(node1, node2, node3)) {
+            Mockito.when(node.setIfAbsent("lock_key", "request", 100)).thenAnswer(invocation -> {
+                TimeUnit.MILLISECONDS.sleep(150);
+                return true;
+            });
+        }
+
+        //多数节点加锁成功，但耗时超过了有效期
+        Assert.assertFalse(redLocker.tryLock("key", "request", 100));
+    }
+
+    @Test
+    public void validity() {
+        for (RedisCommandExecutor node : Arrays.asList(node1, node2, node3)) {
+            Mockito.when(node.setIfAbsent("lock_key", "request", 1000)).thenReturn(true);
+        }
+
+        long validity = redLocker.tryLockValidity("key", "request", 1000);
+        //expireTime - 耗时 - 1000 * 0.01 - 2
+        Assert.assertTrue(validity > 900);
+        Assert.assertTrue(validity <= 988);
+    }
+
+    @Test
+    public void releaseOnSingleThreadPool() {
+        //失败后的释放在线程池上触发，不能占着唯一的线程等待其他节点的释放
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        RedisRedLocker singleThreadLocker = new RedisRedLocker.Builder(Arrays.asList(node1, node2, node3))
+                .requestExecutor(pool)
+                .build();
+        Mockito.when(node1.setIfAbsent("lock_key", "request", 10000)).thenReturn(false);
+        Mockito.when(node2.setIfAbsent("lock_key", "request", 10000)).thenAnswer(invocation -> {
+            TimeUnit.MILLISECONDS.sleep(100);
+            return false;
+        });
+        Mockito.when(node3.setIfAbsent("lock_key", "request", 10000)).thenReturn(false);
+
+        Assert.assertEquals(0, singleThreadLocker.tryLockValidity("key", "request"));
+        for (RedisCommandExecutor node : Arrays.asList(node1, node2, node3)) {
+            Mockito.verify(node, Mockito.timeout(1000)).eval(Mockito.any(RedisScript.class),
+                    Mockito.eq(Arrays.asList("lock_key")), Mockito.eq(Arrays.asList("request")));
+        }
+        pool.shutdown();
+    }
+}
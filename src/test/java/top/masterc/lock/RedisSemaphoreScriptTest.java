@@ -0,0 +1,82 @@
+package top.masterc.lock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import top.masterc.fake.FakeRedis;
+import top.masterc.fake.FakeRedisExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在 {@link FakeRedis} 上执行真实的 lua 脚本，验证许可数量、续期和超时回收
+ */
+public class RedisSemaphoreScriptTest {
+
+    private FakeRedis redis;
+
+    private FakeRedisExecutor executor;
+
+    @Before
+    public void setBefore() {
+        redis = new FakeRedis();
+        executor = new FakeRedisExecutor(redis);
+    }
+
+    @Test
+    public void permits() {
+        RedisSemaphore semaphore = semaphore(5, 10000);
+
+        String first = semaphore.tryAcquire(3);
+        Assert.assertNotNull(first);
+        //不够时一个也不拿
+        Assert.assertNull(semaphore.tryAcquire(3));
+        String second = semaphore.tryAcquire(2);
+        Assert.assertNotNull(second);
+        Assert.assertNull(semaphore.tryAcquire());
+
+        //释放 token 获取的全部许可，数量以 Redis 中记录的为准
+        Assert.assertTrue(semaphore.release(first));
+        Assert.assertFalse(semaphore.release(first));
+        Assert.assertNotNull(semaphore.tryAcquire(3));
+        Assert.assertEquals(2L, redis.execute("HLEN", "semaphore_downstream:counts"));
+    }
+
+    @Test
+    public void reclaim() throws InterruptedException {
+        RedisSemaphore semaphore = semaphore(2, 100);
+
+        String crashed = semaphore.tryAcquire(2);
+        Assert.assertNotNull(crashed);
+        Assert.assertNull(semaphore.tryAcquire());
+
+        TimeUnit.MILLISECONDS.sleep(150);
+        //持有者没有续期，许可在 leaseTime 后被回收
+        Assert.assertNotNull(semaphore.tryAcquire(2));
+        //回收时一并清理 token 的许可数
+        Assert.assertEquals(0L, redis.execute("HEXISTS", "semaphore_downstream:counts", crashed));
+        Assert.assertFalse(semaphore.renew(crashed));
+        Assert.assertFalse(semaphore.release(crashed));
+    }
+
+    @Test
+    public void renew() throws InterruptedException {
+        RedisSemaphore semaphore = semaphore(1, 200);
+
+        String token = semaphore.tryAcquire();
+        TimeUnit.MILLISECONDS.sleep(120);
+        Assert.assertTrue(semaphore.renew(token));
+        TimeUnit.MILLISECONDS.sleep(120);
+        //续期后仍然持有
+        Assert.assertNull(semaphore.tryAcquire());
+        Assert.assertTrue(semaphore.release(token));
+    }
+
+    private RedisSemaphore semaphore(int permits, int leaseTime) {
+        return new RedisSemaphore.Builder(executor)
+                .name("downstream")
+                .permits(permits)
+                .leaseTime(leaseTime)
+                .build();
+    }
+}
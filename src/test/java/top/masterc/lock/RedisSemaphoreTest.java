@@ -0,0 +1,117 @@
+package top.masterc.lock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import top.masterc.executor.RedisCommandExecutor;
+import top.masterc.util.RedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class RedisSemaphoreTest {
+
+    private static final List<String> KEYS = Arrays.asList("semaphore_downstream", "semaphore_downstream:counts");
+
+    @Mock
+    private RedisCommandExecutor executor;
+
+    private RedisSemaphore semaphore;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+        semaphore = new RedisSemaphore.Builder(executor)
+                .name("downstream")
+                .permits(50)
+                .leaseTime(3000)
+                .sleepTime(10)
+                .build();
+    }
+
+    @Test
+    public void tryAcquire() {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyListOf(String.class),
+                Mockito.anyListOf(String.class)))
+                .thenReturn(1L, 0L);
+
+        String token = semaphore.tryAcquire(3);
+        Assert.assertNotNull(token);
+        Assert.assertNull(semaphore.tryAcquire(3));
+
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class), Mockito.eq(KEYS),
+                Mockito.eq(Arrays.asList("50", "3", "3000", token)));
+    }
+
+    @Test
+    public void release() {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyListOf(String.class),
+                Mockito.anyListOf(String.class))).thenReturn(1L, 0L);
+
+        Assert.assertTrue(semaphore.release("token"));
+        //the permits were reclaimed after leaseTime
+        Assert.assertFalse(semaphore.release("token"));
+        //the count is recorded in redis, not passed by the caller
+        Mockito.verify(executor, Mockito.times(2)).eval(Mockito.any(RedisScript.class), Mockito.eq(KEYS),
+                Mockito.eq(Collections.singletonList("token")));
+    }
+
+    @Test
+    public void renew() {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyListOf(String.class),
+                Mockito.anyListOf(String.class))).thenReturn(1L);
+
+        Assert.assertTrue(semaphore.renew("token"));
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class), Mockito.eq(KEYS),
+                Mockito.eq(Arrays.asList("token", "3000")));
+    }
+
+    @Test
+    public void clusterKeys() {
+        Mockito.when(executor.isCluster()).thenReturn(true);
+        RedisSemaphore clustered = new RedisSemaphore.Builder(executor)
+                .name("downstream")
+                .permits(50)
+                .build();
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyListOf(String.class),
+                Mockito.anyListOf(String.class))).thenReturn(1L);
+
+        clustered.release("token");
+        Mockito.verify(executor).eval(Mockito.any(RedisScript.class),
+                Mockito.eq(Arrays.asList("semaphore_downstream", "{semaphore_downstream}:counts")),
+                Mockito.eq(Collections.singletonList("token")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moreThanPermits() {
+        semaphore.tryAcquire(51);
+    }
+
+    @Test
+    public void acquireAsync() throws Exception {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyListOf(String.class),
+                Mockito.anyListOf(String.class)))
+                .thenReturn(0L, 0L, 1L);
+
+        CompletableFuture<String> token = semaphore.acquireAsync(1, 1000);
+
+        Assert.assertNotNull(token.get());
+        Mockito.verify(executor, Mockito.times(3)).eval(Mockito.any(RedisScript.class), Mockito.anyListOf(String.class),
+                Mockito.anyListOf(String.class));
+    }
+
+    @Test
+    public void acquireTimeout() throws Exception {
+        Mockito.when(executor.eval(Mockito.any(RedisScript.class), Mockito.anyListOf(String.class),
+                Mockito.anyListOf(String.class)))
+                .thenReturn(0L);
+
+        Assert.assertNull(semaphore.acquire(1, 50));
+        Assert.assertNull(semaphore.acquireAsync(1, 50).get());
+    }
+}
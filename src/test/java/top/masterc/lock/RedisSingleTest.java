@@ -1,9 +1,11 @@
 package top.masterc.lock;
 
 import top.masterc.constant.RedisToolsConstant;
+import top.masterc.metrics.InMemoryMetricsRecorder;
 import junit.framework.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -11,8 +13,15 @@ import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.jedis.JedisConnection;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Function:
@@ -52,12 +61,27 @@ public class RedisSingleTest {
     @Test
     public void unlock() throws Exception {
 
-        Mockito.when(jedis.eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L) ;
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L) ;
 
         boolean locktest = redisLocker.unlock("test", "ec8ebca0-14ba0-4b23-99a8-b35fbba3629e");
 
         Assert.assertTrue(locktest);
 
+        Mockito.verify(jedis).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    public void unlockNoScript() throws Exception {
+
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList()))
+                .thenThrow(new JedisNoScriptException("NOSCRIPT No matching script. Please use EVAL."));
+        Mockito.when(jedis.eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        boolean locktest = redisLocker.unlock("test", "ec8ebca0-14ba0-4b23-99a8-b35fbba3629e");
+
+        Assert.assertTrue(locktest);
+
+        Mockito.verify(jedis).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
         Mockito.verify(jedis).eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
     }
 
@@ -167,4 +191,220 @@ public class RedisSingleTest {
         Mockito.verify(jedis).set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
                 Mockito.anyString(), Mockito.anyInt());
     }
+
+    @Test
+    public void lockAsync() throws Exception {
+
+        Mockito.when(jedis.set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyInt())).thenReturn(null, "OK");
+
+        CompletableFuture<Boolean> future = redisLocker.lockAsync("test", UUID.randomUUID().toString(), 1000);
+
+        Assert.assertTrue(future.get(2, TimeUnit.SECONDS));
+
+        //check was called 2 times
+        Mockito.verify(jedis, Mockito.times(2)).set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    public void lockAsyncTimeout() throws Exception {
+
+        Mockito.when(jedis.set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyInt())).thenReturn(null);
+
+        CompletableFuture<Boolean> future = redisLocker.lockAsync("test", UUID.randomUUID().toString(), 150);
+
+        Assert.assertFalse(future.get(2, TimeUnit.SECONDS));
+
+        Mockito.verify(jedis, Mockito.times(3)).set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    public void unlockNotify() throws Exception {
+        RedisLocker notifyLocker = new RedisLocker.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .lockPrefix("lock_")
+                .releaseNotification(true)
+                .build();
+
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        boolean locktest = notifyLocker.unlock("test", "ec8ebca0-14ba0-4b23-99a8-b35fbba3629e");
+
+        Assert.assertTrue(locktest);
+
+        Mockito.verify(jedis).evalsha(Mockito.anyString(), Mockito.eq(Collections.singletonList("lock_test")),
+                Mockito.eq(Arrays.asList("ec8ebca0-14ba0-4b23-99a8-b35fbba3629e", "redis_tool_released:")));
+    }
+
+    @Test
+    public void lockNotifyTimeout() throws Exception {
+        RedisLocker notifyLocker = new RedisLocker.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .lockPrefix("lock_")
+                .releaseNotification(true)
+                .notifyPollTime(100)
+                .build();
+
+        Mockito.when(jedis.set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyInt())).thenReturn(null);
+
+        boolean lock = notifyLocker.lock("test", UUID.randomUUID().toString(), 150);
+
+        Assert.assertFalse(lock);
+
+        //at 0ms, after the 100ms poll and at the 150ms deadline
+        Mockito.verify(jedis, Mockito.times(3)).set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    public void tryLockWatchdog() throws Exception {
+        RedisLocker watchdogLocker = new RedisLocker.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .leaseTime(3000)
+                .watchdog(true)
+                .build();
+        Mockito.when(jedis.set(Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenReturn("OK");
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        String request = UUID.randomUUID().toString();
+        Assert.assertTrue(watchdogLocker.tryLock("test", request));
+        Assert.assertTrue(watchdogLocker.unlock("test", request));
+
+        Mockito.verify(jedis).set("lock_test", request, "NX", "PX", 3000);
+    }
+
+    @Test
+    public void reentrant() throws Exception {
+        RedisLocker reentrantLocker = new RedisLocker.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .reentrant(true)
+                .build();
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L, 0L);
+
+        String request = UUID.randomUUID().toString();
+        Assert.assertTrue(reentrantLocker.tryLock("test", request));
+        Assert.assertTrue(reentrantLocker.tryLock("test", request));
+        Assert.assertTrue(reentrantLocker.unlock("test", request));
+        Assert.assertTrue(reentrantLocker.unlock("test", request));
+
+        //re-entry and the inner unlock never touch redis
+        Mockito.verify(jedis, Mockito.times(2)).evalsha(Mockito.anyString(), Mockito.eq(Collections.singletonList("lock_test")),
+                Mockito.anyList());
+        Mockito.verify(jedis, Mockito.never()).set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    public void reentrantOtherThread() throws Exception {
+        RedisLocker reentrantLocker = new RedisLocker.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .reentrant(true)
+                .build();
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L, 0L, -1L);
+
+        String request = UUID.randomUUID().toString();
+        Assert.assertTrue(reentrantLocker.tryLock("test", request));
+        CompletableFuture<Boolean> other = CompletableFuture.supplyAsync(() -> reentrantLocker.tryLock("test", request));
+
+        //another thread does not share the local hold count
+        Assert.assertFalse(other.get());
+        Assert.assertFalse(reentrantLocker.unlock("test", request));
+        Mockito.verify(jedis, Mockito.times(3)).evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    public void tryLockAll() throws Exception {
+        Pipeline pipeline = Mockito.mock(Pipeline.class);
+        Mockito.when(jedis.pipelined()).thenReturn(pipeline);
+        Mockito.when(pipeline.syncAndReturnAll()).thenReturn(Collections.<Object>singletonList(1L));
+
+        boolean lock = redisLocker.tryLockAll(Arrays.asList("sku_1", "sku_2", "sku_1"), UUID.randomUUID().toString(), 1000);
+
+        Assert.assertTrue(lock);
+        //all keys in one script call
+        Mockito.verify(pipeline).evalsha(Mockito.any(byte[].class), Mockito.argThat(new ArgumentMatcher<List<byte[]>>() {
+            @Override
+            public boolean matches(Object argument) {
+                return ((List) argument).size() == 2;
+            }
+        }), Mockito.anyListOf(byte[].class));
+        Mockito.verify(jedis, Mockito.never()).set(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    public void tryLockAllFalse() throws Exception {
+        Pipeline pipeline = Mockito.mock(Pipeline.class);
+        Mockito.when(jedis.pipelined()).thenReturn(pipeline);
+        Mockito.when(pipeline.syncAndReturnAll()).thenReturn(Collections.<Object>singletonList(0L));
+
+        boolean lock = redisLocker.tryLockAll(Arrays.asList("sku_1", "sku_2"), UUID.randomUUID().toString(), 1000);
+
+        Assert.assertFalse(lock);
+        //nothing to roll back
+        Mockito.verify(pipeline, Mockito.times(1)).syncAndReturnAll();
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder();
+        RedisLocker metricsLocker = new RedisLocker.Builder(jedisConnectionFactory, RedisToolsConstant.SINGLE)
+                .sleepTime(50)
+                .metricsRecorder(recorder)
+                .build();
+        Mockito.when(jedis.set(Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenReturn(null, "OK");
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        String request = UUID.randomUUID().toString();
+        Assert.assertTrue(metricsLocker.lock("test", request, 200));
+        Assert.assertTrue(metricsLocker.unlock("test", request));
+
+        InMemoryMetricsRecorder.LockStats stats = recorder.lockStats("lock_");
+        Assert.assertEquals(1, stats.getAcquired());
+        Assert.assertEquals(1, stats.getFailed());
+        Assert.assertEquals(1, stats.getRetries());
+        Assert.assertEquals(1, stats.getWaitTime().getTotalCount());
+        Assert.assertEquals(1, stats.getHoldTime().getTotalCount());
+    }
+
+    @Test
+    public void tryLockFenced() throws Exception {
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(7L, 0L);
+
+        String request = UUID.randomUUID().toString();
+        Assert.assertEquals(7L, redisLocker.tryLockFenced("test", request, 1000));
+        Assert.assertEquals(0L, redisLocker.tryLockFenced("test", UUID.randomUUID().toString(), 1000));
+
+        //lock and fencing counter in one script call, in the same slot
+        Mockito.verify(jedis, Mockito.times(2)).evalsha(Mockito.anyString(),
+                Mockito.eq(Arrays.asList("lock_test", "lock_test:fence")), Mockito.anyList());
+    }
+
+    @Test
+    public void fenceKey() throws Exception {
+        //in the same slot as the lock in cluster mode, the configured router is kept otherwise
+        Assert.assertEquals("{lock_test}:fence", RedisLocker.fenceKey("lock_test", true));
+        Assert.assertEquals("lock_test:fence", RedisLocker.fenceKey("lock_test", false));
+        Assert.assertEquals("lock_te}st:fence", RedisLocker.fenceKey("lock_te}st", false));
+        //keep an existing hash tag
+        Assert.assertEquals("lock_{order}_1:fence", RedisLocker.fenceKey("lock_{order}_1", true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fenceKeyEmptyTag() throws Exception {
+        //{lock_{}_1} would hash "lock_{" instead of the whole key
+        RedisLocker.fenceKey("lock_{}_1", true);
+    }
+
+    @Test
+    public void tryLockFencedBraceKey() throws Exception {
+        Mockito.when(jedis.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(3L);
+
+        Assert.assertEquals(3L, redisLocker.tryLockFenced("te}st", UUID.randomUUID().toString(), 1000));
+        Mockito.verify(jedis).evalsha(Mockito.anyString(),
+                Mockito.eq(Arrays.asList("lock_te}st", "lock_te}st:fence")), Mockito.anyList());
+    }
 }
@@ -0,0 +1,70 @@
+package top.masterc.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class InMemoryMetricsRecorderTest {
+
+    @Test
+    public void lockStats() {
+        InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder();
+        recorder.lockAttempt("lock_", TimeUnit.MICROSECONDS.toNanos(500), false);
+        recorder.lockAttempt("lock_", TimeUnit.MICROSECONDS.toNanos(300), true);
+        recorder.lockWait("lock_", TimeUnit.MILLISECONDS.toNanos(100), 1, true);
+        recorder.lockHeld("lock_", TimeUnit.MILLISECONDS.toNanos(20));
+        recorder.lockError("lock_", new RuntimeException());
+
+        InMemoryMetricsRecorder.LockStats stats = recorder.lockStats("lock_");
+        Assert.assertEquals(1, stats.getAcquired());
+        Assert.assertEquals(1, stats.getFailed());
+        Assert.assertEquals(1, stats.getRetries());
+        Assert.assertEquals(0, stats.getTimeouts());
+        Assert.assertEquals(1, stats.getErrors());
+        Assert.assertEquals(2, stats.getAttemptLatency().getTotalCount());
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(500), stats.getAttemptLatency().getMaxValue(), 5000);
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(20), stats.getHoldTime().getMaxValue(), 200000);
+    }
+
+    @Test
+    public void limiterStats() {
+        InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder();
+        recorder.limiterDecision("user_1", 1000, true);
+        recorder.limiterDecision("user_1", 1000, true);
+        recorder.limiterDecision("user_1", 1000, true);
+        recorder.limiterDecision("user_1", 1000, false);
+        //values outside the histogram range are clamped instead of throwing
+        recorder.limiterDecision("user_2", TimeUnit.DAYS.toNanos(1), false);
+
+        Assert.assertEquals(0.25, recorder.limiterStats("user_1").getRejectionRate(), 0.0001);
+        Assert.assertEquals(1.0, recorder.limiterStats("user_2").getRejectionRate(), 0.0001);
+        Assert.assertEquals(0, recorder.limiterStats("user_3").getRejectionRate(), 0.0001);
+        //reading an unknown name does not create it
+        Assert.assertEquals(2, recorder.getLimiters().size());
+    }
+
+    @Test
+    public void histogramFootprint() {
+        InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder();
+        for (long micros = 50; micros < TimeUnit.SECONDS.toMicros(10); micros = micros * 11 / 10) {
+            recorder.limiterDecision("user_1", TimeUnit.MICROSECONDS.toNanos(micros), true);
+        }
+        //值分布在 5 个数量级时一个直方图仍然只占几 KB
+        Assert.assertTrue(recorder.limiterStats("user_1").getLatency().getEstimatedFootprintInBytes() < 16 * 1024);
+    }
+
+    @Test
+    public void namesCapped() {
+        InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder(2);
+        for (int i = 0; i < 100; i++) {
+            recorder.limiterDecision("user_" + i, 1000, true);
+        }
+        recorder.limiterDecision("user_0", 1000, false);
+
+        Assert.assertEquals(3, recorder.getLimiters().size());
+        Assert.assertEquals(98, recorder.limiterStats(InMemoryMetricsRecorder.OTHERS).getPermitted());
+        Assert.assertEquals(1, recorder.limiterStats("user_0").getRejected());
+        Assert.assertEquals(0, recorder.limiterStats("user_99").getPermitted());
+    }
+}
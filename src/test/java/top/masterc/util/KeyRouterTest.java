@@ -0,0 +1,69 @@
+package top.masterc.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class KeyRouterTest {
+
+    @Test
+    public void none() {
+        Assert.assertEquals("limit_sku", KeyRouter.NONE.route("limit_sku"));
+    }
+
+    @Test
+    public void perKey() {
+        KeyRouter router = KeyRouter.perKey();
+        Assert.assertEquals("{limit_sku}", router.route("limit_sku"));
+        Assert.assertEquals("limit_{sku}", router.route("limit_{sku}"));
+        Assert.assertEquals(KeyRouter.slot(router.route("limit_sku") + 1700000000),
+                KeyRouter.slot(router.route("limit_sku") + 1700000001));
+    }
+
+    @Test
+    public void fixed() {
+        KeyRouter router = KeyRouter.fixed("orders");
+        Assert.assertEquals("{orders}lock_1", router.route("lock_1"));
+        Assert.assertEquals(KeyRouter.slot(router.route("lock_1")), KeyRouter.slot(router.route("lock_2")));
+    }
+
+    @Test
+    public void braces() {
+        //the braces are left out of the tag instead of throwing
+        Assert.assertEquals("{lock__1}lock_{}_1", KeyRouter.perKey().route("lock_{}_1"));
+        Assert.assertEquals("{user1}user}1", KeyRouter.perKey().route("user}1"));
+        Assert.assertEquals("{_}}", KeyRouter.perKey().route("}"));
+        Assert.assertEquals("{orders}user}1", KeyRouter.fixed("orders").route("user}1"));
+        Assert.assertEquals("user}1", KeyRouter.NONE.route("user}1"));
+        String routed = KeyRouter.perKey().route("user}1");
+        Assert.assertEquals(KeyRouter.slot(routed), KeyRouter.slot(KeyRouter.derive(routed, "fence", true)));
+    }
+
+    @Test
+    public void derive() {
+        Assert.assertEquals("lock_1:fence", KeyRouter.derive("lock_1", "fence", false));
+        Assert.assertEquals("{lock_1}:fence", KeyRouter.derive("lock_1", "fence", true));
+        Assert.assertEquals(KeyRouter.slot("lock_1"), KeyRouter.slot(KeyRouter.derive("lock_1", "fence", true)));
+        Assert.assertEquals("{orders}lock_1:fence", KeyRouter.derive("{orders}lock_1", "fence", true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deriveBracesInCluster() {
+        KeyRouter.derive("lock_}1", "fence", true);
+    }
+
+    @Test
+    public void groupBySlot() {
+        List<String> keys = Arrays.asList("{a}1", "{b}1", "{a}2");
+
+        Map<Integer, List<String>> cluster = KeyRouter.groupBySlot(keys, true);
+        Assert.assertEquals(Arrays.asList("{a}1", "{a}2"), cluster.get(KeyRouter.slot("a")));
+        Assert.assertEquals(Arrays.asList("{b}1"), cluster.get(KeyRouter.slot("b")));
+
+        Map<Integer, List<String>> single = KeyRouter.groupBySlot(keys, false);
+        Assert.assertEquals(keys, single.get(0));
+    }
+}
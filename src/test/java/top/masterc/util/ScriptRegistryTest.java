@@ -0,0 +1,80 @@
+package top.masterc.util;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ScriptRegistryTest {
+
+    private ScriptRegistry scriptRegistry;
+
+    @Mock
+    private JedisCluster jedisCluster;
+
+    @Mock
+    private JedisPool master1;
+
+    @Mock
+    private JedisPool master2;
+
+    @Mock
+    private Jedis jedis1;
+
+    @Mock
+    private Jedis jedis2;
+
+    @Before
+    public void setBefore() {
+        MockitoAnnotations.initMocks(this);
+        scriptRegistry = new ScriptRegistry();
+    }
+
+    @Test
+    public void sha1() {
+        RedisScript script = new RedisScript("test.lua", "return 1");
+        //redis-cli SCRIPT LOAD "return 1"
+        Assert.assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", script.getSha1());
+    }
+
+    @Test
+    public void register() {
+        RedisScript script = scriptRegistry.register("lock.lua");
+        Assert.assertSame(script, scriptRegistry.register("lock.lua"));
+        Assert.assertSame(script, scriptRegistry.getScript("lock.lua"));
+        Assert.assertEquals(40, script.getSha1().length());
+    }
+
+    @Test
+    public void preloadCluster() {
+        RedisScript script = scriptRegistry.register("limit.lua");
+
+        Map<String, JedisPool> nodes = new LinkedHashMap<>();
+        nodes.put("127.0.0.1:7000", master1);
+        nodes.put("127.0.0.1:7001", master2);
+        Mockito.when(jedisCluster.getClusterNodes()).thenReturn(nodes);
+        Mockito.when(master1.getResource()).thenReturn(jedis1);
+        Mockito.when(master2.getResource()).thenReturn(jedis2);
+        Mockito.when(jedisCluster.evalsha(Mockito.anyString(), Mockito.anyList(), Mockito.anyList())).thenReturn(1L);
+
+        Object result = scriptRegistry.eval(jedisCluster, script, Collections.singletonList("key"), Collections.singletonList("1"));
+        scriptRegistry.eval(jedisCluster, script, Collections.singletonList("key"), Collections.singletonList("1"));
+
+        Assert.assertEquals(1L, result);
+        Mockito.verify(jedis1).scriptLoad(script.getScript());
+        Mockito.verify(jedis2).scriptLoad(script.getScript());
+        Mockito.verify(jedis1).close();
+        Mockito.verify(jedis2).close();
+        Mockito.verify(jedisCluster, Mockito.times(2)).evalsha(Mockito.eq(script.getSha1()), Mockito.anyList(), Mockito.anyList());
+        Mockito.verify(jedisCluster, Mockito.never()).eval(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+    }
+}